@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.intern.supplier.AssetIndex;
+
+/**
+ * Index lookups in the compact AssetIndex against the Properties the
+ * suppliers used before, single threaded and contended. The setup prints
+ * the heap retained per entry.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AssetIndexBenchmark {
+    @Param({ "properties", "compact" })
+    public String index;
+
+    @Param({ "1000000" })
+    public int count;
+
+    private Properties properties;
+
+    private AssetIndex compact;
+
+    /** Ids to look up, the first half is indexed */
+    private String[] ids;
+
+    @Setup
+    public void setUp() {
+        ids = new String[2 * count];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = Corpus.getId(i);
+        long before = getUsedHeap();
+        Map<String, String> entries = new HashMap<String, String>();
+        for (int i = 0; i < count; i++)
+            entries.put(Corpus.getId(i), Corpus.getId(i) + ".png");
+        if ("compact".equals(index)) {
+            compact = AssetIndex.of(entries);
+        }
+        else {
+            properties = new Properties();
+            properties.putAll(entries);
+        }
+        entries = null;
+        long retained = getUsedHeap() - before;
+        System.out.println();
+        System.out.println(index + ": " + retained / count + " bytes per entry retained");
+    }
+
+    private boolean has(String id) {
+        return (compact != null ? compact.contains(id) : properties.getProperty(id) != null);
+    }
+
+    private String get(String id) {
+        return (compact != null ? compact.get(id) : properties.getProperty(id));
+    }
+
+    @Benchmark
+    public boolean hit() {
+        return has(ids[ThreadLocalRandom.current().nextInt(count)]);
+    }
+
+    @Benchmark
+    public boolean miss() {
+        return has(ids[count + ThreadLocalRandom.current().nextInt(count)]);
+    }
+
+    @Benchmark
+    public String get() {
+        return get(ids[ThreadLocalRandom.current().nextInt(count)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean hitContended() {
+        return hit();
+    }
+
+    /**
+     * Heap in use after collecting garbage.
+     */
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
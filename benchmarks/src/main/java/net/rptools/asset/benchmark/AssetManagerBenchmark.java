@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+import net.rptools.asset.intern.supplier.HttpAssetSupplier;
+import net.rptools.asset.intern.supplier.ZipFileAssetSupplier;
+
+/**
+ * End-to-end getAsset and getAssetAsync through a manager with one source
+ * supplier, decode included. Without cache every load goes to the source;
+ * with cache, loads are served by the memory cache after the first round.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssetManagerBenchmark {
+    @Param({ "file", "zip", "http" })
+    public String source;
+
+    @Param({ "false", "true" })
+    public boolean cache;
+
+    @Param({ "100" })
+    public int count;
+
+    @Param({ "256" })
+    public int size;
+
+    private AssetManagerImpl manager;
+
+    private AssetServer server;
+
+    private List<String> ids;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus corpus = Corpus.get(count, size);
+        ids = corpus.getIds();
+        manager = new AssetManagerImpl(Corpus.getProperties("manager-" + source));
+        manager.registerAssetSupplier(createSource(corpus));
+    }
+
+    private AssetSupplier createSource(Corpus corpus) throws Exception {
+        if ("zip".equals(source))
+            return new ZipFileAssetSupplier(Corpus.getProperties("zip"), corpus.getZipPrefix());
+        if ("http".equals(source)) {
+            server = new AssetServer(corpus.getDirectory());
+            return new HttpAssetSupplier(Corpus.getProperties("http"), server.getUrl());
+        }
+        return new FileAssetSupplier(Corpus.getProperties("file"), corpus.getPrefix());
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (server != null)
+            server.stop();
+    }
+
+    private String randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    @Benchmark
+    public Object getAsset() {
+        return manager.getAsset(randomId(), cache).getMain();
+    }
+
+    @Benchmark
+    public Object getAssetAsync() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Asset> result = new AtomicReference<Asset>();
+        manager.getAssetAsync(randomId(), new AssetListener() {
+            @Override
+            public void notify(String id, Asset obj) {
+                result.set(obj);
+                latch.countDown();
+            }
+            @Override
+            public void notifyPartial(String id, double completed) throws TimeoutException {
+            }
+        }, cache);
+        latch.await();
+        return result.get().getMain();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local static file server for the HttpAssetSupplier, serving a corpus
+ * directory on an ephemeral port.
+ * @author username
+ */
+public class AssetServer {
+    /** Server */
+    private final HttpServer server;
+
+    /**
+     * Start serving.
+     * @param directory directory to serve
+     * @throws IOException if the server cannot be started
+     */
+    public AssetServer(File directory) throws IOException {
+        this(directory, 0);
+    }
+
+    /**
+     * Start serving, answering after a latency, like a remote server.
+     * @param directory directory to serve
+     * @param latency millis before the response headers
+     * @throws IOException if the server cannot be started
+     */
+    public AssetServer(final File directory, final long latency) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                File file = new File(directory, exchange.getRequestURI().getPath().substring(1));
+                try {
+                    if (latency > 0)
+                        Thread.sleep(latency);
+                    if (!file.isFile()) {
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    exchange.sendResponseHeaders(200, file.length());
+                    OutputStream output = exchange.getResponseBody();
+                    Files.copy(file.toPath(), output);
+                    output.close();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /** Getter */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /** Stop serving */
+    public void stop() {
+        server.stop(0);
+    }
+}
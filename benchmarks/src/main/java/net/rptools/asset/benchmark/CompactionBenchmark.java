@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.intern.supplier.AssetIndex;
+import net.rptools.asset.intern.supplier.ZipCompactor;
+
+/**
+ * Entry reads from a corpus pack as written (deflated, in file order) and
+ * after compaction (incompressible entries stored, in id order). Both files
+ * are in the page cache, so this shows the saved inflating, not seeks.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactionBenchmark {
+    @Param({ "100" })
+    public int count;
+
+    @Param({ "256" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean compacted;
+
+    private ZipFile zip;
+
+    private List<String> names;
+
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus corpus = Corpus.get(count, size);
+        Path source = new File(System.getProperty("user.dir"), corpus.getZipPrefix()).toPath();
+        Path target = new File(System.getProperty("user.dir"), corpus.getZipPrefix() + ".compacted").toPath();
+        InputStream stream = new FileInputStream(new File(corpus.getDirectory(), "index"));
+        AssetIndex index;
+        try {
+            index = AssetIndex.load(stream);
+        }
+        finally {
+            stream.close();
+        }
+        ZipCompactor.Result result = ZipCompactor.compact(source, target, index, ZipCompactor.Order.ID,
+            Collections.<String, Long>emptyMap());
+        names = result.getNames();
+        zip = new ZipFile((compacted ? target : source).toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        zip.close();
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        String name = names.get(ThreadLocalRandom.current().nextInt(names.size()));
+        InputStream stream = zip.getInputStream(zip.getEntry(name));
+        long total = 0;
+        try {
+            for (int length = stream.read(buffer); length != -1; length = stream.read(buffer))
+                total += length;
+        }
+        finally {
+            stream.close();
+        }
+        return total;
+    }
+}
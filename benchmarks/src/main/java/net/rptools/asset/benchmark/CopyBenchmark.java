@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+import net.rptools.asset.intern.supplier.ZipFileAssetSupplier;
+
+/**
+ * Throughput of copyAssets from a zip into a fresh file supplier: one
+ * invocation copies the whole corpus. Assets per second follow from the
+ * corpus size.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CopyBenchmark {
+    @Param({ "100" })
+    public int count;
+
+    @Param({ "256" })
+    public int size;
+
+    @Param({ "4" })
+    public int copyParallelism;
+
+    private AssetManagerImpl manager;
+
+    private ZipFileAssetSupplier zip;
+
+    private FileAssetSupplier target;
+
+    private String[] ids;
+
+    private int iteration;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Corpus corpus = Corpus.get(count, size);
+        List<String> list = corpus.getIds();
+        ids = list.toArray(new String[list.size()]);
+        Properties properties = Corpus.getProperties("copy");
+        properties.setProperty("AssetManagerImpl.copyParallelism", String.valueOf(copyParallelism));
+        manager = new AssetManagerImpl(properties);
+        zip = new ZipFileAssetSupplier(Corpus.getProperties("copy"), corpus.getZipPrefix());
+        manager.registerAssetSupplier(zip);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpTarget() throws Exception {
+        File directory = new File(System.getProperty("user.dir"), Corpus.ROOT + "copy-" + count + "x" + size + "-" + iteration++);
+        Corpus.writeIndex(directory, 0, null);
+        target = new FileAssetSupplier(Corpus.getProperties("copy"), directory.getAbsolutePath());
+    }
+
+    @Benchmark
+    public void copyAssets() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(ids.length);
+        manager.copyAssets(ids, target, new AssetListener() {
+            @Override
+            public void notify(String id, Asset obj) {
+                latch.countDown();
+            }
+            @Override
+            public void notifyPartial(String id, double completed) throws TimeoutException {
+            }
+        }, true);
+        latch.await();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+import net.rptools.asset.intern.AssetManagerImpl;
+
+/**
+ * Synthetic asset corpus: a number of noise PNGs of a given size, laid out
+ * for the FileAssetSupplier (a directory with an index) and the
+ * ZipFileAssetSupplier (a zip with an index entry). Noise hardly
+ * compresses, so the encoded size is close to the worst case. Corpora are
+ * kept below target/corpus, relative to <em>user.dir</em>, and reused by
+ * later runs.
+ * @author username
+ */
+public class Corpus {
+    /** Root of all corpora, relative to user.dir */
+    public final static String ROOT = "target" + File.separator + "corpus" + File.separator;
+
+    /** Directory holding the files and their index */
+    private final File directory;
+
+    /** Zip path relative to user.dir, as the ZipFileAssetSupplier expects it */
+    private final String zipPrefix;
+
+    /** Ids of the assets */
+    private final List<String> ids;
+
+    private Corpus(File directory, String zipPrefix, List<String> ids) {
+        this.directory = directory;
+        this.zipPrefix = zipPrefix;
+        this.ids = Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Get a corpus, generating it if it does not exist yet.
+     * @param count number of assets
+     * @param size width and height of the images
+     * @return corpus
+     * @throws IOException if the corpus cannot be written
+     */
+    public static synchronized Corpus get(int count, int size) throws IOException {
+        String name = count + "x" + size;
+        File directory = new File(System.getProperty("user.dir"), ROOT + name + File.separator + "files");
+        String zipPrefix = ROOT + name + File.separator + "assets.zip";
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < count; i++)
+            ids.add(getId(i));
+        File index = new File(directory, "index");
+        File zip = new File(System.getProperty("user.dir"), zipPrefix);
+        if (!index.exists() || !zip.exists()) {
+            if (!directory.exists() && !directory.mkdirs())
+                throw new IOException("Cannot create " + directory);
+            generate(directory, ids, size);
+            zip(directory, zip);
+        }
+        return new Corpus(directory, zipPrefix, ids);
+    }
+
+    /**
+     * Write an index only, all ids naming the same file. For index lookups
+     * of corpora too large to generate.
+     * @param directory directory to write to
+     * @param count number of ids
+     * @param name file named
+     * @throws IOException if the index cannot be written
+     */
+    public static void writeIndex(File directory, int count, String name) throws IOException {
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        PrintStream output = new PrintStream(new FileOutputStream(new File(directory, "index")), false, "ISO-8859-1");
+        try {
+            for (int i = 0; i < count; i++)
+                output.println(getId(i) + "=" + name);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Id of the i-th asset.
+     * @param i number
+     * @return id
+     */
+    public static String getId(int i) {
+        return String.format("asset-%07d", i);
+    }
+
+    /**
+     * Properties for the suppliers and managers, with the disk cache below
+     * the corpora and without warm start.
+     * @param cacheName name of the cache directory
+     * @return total properties
+     * @throws IOException if the defaults cannot be loaded
+     */
+    public static Properties getProperties(String cacheName) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("DiskCacheAssetSupplier.directory", ROOT + "cache-" + cacheName);
+        properties.setProperty("Metrics.jmx", "false");
+        properties.setProperty("WarmStartSnapshot.size", "0");
+        return AssetManagerImpl.getTotalProperties(properties);
+    }
+
+    /** Getter */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /** Getter, absolute path with trailing separator */
+    public String getPrefix() {
+        return directory.getAbsolutePath() + File.separator;
+    }
+
+    /** Getter */
+    public String getZipPrefix() {
+        return zipPrefix;
+    }
+
+    /** Getter */
+    public List<String> getIds() {
+        return ids;
+    }
+
+    /** Getter */
+    public File getFile(String id) {
+        return new File(directory, id + ".png");
+    }
+
+    /**
+     * Write the images and the index.
+     */
+    private static void generate(File directory, List<String> ids, int size) throws IOException {
+        Random random = new Random(4711);
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Properties index = new Properties();
+        for (String id : ids) {
+            for (int y = 0; y < size; y++)
+                for (int x = 0; x < size; x++)
+                    img.setRGB(x, y, random.nextInt());
+            ImageIO.write(img, "png", new File(directory, id + ".png"));
+            index.setProperty(id, id + ".png");
+        }
+        OutputStream output = new FileOutputStream(new File(directory, "index"));
+        try {
+            index.store(output, "Synthetic corpus");
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Zip the directory flat, the index included.
+     */
+    private static void zip(File directory, File zip) throws IOException {
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            for (File file : directory.listFiles()) {
+                output.putNextEntry(new ZipEntry(file.getName()));
+                Files.copy(file.toPath(), output);
+                output.closeEntry();
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+}
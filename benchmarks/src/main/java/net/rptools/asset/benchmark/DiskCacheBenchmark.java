@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.supplier.DiskCacheAssetSupplier;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+
+/**
+ * Latency of disk cache hits. The encoded bytes are read, but not decoded.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiskCacheBenchmark {
+    @Param({ "100" })
+    public int count;
+
+    @Param({ "256" })
+    public int size;
+
+    private DiskCacheAssetSupplier cache;
+
+    private List<String> ids;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus corpus = Corpus.get(count, size);
+        ids = corpus.getIds();
+        FileAssetSupplier source = new FileAssetSupplier(Corpus.getProperties("disk"), corpus.getPrefix());
+        cache = new DiskCacheAssetSupplier(Corpus.getProperties("disk"));
+        for (String id : ids)
+            if (!cache.has(id))
+                cache.update(id, source.get(id, null));
+    }
+
+    @Benchmark
+    public Asset hit() {
+        return cache.get(ids.get(ThreadLocalRandom.current().nextInt(ids.size())), null);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+
+/**
+ * Index lookups of the FileAssetSupplier, hits and misses. The index is
+ * synthetic: all ids name the same file, so large indexes are cheap to set
+ * up.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileIndexBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    public int count;
+
+    private FileAssetSupplier supplier;
+
+    @Setup
+    public void setUp() throws Exception {
+        File directory = new File(System.getProperty("user.dir"), Corpus.ROOT + "index-" + count);
+        if (!new File(directory, "index").exists())
+            Corpus.writeIndex(directory, count, "shared.png");
+        supplier = new FileAssetSupplier(Corpus.getProperties("index"), directory.getAbsolutePath());
+    }
+
+    @Benchmark
+    public boolean hit() {
+        return supplier.has(Corpus.getId(ThreadLocalRandom.current().nextInt(count)));
+    }
+
+    @Benchmark
+    public boolean miss() {
+        return supplier.has(Corpus.getId(count + ThreadLocalRandom.current().nextInt(count)));
+    }
+}
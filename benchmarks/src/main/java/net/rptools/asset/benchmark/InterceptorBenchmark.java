@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.intern.supplier.InputStreamInterceptor;
+
+/**
+ * Overhead of the InputStreamInterceptor over the stream it wraps, with and
+ * without listener, for the buffer sizes suppliers read with.
+ * @author username
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterceptorBenchmark {
+    @Param({ "1048576" })
+    public int length;
+
+    @Param({ "8192" })
+    public int bufferSize;
+
+    private byte[] bytes;
+
+    private byte[] buffer;
+
+    private final AssetListener listener = new AssetListener() {
+        @Override
+        public void notify(String id, Asset obj) {
+        }
+        @Override
+        public void notifyPartial(String id, double completed) throws TimeoutException {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[length];
+        new Random(4711).nextBytes(bytes);
+        buffer = new byte[bufferSize];
+    }
+
+    private long drain(InputStream input) throws IOException {
+        long total = 0;
+        try {
+            for (int n = input.read(buffer); n != -1; n = input.read(buffer))
+                total += n;
+        }
+        finally {
+            input.close();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long raw() throws IOException {
+        return drain(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public long intercepted() throws IOException {
+        return drain(new InputStreamInterceptor("id", length, new ByteArrayInputStream(bytes), null, 1000));
+    }
+
+    @Benchmark
+    public long interceptedWithListener() throws IOException {
+        return drain(new InputStreamInterceptor("id", length, new ByteArrayInputStream(bytes), listener, 1000));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.MemCacheAssetSupplier;
+
+/**
+ * Memory cache get and has under contention: all threads read, and in the
+ * mixed group some threads update at the same time.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemCacheBenchmark {
+    /** Cached assets */
+    @Param({ "1000", "100000" })
+    public int count;
+
+    private MemCacheAssetSupplier cache;
+
+    private Asset asset;
+
+    @Setup
+    public void setUp() throws Exception {
+        cache = new MemCacheAssetSupplier(AssetManagerImpl.getTotalProperties(null));
+        asset = new AssetImpl(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB));
+        for (int i = 0; i < count; i++)
+            cache.update(Corpus.getId(i), asset);
+    }
+
+    private String randomId() {
+        return Corpus.getId(ThreadLocalRandom.current().nextInt(count));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Asset get() {
+        return cache.get(randomId(), null);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean has() {
+        return cache.has(randomId());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public Asset mixedGet() {
+        return cache.get(randomId(), null);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void mixedUpdate() {
+        cache.update(randomId(), asset);
+    }
+}
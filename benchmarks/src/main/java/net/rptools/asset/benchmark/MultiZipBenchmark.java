@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.supplier.MultiZipAssetSupplier;
+import net.rptools.asset.intern.supplier.ZipFileAssetSupplier;
+
+/**
+ * Lookups over many packs: the merged index of one MultiZipAssetSupplier
+ * against asking one ZipFileAssetSupplier per pack in turn, as registering
+ * the packs separately does. Gets go through the union with fewer open
+ * archives than packs, so they include reopening.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiZipBenchmark {
+    @Param({ "10", "100" })
+    public int packs;
+
+    @Param({ "1000" })
+    public int count;
+
+    private MultiZipAssetSupplier union;
+
+    private List<ZipFileAssetSupplier> separate;
+
+    private String[] ids;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<String> prefixes = new ArrayList<String>();
+        ids = new String[packs * count];
+        for (int pack = 0; pack < packs; pack++) {
+            prefixes.add(writePack(pack));
+            for (int i = 0; i < count; i++)
+                ids[pack * count + i] = getId(pack, i);
+        }
+        Properties properties = Corpus.getProperties("multizip");
+        properties.setProperty("MultiZipAssetSupplier.openArchives", "4");
+        union = new MultiZipAssetSupplier(properties, prefixes);
+        separate = new ArrayList<ZipFileAssetSupplier>();
+        for (String prefix : prefixes)
+            separate.add(new ZipFileAssetSupplier(properties, prefix));
+    }
+
+    private String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    @Benchmark
+    public boolean unionHas() {
+        return union.has(randomId());
+    }
+
+    @Benchmark
+    public boolean separateHas() {
+        String id = randomId();
+        for (ZipFileAssetSupplier zip : separate)
+            if (zip.has(id))
+                return true;
+        return false;
+    }
+
+    @Benchmark
+    public Asset unionGet() {
+        return union.get(randomId(), null);
+    }
+
+    private static String getId(int pack, int i) {
+        return "pack" + pack + "-" + Corpus.getId(i);
+    }
+
+    /**
+     * Write a pack whose ids all name the same small image, unless it
+     * exists.
+     * @return prefix relative to user.dir
+     */
+    private String writePack(int pack) throws IOException {
+        String prefix = Corpus.ROOT + "packs" + count + File.separator + "pack" + pack + ".zip";
+        File file = new File(System.getProperty("user.dir"), prefix);
+        if (file.exists())
+            return prefix;
+        if (!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+            throw new IOException("Cannot create " + file.getParentFile());
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            PrintStream indexOutput = new PrintStream(index, false, "ISO-8859-1");
+            for (int i = 0; i < count; i++)
+                indexOutput.println(getId(pack, i) + "=image.png");
+            indexOutput.close();
+            output.putNextEntry(new ZipEntry("index"));
+            output.write(index.toByteArray());
+            output.closeEntry();
+            output.putNextEntry(new ZipEntry("image.png"));
+            ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB), "png", output);
+            output.closeEntry();
+        }
+        finally {
+            output.close();
+        }
+        return prefix;
+    }
+}
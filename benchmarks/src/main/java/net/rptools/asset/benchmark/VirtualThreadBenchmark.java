@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.Threads;
+import net.rptools.asset.intern.supplier.HttpAssetSupplier;
+
+/**
+ * Many concurrent getAssetAsync over HTTP with server latency, without
+ * cache, in platform and in virtual thread mode. One invocation issues all
+ * loads and waits for the last one. Virtual mode needs Java 21; before, it
+ * falls back to platform threads and measures the same.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+    @Param({ "platform", "virtual" })
+    public String mode;
+
+    @Param({ "10000" })
+    public int loads;
+
+    @Param({ "50" })
+    public long latency;
+
+    @Param({ "100" })
+    public int count;
+
+    @Param({ "64" })
+    public int size;
+
+    private AssetManagerImpl manager;
+
+    private AssetServer server;
+
+    private List<String> ids;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus corpus = Corpus.get(count, size);
+        ids = corpus.getIds();
+        server = new AssetServer(corpus.getDirectory(), latency);
+        Properties properties = Corpus.getProperties("virtual-" + mode);
+        properties.setProperty(Threads.class.getSimpleName() + ".mode", mode);
+        manager = new AssetManagerImpl(properties);
+        manager.registerAssetSupplier(new HttpAssetSupplier(Corpus.getProperties("http"), server.getUrl()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public int getAssetAsync() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(loads);
+        final AtomicInteger loaded = new AtomicInteger();
+        AssetListener listener = new AssetListener() {
+            @Override
+            public void notify(String id, Asset obj) {
+                if (obj != null && obj.getMain() != null)
+                    loaded.incrementAndGet();
+                latch.countDown();
+            }
+            @Override
+            public void notifyPartial(String id, double completed) throws TimeoutException {
+            }
+        };
+        for (int i = 0; i < loads; i++)
+            manager.getAssetAsync(ids.get(i % ids.size()), listener, false);
+        latch.await();
+        return loaded.get();
+    }
+}
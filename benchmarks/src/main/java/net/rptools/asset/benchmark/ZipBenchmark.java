@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.supplier.ZipFileAssetSupplier;
+
+/**
+ * Throughput of zip entry reads, through get (encoded asset) and through
+ * the raw channel. Bytes per second follow from the corpus image size.
+ * Zip reads are serialized by the supplier; run with -t to see contention.
+ * @author username
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipBenchmark {
+    @Param({ "100" })
+    public int count;
+
+    @Param({ "256" })
+    public int size;
+
+    private ZipFileAssetSupplier zip;
+
+    private List<String> ids;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus corpus = Corpus.get(count, size);
+        ids = corpus.getIds();
+        zip = new ZipFileAssetSupplier(Corpus.getProperties("zip"), corpus.getZipPrefix());
+    }
+
+    private String randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    @Benchmark
+    public Asset get() {
+        return zip.get(randomId(), null);
+    }
+
+    @Benchmark
+    public long channel() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long total = 0;
+        ReadableByteChannel channel = zip.openRead(randomId());
+        try {
+            for (int n = channel.read(buffer); n != -1; n = channel.read(buffer)) {
+                total += n;
+                buffer.clear();
+            }
+        }
+        finally {
+            channel.close();
+        }
+        return total;
+    }
+}
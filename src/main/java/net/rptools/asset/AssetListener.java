@@ -40,7 +40,8 @@ public interface AssetListener {
      * be called monotone fashion and is always a guess. If the request shall
      * be aborted, throw a TimeoutException. In that case notify is called with
      * a null. Note that this may effect other listeners of the same asset as
-     * well.
+     * well. Prefer an {@link AssetRequest}, which aborts with defined
+     * results.
      * @param id object id to inform about.
      * @param completed completion 0..1
      * @throws TimeoutException if the retrieval should be aborted. (Notify is
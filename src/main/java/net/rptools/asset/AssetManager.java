@@ -14,14 +14,20 @@
  */
 package net.rptools.asset;
 
+import java.awt.Rectangle;
+
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
 
 /**
  * This class exists in the client and in the server and is responsible for
  * providing opaque objects (assets) from different sources. It evaluates
  * registered supplier by priorities. See the individual suppliers for asset
- * sources. Suppliers created must be registered separately.
+ * sources. Suppliers created must be registered separately. The caller owns
+ * them: suppliers that are Closeable, like watching file suppliers, are
+ * closed by the caller after deregistering them. Neither deregistration nor
+ * close() closes a supplier.
  * @author username
  */
 public interface AssetManager {
@@ -32,7 +38,7 @@ public interface AssetManager {
     public void registerAssetSupplier(AssetSupplier supplier);
 
     /**
-     * Supplier deregister method.
+     * Supplier deregister method. Does not close the supplier.
      * @param supplier object to deregister. We ignore null.
      */
     public void deregisterAssetSupplier(AssetSupplier supplier);
@@ -59,6 +65,88 @@ public interface AssetManager {
      */
     public void getAssetAsync(final String id, final AssetListener listener, final boolean cache);
 
+    /**
+     * Get an asset synchronously, giving up when the request is cancelled or
+     * its deadline passes. See {@link #getAsset(String, boolean)}.
+     * @param id identifies the asset (globally unique)
+     * @param cache cache the asset? Aborted loads are not cached.
+     * @param request cancellation handle and deadline; null for none
+     * @return the java object representing the asset; null if not found or
+     *   aborted
+     * @throws NullPointerException if id is null
+     */
+    public Asset getAsset(String id, boolean cache, AssetRequest request);
+
+    /**
+     * Get an asset asynchronously, giving up when the request is cancelled
+     * or its deadline passes. Aborting closes the connection or channel of
+     * the load, skips its pending decode and releases its thread at once.
+     * The listener is then notified with a null, exactly once. See
+     * {@link #getAssetAsync(String, AssetListener, boolean)}.
+     * @param id identifies the asset (globally unique)
+     * @param listener the listener to inform when the java object representing
+     *    the asset is available. Pass a null, if not interested in success.
+     * @param cache cache the asset? Aborted loads are not cached.
+     * @param request cancellation handle and deadline; null for none
+     * @throws NullPointerException if id is null
+     */
+    public void getAssetAsync(String id, AssetListener listener, boolean cache, AssetRequest request);
+
+    /**
+     * Get a reduced image asset synchronously: a region and/or a thumbnail.
+     * Only the pixels needed are decoded, where the supplier provides the
+     * encoded image. Reduced images are cached in memory separately from the
+     * full asset. The returned object is null if not found.
+     * @param id identifies the asset (globally unique)
+     * @param options region and target size; null for the full image
+     * @param cache cache the asset (and the reduced image)?
+     * @return the java object representing the reduced asset.
+     * @throws NullPointerException if id is null
+     */
+    public Asset getAsset(String id, ReadOptions options, boolean cache);
+
+    /**
+     * Get an image asset for display at a scale synchronously. If the
+     * suppliers hold a mip pyramid for the asset, the smallest level that is
+     * at least as large as the scaled image is returned instead of the full
+     * image, i.e. the result has to be scaled further by at most a factor of
+     * two. The returned object is null if not found.
+     * @param id identifies the asset (globally unique)
+     * @param scale scale the image is displayed at, 1 is full size
+     * @param cache cache the asset (level)?
+     * @return the java object representing the asset or a level of it.
+     * @throws NullPointerException if id is null
+     */
+    public Asset getAsset(String id, double scale, boolean cache);
+
+    /**
+     * Get the tiles of a very large image asynchronously. Images imported
+     * beyond a size are split into tiles, each retrieved, decoded and cached
+     * on its own. The tiles intersecting the region are notified one by one,
+     * the center of the region first. If the asset is not tiled, the
+     * complete asset is retrieved as by
+     * {@link #getAssetAsync(String, AssetListener, boolean)}.
+     * @param id identifies the asset (globally unique)
+     * @param region region of the image in image pixels; null for all tiles
+     * @param listener the listener to inform about each tile
+     * @param cache cache the tiles?
+     * @throws NullPointerException if id or listener is null
+     */
+    public void getTilesAsync(String id, Rectangle region, TileListener listener, boolean cache);
+
+    /**
+     * Get a reduced image asset asynchronously. See
+     * {@link #getAsset(String, ReadOptions, boolean)} and
+     * {@link #getAssetAsync(String, AssetListener, boolean)}.
+     * @param id identifies the asset (globally unique)
+     * @param options region and target size; null for the full image
+     * @param listener the listener to inform when the reduced asset is
+     *    available. Pass a null, if not interested in success.
+     * @param cache cache the asset (and the reduced image)?
+     * @throws NullPointerException if id is null
+     */
+    public void getAssetAsync(String id, ReadOptions options, AssetListener listener, boolean cache);
+
     /**
      * Create a new asset to be managed by the suppliers. Which handler will
      * provide the asset in the future is transparent to the user and governed
@@ -88,7 +176,10 @@ public interface AssetManager {
      * individually when completed. Partial completion is not notified. If
      * update is false and an asset already exists, a different id is
      * notified than was passed in. Equality on the asset may be checked to
-     * find out the additional asset.
+     * find out the additional asset. Assets are copied in parallel, so
+     * notifications need not arrive in the order of the ids. If both the
+     * source and the destination supplier are streaming suppliers, the
+     * encoded bytes are copied without decoding.
      * @param ids list of assets to copy
      * @param update whether to overwrite in the destination supplier.
      * @param supplier destination
@@ -120,4 +211,27 @@ public interface AssetManager {
      * @param properties change behaviour of the supplier, may be null
      */
     public AssetSupplier createZipFileAssetSupplier(Properties props, String prefix);
+
+    /**
+     * Provide many zip files as one supplier with a merged index. Read
+     * operations only. Faults will result in a null return value.
+     * @param prefixes each actually an infix after <em>user.dir</em>; later
+     *   zip files override earlier ones
+     * @param properties change behaviour of the supplier, may be null
+     */
+    public AssetSupplier createMultiZipAssetSupplier(Properties props, List<String> prefixes);
+
+    /**
+     * Prefetch the warm-start snapshot, if enabled, into the memory cache in
+     * the background. Call once the suppliers are registered: assets without
+     * pixels in the snapshot are only found in registered suppliers. Only
+     * the first call prefetches.
+     */
+    public void prefetchWarmStart();
+
+    /**
+     * End using the manager: save the warm-start snapshot, if enabled, and
+     * stop saving it on shutdown. Idempotent.
+     */
+    public void close();
 }
@@ -0,0 +1,223 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handle to cancel asset requests, optionally with a deadline. One handle
+ * may be passed to many requests, e.g. for all assets of a view, and
+ * cancels all of them. Once cancelled or expired, a handle stays aborted.
+ * Aborting closes the connections and channels of the running loads and
+ * skips their pending decodes. Listeners of aborted requests are notified
+ * with a null.
+ * @author username
+ */
+public final class AssetRequest {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(AssetRequest.class.getSimpleName());
+
+    /** Timer for deadlines, created on first use */
+    private static ScheduledExecutorService timer;
+
+    /** Deadline in System.nanoTime, or 0 */
+    private final long deadline;
+
+    /** Expiry task, null without deadline */
+    private final ScheduledFuture<?> expiry;
+
+    /** Set on cancel */
+    private volatile boolean cancelled;
+
+    /** Set when the deadline passed */
+    private volatile boolean expired;
+
+    /** Bytes read by the loads */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /** Resources to close on abort; null once aborted */
+    private Set<Closeable> resources = Collections.newSetFromMap(new IdentityHashMap<Closeable, Boolean>());
+
+    /**
+     * Constructor for requests without deadline.
+     */
+    public AssetRequest() {
+        this(0);
+    }
+
+    /**
+     * Constructor.
+     * @param timeout millis from now until the requests are aborted; 0 for
+     *   no deadline
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public AssetRequest(long timeout) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("Negative timeout " + timeout);
+        if (timeout == 0) {
+            deadline = 0;
+            expiry = null;
+        }
+        else {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            expiry = getTimer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expired = true;
+                    abort();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Abort all requests using this handle. Idempotent.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (expiry != null)
+            expiry.cancel(false);
+        abort();
+    }
+
+    /** Getter */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Getter */
+    public boolean isExpired() {
+        return expired || (deadline != 0 && System.nanoTime() - deadline >= 0);
+    }
+
+    /**
+     * Whether the requests should be given up.
+     * @return true if cancelled or expired
+     */
+    public boolean isAborted() {
+        return cancelled || isExpired();
+    }
+
+    /**
+     * Time left until the deadline.
+     * @return millis; Long.MAX_VALUE without deadline
+     */
+    public long getRemaining() {
+        if (deadline == 0)
+            return Long.MAX_VALUE;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Count bytes read by a load of this handle.
+     * @param bytes number of bytes
+     */
+    public void countRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    /** Getter */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Register a resource of a running load to be closed on abort. If the
+     * handle is aborted already, the resource is closed at once.
+     * @param resource connection, channel or stream to close
+     * @return false, if the resource was closed because the handle is
+     *   aborted
+     */
+    public boolean onAbort(Closeable resource) {
+        synchronized (this) {
+            if (resources != null) {
+                resources.add(resource);
+                return true;
+            }
+        }
+        close(resource);
+        return false;
+    }
+
+    /**
+     * Deregister a resource after the load completed.
+     * @param resource resource passed to onAbort
+     */
+    public synchronized void remove(Closeable resource) {
+        if (resources != null)
+            resources.remove(resource);
+    }
+
+    /**
+     * Close all registered resources.
+     */
+    private void abort() {
+        List<Closeable> closing;
+        synchronized (this) {
+            if (resources == null)
+                return;
+            closing = new ArrayList<Closeable>(resources);
+            resources = null;
+        }
+        for (Closeable resource : closing)
+            close(resource);
+    }
+
+    /**
+     * Close quietly.
+     */
+    private static void close(Closeable resource) {
+        try {
+            resource.close();
+        }
+        catch (IOException e) {
+            LOGGER.debug("Closing aborted resource failed", e);
+        }
+    }
+
+    /**
+     * Timer thread for deadlines.
+     */
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "AssetRequestTimer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            timer = executor;
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Asynchronous retrieval notification with intermediate images. Suppliers
+ * that decode while loading (currently the HTTP supplier) pass snapshots of
+ * the partially decoded image, e.g. after each pass of a progressive JPEG
+ * or an interlaced PNG, or with the rows decoded so far. Snapshots are
+ * rate-limited by the notify interval of the supplier. Suppliers that
+ * cannot decode while loading only call the methods of {@link AssetListener}.
+ * @author username
+ */
+public interface ProgressiveAssetListener extends AssetListener {
+    /**
+     * Call-back method for an intermediate image. The image is a copy owned
+     * by the listener; pixels not decoded yet are transparent or blurred
+     * from earlier passes.
+     * @param id object id to inform about
+     * @param image snapshot of the image decoded so far
+     */
+    public void notifyImage(String id, BufferedImage image);
+}
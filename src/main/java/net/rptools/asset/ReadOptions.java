@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset;
+
+import java.awt.Rectangle;
+
+/**
+ * Options for retrieving a reduced image asset: a region of the source image
+ * and/or a target size. Images are reduced by integer subsampling while
+ * decoding, so the result is at least as large as the target size, but
+ * never larger than needed for an integer step. Reduced images are variants
+ * of an asset; they are cached separately in memory under the variant id.
+ * Instances are immutable.
+ * @author username
+ */
+public final class ReadOptions {
+    /** Separates asset ids from variant keys */
+    public static final String VARIANT_SEPARATOR = "~";
+
+    /** Minimal width wanted, 0 if not restricted */
+    private final int targetWidth;
+
+    /** Minimal height wanted, 0 if not restricted */
+    private final int targetHeight;
+
+    /** Region of the source image in source pixels, null for all */
+    private final Rectangle sourceRegion;
+
+    /**
+     * Constructor.
+     * @param targetWidth minimal width wanted, 0 if not restricted
+     * @param targetHeight minimal height wanted, 0 if not restricted
+     * @param sourceRegion region of the source image, null for all
+     */
+    public ReadOptions(int targetWidth, int targetHeight, Rectangle sourceRegion) {
+        this.targetWidth = Math.max(0, targetWidth);
+        this.targetHeight = Math.max(0, targetHeight);
+        this.sourceRegion = (sourceRegion != null ? new Rectangle(sourceRegion) : null);
+    }
+
+    /** Options for a thumbnail at least of the given size */
+    public static ReadOptions thumbnail(int targetWidth, int targetHeight) {
+        return new ReadOptions(targetWidth, targetHeight, null);
+    }
+
+    /** Options for a region of the source image in full resolution */
+    public static ReadOptions region(Rectangle sourceRegion) {
+        return new ReadOptions(0, 0, sourceRegion);
+    }
+
+    /** Getter */
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    /** Getter */
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    /** Getter, returns a copy */
+    public Rectangle getSourceRegion() {
+        return (sourceRegion != null ? new Rectangle(sourceRegion) : null);
+    }
+
+    /**
+     * Id of the variant of an asset described by these options.
+     * @param id asset id
+     * @return variant id
+     */
+    public String getVariantId(String id) {
+        StringBuilder key = new StringBuilder(id).append(VARIANT_SEPARATOR);
+        if (sourceRegion != null) {
+            key.append('r').append(sourceRegion.x).append(',').append(sourceRegion.y).append(',')
+                .append(sourceRegion.width).append(',').append(sourceRegion.height);
+        }
+        if (targetWidth > 0 || targetHeight > 0)
+            key.append('s').append(targetWidth).append('x').append(targetHeight);
+        return key.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((sourceRegion == null) ? 0 : sourceRegion.hashCode());
+        result = prime * result + targetHeight;
+        result = prime * result + targetWidth;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        ReadOptions other = (ReadOptions) obj;
+        if (sourceRegion == null) {
+            if (other.sourceRegion != null) return false;
+        }
+        else if (!sourceRegion.equals(other.sourceRegion)) return false;
+        return targetHeight == other.targetHeight && targetWidth == other.targetWidth;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Asset supplier that gives access to the encoded bytes of its assets. This
+ * allows copying assets between suppliers without decoding and re-encoding
+ * them. Writing is only possible, if canCreate holds for images.
+ * @author username
+ */
+public interface StreamingAssetSupplier extends AssetSupplier {
+    /**
+     * Open the encoded asset for reading. The caller closes the channel.
+     * @param id asset identifier
+     * @return channel to read from or null, if the asset is not known
+     * @throws IOException if the asset cannot be opened
+     */
+    public ReadableByteChannel openRead(String id) throws IOException;
+
+    /**
+     * Open the encoded asset for writing. This is an upsert like update.
+     * The caller closes the channel; the asset is complete only afterwards.
+     * @param id asset identifier
+     * @return channel to write to
+     * @throws IOException if the asset cannot be opened
+     * @throws UnsupportedOperationException if the supplier cannot write
+     */
+    public WritableByteChannel openWrite(String id) throws IOException;
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset;
+
+/**
+ * Asynchronous retrieval notification for tiled images. Each tile is
+ * notified as soon as it is available, so a viewport can render while the
+ * remaining tiles load. {@link #notifyPartial} reports the fraction of
+ * tiles delivered; throwing a TimeoutException there stops the delivery of
+ * the remaining tiles. {@link #notify} is called last: with null for a
+ * tiled image, or with the complete asset, if the asset is not tiled.
+ * @author username
+ */
+public interface TileListener extends AssetListener {
+    /**
+     * Call-back method for a completed tile.
+     * @param id id of the (complete) asset
+     * @param manifest layout of the tiled image
+     * @param column tile column
+     * @param row tile row
+     * @param tile the tile, null if it could not be loaded
+     */
+    public void notifyTile(String id, TileManifest manifest, int column, int row, Asset tile);
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Layout of a tiled image asset. Very large images are stored as a grid of
+ * fixed-size tiles, each a separate (variant) asset, plus this manifest.
+ * Tiles in the last column and row may be smaller. Instances are immutable.
+ * @author username
+ */
+public final class TileManifest {
+    /** Width of the complete image */
+    private final int width;
+
+    /** Height of the complete image */
+    private final int height;
+
+    /** Width and height of the tiles */
+    private final int tileSize;
+
+    /**
+     * Constructor.
+     * @param width width of the complete image
+     * @param height height of the complete image
+     * @param tileSize width and height of the tiles
+     * @throws IllegalArgumentException if a size is not positive
+     */
+    public TileManifest(int width, int height, int tileSize) {
+        if (width <= 0 || height <= 0 || tileSize <= 0)
+            throw new IllegalArgumentException("TileManifest: sizes must be positive");
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+    }
+
+    /** Getter */
+    public int getWidth() {
+        return width;
+    }
+
+    /** Getter */
+    public int getHeight() {
+        return height;
+    }
+
+    /** Getter */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /** Number of tile columns */
+    public int getColumns() {
+        return (width + tileSize - 1) / tileSize;
+    }
+
+    /** Number of tile rows */
+    public int getRows() {
+        return (height + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Area of the complete image covered by a tile.
+     * @param column tile column
+     * @param row tile row
+     * @return tile bounds in image pixels
+     */
+    public Rectangle getTileBounds(int column, int row) {
+        int x = column * tileSize;
+        int y = row * tileSize;
+        return new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+    }
+
+    /**
+     * Id of the manifest of an asset.
+     * @param id asset id
+     * @return manifest id
+     */
+    public static String getManifestId(String id) {
+        return id + ReadOptions.VARIANT_SEPARATOR + "tiles";
+    }
+
+    /**
+     * Id of a tile of an asset.
+     * @param id asset id
+     * @param column tile column
+     * @param row tile row
+     * @return tile id
+     */
+    public static String getTileId(String id, int column, int row) {
+        return id + ReadOptions.VARIANT_SEPARATOR + "tile-" + column + "-" + row;
+    }
+
+    /**
+     * Read a manifest, encoded as java properties.
+     * @param input stream to read from; not closed
+     * @return manifest
+     * @throws IOException if the stream cannot be read or is no manifest
+     */
+    public static TileManifest read(InputStream input) throws IOException {
+        Properties properties = new Properties();
+        properties.load(input);
+        try {
+            return new TileManifest(Integer.parseInt(properties.getProperty("width")),
+                Integer.parseInt(properties.getProperty("height")),
+                Integer.parseInt(properties.getProperty("tileSize")));
+        }
+        catch (IllegalArgumentException e) { // includes NumberFormatException
+            throw new IOException("Invalid tile manifest", e);
+        }
+    }
+
+    /**
+     * Write the manifest, encoded as java properties.
+     * @param output stream to write to; not closed
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream output) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("width", Integer.toString(width));
+        properties.setProperty("height", Integer.toString(height));
+        properties.setProperty("tileSize", Integer.toString(tileSize));
+        properties.store(output, "Tile manifest");
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + height;
+        result = prime * result + tileSize;
+        result = prime * result + width;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        TileManifest other = (TileManifest) obj;
+        return height == other.height && tileSize == other.tileSize && width == other.width;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeoutException;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetRequest;
+import net.rptools.asset.ProgressiveAssetListener;
+
+/**
+ * Listener of a request that can be aborted. Once aborted, progress reports
+ * abort the supplier and the listener is notified exactly once with a null.
+ * @author username
+ */
+class AbortableListener implements AssetListener {
+    /** Listener to forward to */
+    protected final AssetListener listener;
+
+    /** Request handle */
+    protected final AssetRequest request;
+
+    /** Whether notify was forwarded */
+    private boolean notified;
+
+    /**
+     * Wrap a listener, keeping it progressive if it is.
+     * @param listener listener to wrap; may be null
+     * @param request request handle
+     * @return wrapped listener or null
+     */
+    static AbortableListener wrap(AssetListener listener, AssetRequest request) {
+        if (listener == null)
+            return null;
+        if (listener instanceof ProgressiveAssetListener)
+            return new Progressive((ProgressiveAssetListener) listener, request);
+        return new AbortableListener(listener, request);
+    }
+
+    private AbortableListener(AssetListener listener, AssetRequest request) {
+        this.listener = listener;
+        this.request = request;
+    }
+
+    @Override
+    public void notify(String id, Asset obj) {
+        synchronized (this) {
+            if (notified)
+                return;
+            notified = true;
+        }
+        listener.notify(id, request.isAborted() ? null : obj);
+    }
+
+    @Override
+    public void notifyPartial(String id, double completed) throws TimeoutException {
+        if (request.isAborted())
+            throw new TimeoutException("Request for " + id + " aborted");
+        listener.notifyPartial(id, completed);
+    }
+
+    /**
+     * Notify a null, unless notified already.
+     * @param id asset id
+     */
+    void notifyAborted(String id) {
+        notify(id, null);
+    }
+
+    /**
+     * Variant for progressive listeners.
+     */
+    private static class Progressive extends AbortableListener implements ProgressiveAssetListener {
+        private Progressive(ProgressiveAssetListener listener, AssetRequest request) {
+            super(listener, request);
+        }
+
+        @Override
+        public void notifyImage(String id, BufferedImage image) {
+            if (!request.isAborted())
+                ((ProgressiveAssetListener) listener).notifyImage(id, image);
+        }
+    }
+}
@@ -14,18 +14,36 @@
  */
 package net.rptools.asset.intern;
 
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetRequest;
 import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.ReadOptions;
+import net.rptools.asset.StreamingAssetSupplier;
+import net.rptools.asset.TileListener;
+import net.rptools.asset.TileManifest;
+import net.rptools.asset.intern.jfr.AssetEvent;
+import net.rptools.asset.intern.jfr.LookupEvent;
 import net.rptools.asset.intern.supplier.*;
 
 /**
@@ -36,49 +54,124 @@ public class AssetManagerImpl implements net.rptools.asset.AssetManager {
     /** Logging */
     private final static Logger LOGGER = LoggerFactory.getLogger(AssetManagerImpl.class.getSimpleName());
 
-    /** Our thread pool */
-    private ExecutorService executors = Executors.newCachedThreadPool();
+    /** Settings shared by all managers of the process */
+    private final static String[] PROCESS_WIDE = {
+        Threads.class.getSimpleName() + ".mode",
+        ImageDecoder.class.getSimpleName() + ".parallelism",
+        ImageDecoder.class.getSimpleName() + ".pixelType",
+        Metrics.class.getSimpleName() + ".jmx"
+    };
+
+    /** Process-wide settings in effect, null before the first manager */
+    private static Properties processWide;
+
+    /** Our thread pool, or a virtual thread per task */
+    private final ExecutorService executors;
+
+    /** All suppliers, replaced as a whole on (de)registration */
+    private volatile SupplierRouting routing = SupplierRouting.EMPTY;
+
+    /** Chooses the suppliers to read from and write to */
+    private SupplierSelectionStrategy strategy;
+
+    /** Memory cache, source and target of the warm-start snapshot */
+    private MemCacheAssetSupplier memCache;
+
+    /** Off-heap cache, null if not configured */
+    private OffHeapCacheAssetSupplier offHeapCache;
 
-    /** All suppliers */
-    private SortedSet<AssetSupplier> assetSuppliers;
+    /** Encoded bytes cache, null if not configured */
+    private ByteCacheAssetSupplier byteCache;
+
+    /** Warm-start snapshot of the memory cache */
+    private WarmStartSnapshot snapshot;
+
+    /** Saves the snapshot on shutdown, null if not enabled or closed */
+    private Thread snapshotSaver;
+
+    /** Whether the warm-start snapshot was prefetched */
+    private boolean prefetched;
+
+    /** Maximum number of assets copied in parallel by one copyAssets call */
+    private int copyParallelism;
+
+    /** Maximum number of tiles retrieved in parallel by one getTilesAsync call */
+    private int tileParallelism;
+
+    /** Drops cached copies of assets changed in their sources */
+    private final ChangingAssetSupplier.ChangeListener changeListener = new ChangingAssetSupplier.ChangeListener() {
+        @Override
+        public void changed(AssetSupplier supplier, Collection<String> ids) {
+            LOGGER.debug("{} changed {} assets", supplier, ids.size());
+            for (String id : ids)
+                invalidate(id);
+        }
+    };
 
     /**
-     * Should make constructor invisible. Provide a comparator instead of decorating
-     * all AssetSuppliers
+     * Should make constructor invisible.
      * @param properties properties to initialize suppliers with
      * @throws Exception instantiation or property retrieval problems
      */
     public AssetManagerImpl(Properties properties) throws Exception {
-        SortedSet<AssetSupplier> set = new TreeSet<AssetSupplier>(new Comparator<AssetSupplier>() {
-            @Override
-            public int compare(AssetSupplier high, AssetSupplier low) {
-                return low.getPriority() - high.getPriority();
-            }
-        });
-        assetSuppliers = Collections.synchronizedSortedSet(set);
-        fillSuppliers(properties);
+        Properties total = getTotalProperties(properties);
+        copyParallelism = Integer.parseInt(total.getProperty(AssetManagerImpl.class.getSimpleName() + ".copyParallelism"));
+        tileParallelism = Integer.parseInt(total.getProperty(AssetManagerImpl.class.getSimpleName() + ".tileParallelism"));
+        configureProcess(total);
+        executors = Threads.newExecutor(Executors.defaultThreadFactory());
+        strategy = createStrategy(total);
+        fillSuppliers(total);
+        startWarmStart(total);
     };
 
+    /**
+     * Apply the thread mode, the decode stage and the JMX registration. These
+     * are process-wide and set once by the first manager; later managers
+     * share them, and differing settings of theirs are ignored with a
+     * warning.
+     * @param total properties of the manager
+     */
+    private static synchronized void configureProcess(Properties total) {
+        if (processWide == null) {
+            Threads.configure(total);
+            ImageDecoder.configure(total);
+            Metrics.configure(total);
+            processWide = new Properties();
+            for (String key : PROCESS_WIDE)
+                if (total.getProperty(key) != null)
+                    processWide.setProperty(key, total.getProperty(key));
+            return;
+        }
+        for (String key : PROCESS_WIDE)
+            if (!Objects.equals(processWide.getProperty(key), total.getProperty(key)))
+                LOGGER.warn("{} is process-wide, keeping {} of the first manager", key, processWide.getProperty(key));
+    }
+
     @Override
-    public void registerAssetSupplier(AssetSupplier supplier) {
+    public synchronized void registerAssetSupplier(AssetSupplier supplier) {
         if (supplier == null) return;
         // Safety
-        for (AssetSupplier iSupplier : assetSuppliers) {
+        for (AssetSupplier iSupplier : routing.getSuppliers()) {
             if (supplier != iSupplier && supplier.getPriority() == iSupplier.getPriority())
                 throw new RuntimeException("Two asset suppliers with the same priority!");
         }
-        assetSuppliers.add(supplier);
+        routing = routing.add(supplier);
+        if (supplier instanceof ChangingAssetSupplier)
+            ((ChangingAssetSupplier) supplier).setChangeListener(changeListener);
     }
 
     @Override
-    public void deregisterAssetSupplier(AssetSupplier supplier) {
+    public synchronized void deregisterAssetSupplier(AssetSupplier supplier) {
         if (supplier == null) return;
-        assetSuppliers.remove(supplier);
+        routing = routing.remove(supplier);
+        Metrics.getInstance().remove(supplier);
+        if (supplier instanceof ChangingAssetSupplier)
+            ((ChangingAssetSupplier) supplier).setChangeListener(null);
     }
 
     @Override
     public Asset getAsset(String id, boolean cache) {
-        return getAsset(id, null, cache);
+        return getAsset(id, (AssetListener) null, cache);
     }
 
     @Override
@@ -93,45 +186,128 @@ public class AssetManagerImpl implements net.rptools.asset.AssetManager {
         });
     }
 
+    @Override
+    public Asset getAsset(String id, boolean cache, AssetRequest request) {
+        return getAsset(id, (AssetListener) null, cache, request);
+    }
+
+    @Override
+    public void getAssetAsync(final String id, final AssetListener listener, final boolean cache, final AssetRequest request) {
+        if (id == null)
+            throw new NullPointerException("getAssetAsync: id is null");
+        executors.execute(new Runnable() {
+            @Override
+            public void run() {
+                getAsset(id, listener, cache, request);
+            }
+        });
+    }
+
+    @Override
+    public Asset getAsset(String id, ReadOptions options, boolean cache) {
+        return getAsset(id, options, null, cache);
+    }
+
+    @Override
+    public Asset getAsset(String id, double scale, boolean cache) {
+        if (id == null)
+            throw new NullPointerException("getAsset: id is null");
+        for (int level = MipmapBuilder.getLevel(scale); level > 0; level--) {
+            String levelId = MipmapBuilder.getLevelId(id, level);
+            if (strategy.getSupplier(routing, levelId, AssetSupplier.class) != null)
+                return getAsset(levelId, (AssetListener) null, cache);
+        }
+        return getAsset(id, (AssetListener) null, cache);
+    }
+
+    @Override
+    public void getAssetAsync(final String id, final ReadOptions options, final AssetListener listener, final boolean cache) {
+        if (id == null)
+            throw new NullPointerException("getAssetAsync: id is null");
+        executors.execute(new Runnable() {
+            @Override
+            public void run() {
+                getAsset(id, options, listener, cache);
+            }
+        });
+    }
+
+    @Override
+    public void getTilesAsync(final String id, final Rectangle region, final TileListener listener, final boolean cache) {
+        if (id == null)
+            throw new NullPointerException("getTilesAsync: id is null");
+        if (listener == null)
+            throw new NullPointerException("getTilesAsync: listener is null");
+        executors.execute(new Runnable() {
+            @Override
+            public void run() {
+                getTiles(id, region, listener, cache);
+            }
+        });
+    }
+
     @Override
     public void createAsset(final Asset obj, final AssetListener listener, final boolean cache) {
         executors.execute(new Runnable() {
             @Override
             public void run() {
-                DefaultSupplierSelectionStrategy.createAsset(assetSuppliers, obj, listener, cache);
+                strategy.create(routing, obj, listener, cache);
             }
         });
     }
 
     @Override
     public boolean removeAsset(String id) {
+        removeVariants(id);
         boolean success = true;
-        for (AssetSupplier supplier : assetSuppliers)
+        for (AssetSupplier supplier : routing.getSuppliers())
             if (supplier.canRemove(id))
-                success = success && supplier.remove(id);
+                success = success && Metrics.remove(supplier, id);
         return success;
     }
 
+    /**
+     * Drop an asset and its variants from the memory tiers.
+     * @param id asset id
+     */
+    private void removeVariants(String id) {
+        memCache.removeVariants(id);
+        if (offHeapCache != null)
+            offHeapCache.removeVariants(id);
+        if (byteCache != null)
+            byteCache.removeVariants(id);
+    }
+
+    /**
+     * Drop cached copies of an asset, which changed in its source.
+     * @param id asset id
+     */
+    private void invalidate(String id) {
+        removeVariants(id);
+        for (AssetSupplier cache : routing.getCaches())
+            if (cache.canRemove(id))
+                Metrics.remove(cache, id);
+    }
+
     @Override
     public void copyAssets(final String[] ids, final AssetSupplier supplier, final AssetListener listener, final boolean update) throws IOException {
+        final Semaphore slots = new Semaphore(copyParallelism);
         executors.execute(new Runnable() {
             @Override
             public void run() {
-                // We are copying "through memory", because it is a comprehensible solution, although it
-                // would (probably) be more efficient treating each type separately through NIO.
-                for (String id : ids) {
-                    Asset obj = getAsset(id, false);
-                    if (obj != null) {
-                        if (supplier.has(id) && !update) {
-                            id = supplier.create(obj);
-                        }
-                        else {
-                            supplier.update(id, obj);
+                for (final String id : ids) {
+                    slots.acquireUninterruptibly();
+                    executors.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                copyAsset(id, supplier, listener, update);
+                            }
+                            finally {
+                                slots.release();
+                            }
                         }
-                    }
-                    // We notify none-the-less
-                    if (listener != null)
-                        listener.notify(id, obj);
+                    });
                 }
             }
         });
@@ -169,6 +345,17 @@ public class AssetManagerImpl implements net.rptools.asset.AssetManager {
             return null;
         }
     }
+
+    @Override
+    public AssetSupplier createMultiZipAssetSupplier(Properties props, List<String> prefixes) {
+        try {
+            return new MultiZipAssetSupplier(props, prefixes);
+        }
+        catch (Exception e) {
+            LOGGER.error("Can't get multi zip asset supplier", e);
+            return null;
+        }
+    }
     /**
      * Main method for both getAsset and getAssetAsync.
      */
@@ -176,7 +363,325 @@ public class AssetManagerImpl implements net.rptools.asset.AssetManager {
         if (id == null)
             throw new NullPointerException("getAsset: id is null");
 
-        return DefaultSupplierSelectionStrategy.getAssetByStrategy(assetSuppliers, id, listener, cache);
+        LookupEvent event = new LookupEvent();
+        Asset result = null;
+        String outcome = AssetEvent.ERROR;
+        event.begin();
+        try {
+            result = strategy.getAsset(routing, id, TracedListener.wrap(listener), cache);
+            outcome = (RequestContext.isAborted() ? AssetEvent.ABORTED : AssetEvent.getOutcome(result));
+            return result;
+        }
+        finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.setId(id);
+                event.setBytes(AssetEvent.getBytes(result));
+                event.setOutcome(outcome);
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Main method for requests that can be aborted. The request is bound to
+     * the running thread for the suppliers.
+     */
+    private Asset getAsset(String id, AssetListener listener, boolean cache, AssetRequest request) {
+        if (request == null)
+            return getAsset(id, listener, cache);
+        if (id == null)
+            throw new NullPointerException("getAsset: id is null");
+
+        AbortableListener abortable = AbortableListener.wrap(listener, request);
+        Asset result = null;
+        if (!request.isAborted()) {
+            RequestContext.Scope scope = RequestContext.enter(request);
+            try {
+                result = getAsset(id, abortable, cache);
+            }
+            finally {
+                scope.exit();
+            }
+        }
+        if (request.isAborted()) {
+            if (abortable != null)
+                abortable.notifyAborted(id);
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Main method for tiles. Tiles are retrieved in parallel, bounded by
+     * tileParallelism.
+     */
+    private void getTiles(final String id, Rectangle region, final TileListener listener, final boolean cache) {
+        final TileManifest manifest = getTileManifest(id);
+        if (manifest == null) {
+            getAsset(id, listener, cache);
+            return;
+        }
+
+        final List<Point> tiles = getTiles(manifest, region);
+        final AtomicInteger remaining = new AtomicInteger(tiles.size());
+        final AtomicBoolean aborted = new AtomicBoolean(false);
+        if (tiles.isEmpty())
+            listener.notify(id, null);
+        final Semaphore slots = new Semaphore(tileParallelism);
+        for (final Point tile : tiles) {
+            slots.acquireUninterruptibly();
+            if (aborted.get()) {
+                slots.release();
+                return;
+            }
+            executors.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Asset obj = getAsset(TileManifest.getTileId(id, tile.x, tile.y), (AssetListener) null, cache);
+                        listener.notifyTile(id, manifest, tile.x, tile.y, obj);
+                        int left = remaining.decrementAndGet();
+                        if (left == 0)
+                            listener.notify(id, null);
+                        else
+                            listener.notifyPartial(id, 1 - (double) left / tiles.size());
+                    }
+                    catch (TimeoutException e) {
+                        aborted.set(true);
+                    }
+                    finally {
+                        slots.release();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Read the tile manifest from the supplier holding it.
+     * @param id asset id
+     * @return manifest or null, if the asset is not tiled
+     */
+    private TileManifest getTileManifest(String id) {
+        StreamingAssetSupplier supplier = strategy.getSupplier(routing,
+            TileManifest.getManifestId(id), StreamingAssetSupplier.class);
+        if (supplier == null)
+            return null;
+        try {
+            return TileBuilder.readManifest(supplier, id);
+        }
+        catch (IOException e) {
+            LOGGER.error("Cannot read tile manifest of " + id, e);
+            return null;
+        }
+    }
+
+    /**
+     * Tiles intersecting a region, the tile nearest to the center of the
+     * region first.
+     * @param manifest tile layout
+     * @param region region in image pixels; null for all
+     * @return column/row pairs
+     */
+    private static List<Point> getTiles(TileManifest manifest, Rectangle region) {
+        final Rectangle area = new Rectangle(0, 0, manifest.getWidth(), manifest.getHeight());
+        if (region != null)
+            area.setBounds(area.intersection(region));
+        List<Point> tiles = new ArrayList<Point>();
+        if (area.isEmpty())
+            return tiles;
+        int size = manifest.getTileSize();
+        for (int row = area.y / size; row <= (area.y + area.height - 1) / size; row++)
+            for (int column = area.x / size; column <= (area.x + area.width - 1) / size; column++)
+                tiles.add(new Point(column, row));
+        final double x = area.getCenterX() / size - 0.5;
+        final double y = area.getCenterY() / size - 0.5;
+        Collections.sort(tiles, new Comparator<Point>() {
+            @Override
+            public int compare(Point a, Point b) {
+                return Double.compare(a.distanceSq(x, y), b.distanceSq(x, y));
+            }
+        });
+        return tiles;
+    }
+
+    /**
+     * Main method for reduced images. The full asset is retrieved without
+     * notifying the listener and then reduced. Encoded assets only decode
+     * the pixels needed.
+     */
+    private Asset getAsset(String id, ReadOptions options, final AssetListener listener, boolean cache) {
+        if (options == null)
+            return getAsset(id, listener, cache);
+        if (id == null)
+            throw new NullPointerException("getAsset: id is null");
+
+        String variantId = options.getVariantId(id);
+        Asset result = Metrics.get(memCache, variantId, null);
+        if (result == null) {
+            AssetListener progress = null;
+            if (listener != null) {
+                progress = new AssetListener() {
+                    @Override
+                    public void notify(String id, Asset obj) {
+                        // We notify the reduced asset ourselves
+                    }
+                    @Override
+                    public void notifyPartial(String id, double completed) throws TimeoutException {
+                        listener.notifyPartial(id, completed);
+                    }
+                };
+            }
+            Asset full = getAsset(id, progress, cache);
+            if (full != null) {
+                result = reduce(full, options);
+                if (cache && result.getMain() != null)
+                    Metrics.update(memCache, variantId, result);
+            }
+        }
+        if (listener != null)
+            listener.notify(id, result);
+        return result;
+    }
+
+    /**
+     * Reduce an asset according to the options.
+     * @return reduced asset; without main object if the image cannot be
+     *   reduced
+     */
+    private static Asset reduce(Asset full, ReadOptions options) {
+        BufferedImage img = null;
+        try {
+            if (full instanceof EncodedAssetImpl && !((EncodedAssetImpl) full).isDecoded()) {
+                EncodedAssetImpl encoded = (EncodedAssetImpl) full;
+                img = ImageDecoder.decode(encoded.getBytes(), encoded.getEncodedFormat(), options);
+            }
+            else if (full.getMain() instanceof BufferedImage)
+                img = ImageDecoder.reduce((BufferedImage) full.getMain(), options);
+        }
+        catch (IOException e) {
+            LOGGER.warn("Cannot reduce asset", e);
+        }
+        Asset result = new AssetImpl(img);
+        result.setFormat(full.getFormat());
+        return result;
+    }
+
+    /**
+     * Copy a single asset. If both ends can stream, the encoded bytes are
+     * transferred channel to channel. Otherwise we are copying "through
+     * memory", which at least does not decode encoded assets.
+     */
+    private void copyAsset(String id, AssetSupplier supplier, AssetListener listener, boolean update) {
+        String target = (Metrics.has(supplier, id) && !update) ? null : id;
+        StreamingAssetSupplier source = strategy.getSupplier(routing, id, StreamingAssetSupplier.class);
+        if (source != null && source != supplier && supplier instanceof StreamingAssetSupplier
+                && supplier.canCreate(BufferedImage.class)) {
+            if (target == null)
+                target = UUID.randomUUID().toString();
+            try {
+                transfer(source, id, (StreamingAssetSupplier) supplier, target);
+                // We notify none-the-less
+                if (listener != null)
+                    listener.notify(target, Metrics.get(supplier, target, null));
+                return;
+            }
+            catch (IOException e) {
+                LOGGER.warn("Raw copy failed for " + id + ", copying through memory", e);
+            }
+        }
+        Asset obj = getAsset(id, false);
+        if (obj != null) {
+            if (target == null) {
+                target = Metrics.create(supplier, obj);
+            }
+            else {
+                Metrics.update(supplier, target, obj);
+            }
+        }
+        // We notify none-the-less
+        if (listener != null)
+            listener.notify(target != null ? target : id, obj);
+    }
+
+    /**
+     * Transfer the encoded bytes of an asset between two suppliers.
+     * @throws IOException if the source is gone or the transfer fails
+     */
+    private static void transfer(StreamingAssetSupplier source, String sourceId, StreamingAssetSupplier target,
+            String targetId) throws IOException {
+        ReadableByteChannel input = source.openRead(sourceId);
+        if (input == null)
+            throw new IOException("Cannot read " + sourceId);
+        try {
+            WritableByteChannel output = target.openWrite(targetId);
+            boolean complete = false;
+            try {
+                if (input instanceof FileChannel) {
+                    FileChannel file = (FileChannel) input;
+                    long size = file.size();
+                    for (long position = 0; position < size; )
+                        position += file.transferTo(position, size - position, output);
+                }
+                else {
+                    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                    while (input.read(buffer) != -1 || buffer.position() > 0) {
+                        buffer.flip();
+                        output.write(buffer);
+                        buffer.compact();
+                    }
+                }
+                complete = true;
+            }
+            finally {
+                if (!complete && output instanceof AbandonableChannel)
+                    ((AbandonableChannel) output).abandon();
+                else
+                    output.close();
+            }
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Instantiate the configured supplier selection strategy, decorated
+     * with hedging if configured. Other strategy classes need a public
+     * constructor taking the properties or none.
+     * @throws IllegalArgumentException if the strategy class cannot be
+     *   instantiated
+     */
+    private static SupplierSelectionStrategy createStrategy(Properties properties) {
+        String name = properties.getProperty(AssetManagerImpl.class.getSimpleName() + ".strategy", "default");
+        SupplierSelectionStrategy result;
+        if ("default".equals(name))
+            result = new DefaultSupplierSelectionStrategy();
+        else if ("adaptive".equals(name))
+            result = new AdaptiveSupplierSelectionStrategy(properties);
+        else {
+            try {
+                Class<? extends SupplierSelectionStrategy> clazz = Class.forName(name).asSubclass(SupplierSelectionStrategy.class);
+                try {
+                    result = clazz.getConstructor(Properties.class).newInstance(properties);
+                }
+                catch (NoSuchMethodException e) {
+                    result = clazz.getDeclaredConstructor().newInstance();
+                }
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Cannot instantiate strategy " + name, e);
+            }
+        }
+        if (HedgingSupplierSelectionStrategy.isEnabled(properties))
+            result = new HedgingSupplierSelectionStrategy(properties, result);
+        return result;
+    }
+
+    /** Getter */
+    public SupplierSelectionStrategy getStrategy() {
+        return strategy;
     }
 
     /**
@@ -184,12 +689,91 @@ public class AssetManagerImpl implements net.rptools.asset.AssetManager {
      * properties.
      * @throws IOException if something fails during registering
      */
-    private void fillSuppliers(Properties override) throws IOException {
-        Properties properties = getTotalProperties(override);
-        registerAssetSupplier(new MemCacheAssetSupplier(properties));
+    private void fillSuppliers(Properties properties) throws IOException {
+        memCache = new MemCacheAssetSupplier(properties);
+        registerAssetSupplier(memCache);
+        if (OffHeapCacheAssetSupplier.isEnabled(properties)) {
+            offHeapCache = new OffHeapCacheAssetSupplier(properties);
+            registerAssetSupplier(offHeapCache);
+        }
+        if (ByteCacheAssetSupplier.isEnabled(properties)) {
+            byteCache = new ByteCacheAssetSupplier(properties);
+            registerAssetSupplier(byteCache);
+        }
         registerAssetSupplier(new DiskCacheAssetSupplier(properties));
     }
 
+    /**
+     * Save the warm-start snapshot on shutdown. It is prefetched by
+     * {@link #prefetchWarmStart}, once the suppliers are registered.
+     */
+    private void startWarmStart(Properties properties) {
+        snapshot = new WarmStartSnapshot(properties);
+        if (!snapshot.isEnabled())
+            return;
+        snapshotSaver = new Thread("WarmStartSave") {
+            @Override
+            public void run() {
+                saveWarmStart();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(snapshotSaver);
+    }
+
+    /**
+     * Save the warm-start snapshot.
+     */
+    private void saveWarmStart() {
+        try {
+            snapshot.save(memCache);
+        }
+        catch (IOException e) {
+            LOGGER.error("Cannot save warm-start snapshot", e);
+        }
+    }
+
+    @Override
+    public void prefetchWarmStart() {
+        synchronized (this) {
+            if (prefetched || !snapshot.isEnabled())
+                return;
+            prefetched = true;
+        }
+        Thread prefetcher = new Thread("WarmStartPrefetch") {
+            @Override
+            public void run() {
+                snapshot.prefetch(memCache, AssetManagerImpl.this);
+            }
+        };
+        prefetcher.setPriority(Thread.MIN_PRIORITY);
+        prefetcher.setDaemon(true);
+        prefetcher.start();
+    }
+
+    @Override
+    public void close() {
+        Thread saver;
+        synchronized (this) {
+            saver = snapshotSaver;
+            snapshotSaver = null;
+        }
+        if (saver == null)
+            return;
+        try {
+            Runtime.getRuntime().removeShutdownHook(saver);
+        }
+        catch (IllegalStateException e) {
+            // Shutting down, the hook saves
+            return;
+        }
+        saveWarmStart();
+    }
+
+    /** Getter, mainly for reporting snapshot size and prefetch duration. */
+    public WarmStartSnapshot getWarmStartSnapshot() {
+        return snapshot;
+    }
+
     /**
      * Helper method to combine properties. Make public for testing.
      * @param override more properties
@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asset holding the encoded bytes of an image. The image is only decoded when
+ * {@link #getMain()} is called for the first time; the result is memoized.
+ * Moving such an asset between suppliers or into caches never decodes it,
+ * because the writers use the bytes directly as long as the format is not
+ * changed.
+ * @author username
+ */
+public class EncodedAssetImpl implements net.rptools.asset.Asset {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(EncodedAssetImpl.class.getSimpleName());
+
+    /** Encoded image */
+    private final byte[] bytes;
+
+    /** Format of the encoded bytes */
+    private final String encodedFormat;
+
+    /** Format to store an asset of this type. Used by writers. */
+    private volatile String format;
+
+    /** Decoded image, if already decoded */
+    private volatile BufferedImage main;
+
+    /** Whether decoding was tried already; failures are memoized as well */
+    private volatile boolean decoded;
+
+    /**
+     * Constructor.
+     * @param bytes encoded image, not copied
+     * @param encodedFormat format of the bytes as known to ImageIO
+     */
+    public EncodedAssetImpl(byte[] bytes, String encodedFormat) {
+        this.bytes = bytes;
+        this.encodedFormat = encodedFormat;
+        this.format = encodedFormat;
+    }
+
+    /**
+     * Constructor for bytes that were decoded while they were read.
+     * @param bytes encoded image, not copied
+     * @param encodedFormat format of the bytes as known to ImageIO
+     * @param main decoded image
+     */
+    public EncodedAssetImpl(byte[] bytes, String encodedFormat, BufferedImage main) {
+        this(bytes, encodedFormat);
+        this.main = main;
+        this.decoded = true;
+    }
+
+    /** We only hold images, so this does not decode. */
+    @Override
+    public Class<?> getType() {
+        return BufferedImage.class;
+    }
+
+    @Override
+    public String getFormat() {
+        return format;
+    }
+
+    @Override
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    @Override
+    public Object getMain() {
+        if (!decoded) {
+            synchronized (this) {
+                if (!decoded) {
+                    try {
+                        main = ImageDecoder.decode(bytes, encodedFormat, null);
+                    }
+                    catch (IOException e) {
+                        LOGGER.warn("Cannot decode asset", e);
+                    }
+                    decoded = true;
+                }
+            }
+        }
+        return main;
+    }
+
+    /** Getter. The array is shared, so do not modify it. */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /** Getter */
+    public String getEncodedFormat() {
+        return encodedFormat;
+    }
+
+    /** Has the image been decoded already? */
+    public boolean isDecoded() {
+        return decoded;
+    }
+
+    /**
+     * Can the bytes be written as they are, i.e. is the requested format the
+     * one of the bytes?
+     * @return whether writers may use {@link #getBytes()}
+     */
+    public boolean isVerbatim() {
+        return encodedFormat != null && encodedFormat.equalsIgnoreCase(format);
+    }
+
+    @Override
+    public int hashCode() {
+        // We are ignoring format on purpose
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        // We are ignoring format on purpose
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        EncodedAssetImpl other = (EncodedAssetImpl) obj;
+        return Arrays.equals(bytes, other.bytes);
+    }
+}
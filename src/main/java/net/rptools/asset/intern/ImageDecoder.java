@@ -0,0 +1,501 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetRequest;
+import net.rptools.asset.ReadOptions;
+import net.rptools.asset.intern.jfr.AssetEvent;
+import net.rptools.asset.intern.jfr.DecodeEvent;
+
+/**
+ * Decoding of encoded image bytes. All suppliers decode through this class,
+ * so decoding can be tuned in one place. Each thread keeps one reader per
+ * format, and decoded images are converted to a configured pixel type.
+ * Loads with a listener decode in a separate stage, see {@link #decodeInPool}.
+ * @author username
+ */
+public class ImageDecoder {
+    /** Readers of the current thread by format */
+    private final static ThreadLocal<Map<String, ImageReader>> READERS = new ThreadLocal<Map<String, ImageReader>>() {
+        @Override
+        protected Map<String, ImageReader> initialValue() {
+            return new HashMap<String, ImageReader>();
+        }
+    };
+
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(ImageDecoder.class.getSimpleName());
+
+    /** Type decoded images are converted to; TYPE_CUSTOM to keep them */
+    private static volatile int pixelType = BufferedImage.TYPE_CUSTOM;
+
+    /** Number of decode threads; 0 for the number of processors */
+    private static int parallelism;
+
+    /** Decode stage, created on first use */
+    private static ExecutorService pool;
+
+    /**
+     * Determine the format of encoded bytes from their header without
+     * decoding them.
+     * @param bytes encoded image
+     * @return lower case format name as used by ImageIO, or null if unknown
+     */
+    public static String getFormat(byte[] bytes) {
+        return getFormat(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Determine the format of an encoded file from its header without
+     * decoding it.
+     * @param file encoded image
+     * @return lower case format name as used by ImageIO, or null if unknown
+     */
+    public static String getFormat(File file) {
+        return getFormat((Object) file);
+    }
+
+    /**
+     * Determine the format of an ImageIO input.
+     * @param source anything ImageIO can create an image input stream for
+     * @return lower case format name as used by ImageIO, or null if unknown
+     */
+    private static String getFormat(Object source) {
+        try {
+            ImageInputStream input = ImageIO.createImageInputStream(source);
+            if (input == null)
+                return null;
+            try {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+                if (!readers.hasNext())
+                    return null;
+                return readers.next().getFormatName().toLowerCase();
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Determine the size of encoded bytes from their header without
+     * decoding the pixels.
+     * @param bytes encoded image
+     * @return size or null, if no reader is found
+     * @throws IOException if the header cannot be read
+     */
+    public static Dimension getSize(byte[] bytes) throws IOException {
+        ImageReader reader = getReader(getFormat(bytes));
+        if (reader == null)
+            return null;
+        ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes));
+        try {
+            reader.setInput(input, true, true);
+            return new Dimension(reader.getWidth(0), reader.getHeight(0));
+        }
+        finally {
+            reader.reset();
+            input.close();
+        }
+    }
+
+    /**
+     * Decode the bytes completely.
+     * @param bytes encoded image
+     * @return decoded image or null, if no reader is found
+     * @throws IOException if decoding fails
+     */
+    public static BufferedImage decode(byte[] bytes) throws IOException {
+        return decode(bytes, null, null);
+    }
+
+    /**
+     * Decode a reduced image: only the source region is decoded, and pixels
+     * are skipped according to the subsampling for the target size.
+     * @param bytes encoded image
+     * @param options region and target size
+     * @return decoded image or null, if no reader is found or the region is
+     *   outside the image
+     * @throws IOException if decoding fails
+     */
+    public static BufferedImage decode(byte[] bytes, ReadOptions options) throws IOException {
+        return decode(bytes, null, options);
+    }
+
+    /**
+     * Decode with the reader of the current thread for the format. The
+     * result is converted to the configured pixel type.
+     * @param bytes encoded image
+     * @param format format of the bytes; null to determine it from the header
+     * @param options region and target size; null to decode completely
+     * @return decoded image or null, if no reader is found or the region is
+     *   outside the image
+     * @throws IOException if decoding fails
+     */
+    public static BufferedImage decode(byte[] bytes, String format, ReadOptions options) throws IOException {
+        String encodedFormat = (format != null ? format : getFormat(bytes));
+        ImageReader reader = getReader(encodedFormat);
+        if (reader == null)
+            return null;
+        ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes));
+        DecodeEvent event = new DecodeEvent();
+        BufferedImage result = null;
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            reader.setInput(input, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (options != null) {
+                Rectangle source = getSourceRegion(reader.getWidth(0), reader.getHeight(0), options);
+                if (source == null)
+                    return null;
+                param.setSourceRegion(source);
+                int step = getSubsampling(source.width, source.height, options);
+                if (step > 1)
+                    param.setSourceSubsampling(step, step, 0, 0);
+            }
+            result = toPixelType(reader.read(0, param));
+            return result;
+        }
+        finally {
+            reader.reset();
+            input.close();
+            Metrics.recordDecode(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.setFormat(encodedFormat);
+                event.setBytes(bytes.length);
+                if (result != null)
+                    event.setSize(result.getWidth(), result.getHeight());
+                event.setOutcome(result != null ? AssetEvent.HIT : AssetEvent.MISS);
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Open an encoded image for reading it strip by strip with the reader of
+     * the current thread. All strips are read through the same reader and
+     * stream, so only one strip is held in memory at a time.
+     * @param bytes encoded image
+     * @return strips to read and close, or null if no reader is found
+     * @throws IOException if the header cannot be read
+     */
+    public static Strips openStrips(byte[] bytes) throws IOException {
+        ImageReader reader = getReader(getFormat(bytes));
+        if (reader == null)
+            return null;
+        return new Strips(reader, new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Encoded image read in strips, top to bottom.
+     * @author username
+     */
+    public static final class Strips implements Closeable {
+        /** Reader of the opening thread */
+        private final ImageReader reader;
+        /** Stream onto the encoded bytes */
+        private final ImageInputStream input;
+
+        /** Standard constructor */
+        private Strips(ImageReader reader, ImageInputStream input) throws IOException {
+            this.reader = reader;
+            this.input = input;
+            try {
+                reader.setInput(input, false, true);
+            }
+            catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /** Getter */
+        public int getWidth() throws IOException {
+            return reader.getWidth(0);
+        }
+
+        /** Getter */
+        public int getHeight() throws IOException {
+            return reader.getHeight(0);
+        }
+
+        /**
+         * Decode a region, converted to the configured pixel type.
+         * @param region region of the image, usually the next strip
+         * @return decoded region
+         * @throws IOException if decoding fails
+         */
+        public BufferedImage read(Rectangle region) throws IOException {
+            long start = System.nanoTime();
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                return toPixelType(reader.read(0, param));
+            }
+            finally {
+                Metrics.recordDecode(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.reset();
+            input.close();
+        }
+    }
+
+    /**
+     * Decode an encoded asset in the decode stage, a pool of (by default) as
+     * many threads as processors, and wait for it. Used by I/O threads
+     * before they notify listeners, so decoding is bounded by the processors
+     * and done by threads whose readers are reused. Other assets are left
+     * alone. Decodes of aborted requests are skipped.
+     * @param obj asset to decode, may be null
+     */
+    public static void decodeInPool(final Asset obj) {
+        if (!(obj instanceof EncodedAssetImpl) || ((EncodedAssetImpl) obj).isDecoded())
+            return;
+        final AssetRequest request = RequestContext.get();
+        if (request != null && request.isAborted())
+            return;
+        Future<?> done = getPool().submit(new Runnable() {
+            @Override
+            public void run() {
+                // Skip decodes of requests aborted while queued
+                if (request == null || !request.isAborted())
+                    obj.getMain();
+            }
+        });
+        try {
+            done.get();
+        }
+        catch (InterruptedException e) {
+            done.cancel(false);
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            LOGGER.warn("Cannot decode asset", e.getCause());
+        }
+    }
+
+    /**
+     * Set the pixel type decoded images are converted to and the size of the
+     * decode stage, if it is not running yet. Both are process-wide; the
+     * first AssetManagerImpl sets them.
+     * @param properties properties to read the settings from. The pixel type
+     *   is the name of a BufferedImage type without TYPE_, e.g. INT_ARGB_PRE,
+     *   or none to keep the type the reader produces
+     * @throws IllegalArgumentException if the type is unknown
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public static void configure(Properties properties) {
+        synchronized (ImageDecoder.class) {
+            parallelism = Integer.parseInt(properties.getProperty(ImageDecoder.class.getSimpleName() + ".parallelism"));
+        }
+        String name = properties.getProperty(ImageDecoder.class.getSimpleName() + ".pixelType");
+        if (name == null || name.isEmpty() || "none".equals(name)) {
+            pixelType = BufferedImage.TYPE_CUSTOM;
+            return;
+        }
+        try {
+            pixelType = BufferedImage.class.getField("TYPE_" + name).getInt(null);
+        }
+        catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Unknown pixel type " + name, e);
+        }
+    }
+
+    /** Getter, TYPE_CUSTOM if decoded images are not converted */
+    public static int getPixelType() {
+        return pixelType;
+    }
+
+    /**
+     * Convert a decoded image to the configured pixel type, so it need not be
+     * converted on every paint. Opaque images stay opaque, so they can still
+     * be encoded in formats without alpha, like jpeg.
+     * @param img decoded image, may be null
+     * @return converted image or img itself
+     */
+    public static BufferedImage toPixelType(BufferedImage img) {
+        int type = pixelType;
+        if (img == null || type == BufferedImage.TYPE_CUSTOM)
+            return img;
+        if (!img.getColorModel().hasAlpha())
+            type = getOpaqueType(type);
+        if (img.getType() == type)
+            return img;
+        BufferedImage result = new BufferedImage(img.getWidth(), img.getHeight(), type);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.drawImage(img, 0, 0, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Pixel type without alpha matching a pixel type.
+     * @param type pixel type
+     * @return type with the same layout but no alpha, or type itself
+     */
+    private static int getOpaqueType(int type) {
+        switch (type) {
+        case BufferedImage.TYPE_INT_ARGB:
+        case BufferedImage.TYPE_INT_ARGB_PRE:
+            return BufferedImage.TYPE_INT_RGB;
+        case BufferedImage.TYPE_4BYTE_ABGR:
+        case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+            return BufferedImage.TYPE_3BYTE_BGR;
+        default:
+            return type;
+        }
+    }
+
+    /**
+     * Get the decode stage, starting it if needed.
+     * @return pool of daemon threads
+     */
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            int threads = (parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ImageDecoder-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Reader for a format, cached per thread. Readers are reset after each
+     * use, but not disposed.
+     * @param format lower case format name
+     * @return reader or null, if there is none for the format
+     */
+    private static ImageReader getReader(String format) {
+        if (format == null)
+            return null;
+        Map<String, ImageReader> readers = READERS.get();
+        ImageReader reader = readers.get(format);
+        if (reader == null) {
+            Iterator<ImageReader> candidates = ImageIO.getImageReadersByFormatName(format);
+            if (!candidates.hasNext())
+                return null;
+            reader = candidates.next();
+            readers.put(format, reader);
+        }
+        return reader;
+    }
+
+    /**
+     * Reduce an already decoded image the same way {@link #decode(byte[], ReadOptions)}
+     * does.
+     * @param img image to reduce
+     * @param options region and target size
+     * @return new image or null, if the region is outside the image
+     */
+    public static BufferedImage reduce(BufferedImage img, ReadOptions options) {
+        Rectangle source = getSourceRegion(img.getWidth(), img.getHeight(), options);
+        if (source == null)
+            return null;
+        int step = getSubsampling(source.width, source.height, options);
+        int width = (source.width + step - 1) / step;
+        int height = (source.height + step - 1) / step;
+        int type = (img.getType() != BufferedImage.TYPE_CUSTOM ? img.getType() : BufferedImage.TYPE_INT_ARGB);
+        BufferedImage result = new BufferedImage(width, height, type);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(img, 0, 0, width, height, source.x, source.y, source.x + source.width,
+                source.y + source.height, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Subsampling step, so that the region is reduced as much as possible
+     * but not below the target size.
+     * @param width width of the region to reduce
+     * @param height height of the region to reduce
+     * @param options target size
+     * @return step, at least 1
+     */
+    public static int getSubsampling(int width, int height, ReadOptions options) {
+        int step = Integer.MAX_VALUE;
+        if (options.getTargetWidth() > 0)
+            step = Math.min(step, width / options.getTargetWidth());
+        if (options.getTargetHeight() > 0)
+            step = Math.min(step, height / options.getTargetHeight());
+        return (step == Integer.MAX_VALUE ? 1 : Math.max(1, step));
+    }
+
+    /**
+     * Clip the requested region to the image.
+     * @return region or null, if empty
+     */
+    private static Rectangle getSourceRegion(int width, int height, ReadOptions options) {
+        Rectangle source = new Rectangle(0, 0, width, height);
+        if (options.getSourceRegion() != null)
+            source = source.intersection(options.getSourceRegion());
+        return (source.isEmpty() ? null : source);
+    }
+}
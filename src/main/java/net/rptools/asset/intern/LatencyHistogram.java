@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds. Buckets are log-linear as
+ * in HDR histograms: each power of two is split into 16 buckets, so values
+ * are reported with a relative error below 1/16. Recording does not
+ * allocate.
+ * @author username
+ */
+public class LatencyHistogram {
+    /** Bits of a value kept below its leading one */
+    private final static int SUB_BITS = 4;
+
+    /** Buckets per power of two */
+    private final static int SUB = 1 << SUB_BITS;
+
+    /** Buckets for all non-negative longs */
+    private final static int BUCKETS = (63 - SUB_BITS + 1) * SUB;
+
+    /** Counts by bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** Number of values */
+    private final AtomicLong count = new AtomicLong();
+
+    /** Sum of values */
+    private final AtomicLong sum = new AtomicLong();
+
+    /** Largest value */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value.
+     * @param nanos latency; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(getIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        for (long current = max.get(); value > current && !max.compareAndSet(current, value); current = max.get())
+            ;
+    }
+
+    /** Getter */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Getter */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Mean of the values.
+     * @return nanos; 0 without values
+     */
+    public long getMean() {
+        long n = count.get();
+        return (n == 0 ? 0 : sum.get() / n);
+    }
+
+    /**
+     * Value below which the given percentage of values lie. The buckets are
+     * read once; values recorded concurrently may or may not be counted.
+     * @param percentile 0 to 100
+     * @return highest value of the bucket holding the percentile; 0 without
+     *   values
+     */
+    public long getPercentile(double percentile) {
+        // Snapshot, so values recorded meanwhile cannot shift the rank
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(getLowerBound(i + 1) - 1, max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Bucket of a value.
+     */
+    static int getIndex(long value) {
+        if (value < SUB)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /**
+     * Smallest value of a bucket.
+     */
+    static long getLowerBound(int index) {
+        if (index < SUB)
+            return index;
+        if (index >= BUCKETS)
+            return Long.MAX_VALUE;
+        int exponent = index / SUB + SUB_BITS - 1;
+        return (long) (SUB + index % SUB) << (exponent - SUB_BITS);
+    }
+}
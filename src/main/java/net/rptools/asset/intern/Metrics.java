@@ -0,0 +1,325 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.jfr.AssetEvent;
+import net.rptools.asset.intern.jfr.SupplierIOEvent;
+
+/**
+ * Registry of the supplier metrics and the decode latencies. Supplier calls
+ * of the strategies and the manager go through the static methods here,
+ * which record them. With Metrics.jmx, the metrics are registered as
+ * MXBeans under net.rptools.asset. Gets, updates, creates and removes are
+ * also reported as flight recorder events.
+ * @author username
+ */
+public class Metrics implements MetricsMXBean {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(Metrics.class.getSimpleName());
+
+    /** JMX domain */
+    private final static String DOMAIN = "net.rptools.asset";
+
+    /** The registry */
+    private final static Metrics INSTANCE = new Metrics();
+
+    /** Metrics by supplier */
+    private final ConcurrentHashMap<AssetSupplier, SupplierMetrics> suppliers = new ConcurrentHashMap<AssetSupplier, SupplierMetrics>();
+
+    /** Numbers the supplier metrics, keeping their names unique */
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /** Decode latencies */
+    private final LatencyHistogram decodes = new LatencyHistogram();
+
+    /** Whether to register MXBeans */
+    private volatile boolean jmx;
+
+    /** Getter */
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register with JMX, if configured. Process-wide; the first
+     * AssetManagerImpl sets it.
+     * @param properties properties to read Metrics.jmx from
+     */
+    public static synchronized void configure(Properties properties) {
+        if (INSTANCE.jmx || !Boolean.parseBoolean(properties.getProperty(Metrics.class.getSimpleName() + ".jmx")))
+            return;
+        INSTANCE.jmx = true;
+        register(INSTANCE, DOMAIN + ":type=Metrics");
+        for (SupplierMetrics metrics : INSTANCE.suppliers.values())
+            register(metrics, getObjectName(metrics));
+    }
+
+    /**
+     * Metrics of a supplier, created on first use. The name is the class,
+     * the priority and a running number, since suppliers of two managers may
+     * share class and priority.
+     * @param supplier supplier to report
+     * @return metrics
+     */
+    public SupplierMetrics getMetrics(AssetSupplier supplier) {
+        SupplierMetrics result = suppliers.get(supplier);
+        if (result == null) {
+            result = new SupplierMetrics(supplier.getClass().getSimpleName() + "-" + supplier.getPriority() + "-" + sequence.incrementAndGet());
+            SupplierMetrics previous = suppliers.putIfAbsent(supplier, result);
+            if (previous != null)
+                return previous;
+            if (jmx)
+                register(result, getObjectName(result));
+        }
+        return result;
+    }
+
+    /**
+     * Forget a deregistered supplier.
+     * @param supplier supplier to forget
+     */
+    public void remove(AssetSupplier supplier) {
+        SupplierMetrics metrics = suppliers.remove(supplier);
+        if (metrics != null && jmx) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(getObjectName(metrics)));
+            }
+            catch (JMException e) {
+                LOGGER.debug("Cannot unregister " + metrics.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Metrics of all suppliers seen.
+     * @return snapshot of the list
+     */
+    public List<SupplierMetrics> getSupplierMetrics() {
+        return new ArrayList<SupplierMetrics>(suppliers.values());
+    }
+
+    /** Getter */
+    public LatencyHistogram getDecodeLatencies() {
+        return decodes;
+    }
+
+    @Override
+    public long getDecodes() {
+        return decodes.getCount();
+    }
+
+    @Override
+    public long getDecodeP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(decodes.getPercentile(50));
+    }
+
+    @Override
+    public long getDecodeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(decodes.getPercentile(99));
+    }
+
+    @Override
+    public String[] getSuppliers() {
+        List<String> result = new ArrayList<String>();
+        for (SupplierMetrics metrics : suppliers.values())
+            result.add(metrics.getName());
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Recorded has.
+     */
+    public static boolean has(AssetSupplier supplier, String id) {
+        SupplierMetrics metrics = INSTANCE.getMetrics(supplier);
+        long start = System.nanoTime();
+        boolean result = supplier.has(id);
+        metrics.record(SupplierMetrics.Operation.HAS, result, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Recorded get. Encoded assets count their bytes as read.
+     */
+    public static Asset get(AssetSupplier supplier, String id, AssetListener listener) {
+        SupplierMetrics metrics = INSTANCE.getMetrics(supplier);
+        SupplierIOEvent event = new SupplierIOEvent();
+        Asset result = null;
+        String outcome = AssetEvent.ERROR;
+        metrics.startGet();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            result = supplier.get(id, listener);
+            outcome = AssetEvent.getOutcome(result);
+        }
+        finally {
+            metrics.record(SupplierMetrics.Operation.GET, !isFailure(result), System.nanoTime() - start);
+            metrics.endGet();
+            commit(event, SupplierIOEvent.GET, metrics, id, AssetEvent.getBytes(result), outcome);
+        }
+        if (result instanceof EncodedAssetImpl)
+            metrics.addBytesRead(((EncodedAssetImpl) result).getBytes().length);
+        return result;
+    }
+
+    /**
+     * Recorded update. Verbatim encoded assets count their bytes as written.
+     */
+    public static void update(AssetSupplier supplier, String id, Asset obj) {
+        SupplierMetrics metrics = INSTANCE.getMetrics(supplier);
+        SupplierIOEvent event = new SupplierIOEvent();
+        boolean success = false;
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            supplier.update(id, obj);
+            success = true;
+        }
+        finally {
+            metrics.record(SupplierMetrics.Operation.UPDATE, success, System.nanoTime() - start);
+            commit(event, SupplierIOEvent.UPDATE, metrics, id, AssetEvent.getBytes(obj), success ? AssetEvent.HIT : AssetEvent.ERROR);
+        }
+        countWritten(metrics, obj);
+    }
+
+    /**
+     * Recorded create, counted as update.
+     */
+    public static String create(AssetSupplier supplier, Asset obj) {
+        SupplierMetrics metrics = INSTANCE.getMetrics(supplier);
+        SupplierIOEvent event = new SupplierIOEvent();
+        String result = null;
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            result = supplier.create(obj);
+        }
+        finally {
+            metrics.record(SupplierMetrics.Operation.UPDATE, result != null, System.nanoTime() - start);
+            commit(event, SupplierIOEvent.CREATE, metrics, result, AssetEvent.getBytes(obj), result != null ? AssetEvent.HIT : AssetEvent.MISS);
+        }
+        countWritten(metrics, obj);
+        return result;
+    }
+
+    /**
+     * Recorded remove.
+     */
+    public static boolean remove(AssetSupplier supplier, String id) {
+        SupplierMetrics metrics = INSTANCE.getMetrics(supplier);
+        SupplierIOEvent event = new SupplierIOEvent();
+        boolean result = false;
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            result = supplier.remove(id);
+        }
+        finally {
+            metrics.record(SupplierMetrics.Operation.REMOVE, result, System.nanoTime() - start);
+            commit(event, SupplierIOEvent.REMOVE, metrics, id, 0, result ? AssetEvent.HIT : AssetEvent.MISS);
+        }
+        return result;
+    }
+
+    /**
+     * Name of a supplier for reporting.
+     * @param supplier supplier to name
+     * @return class name and priority
+     */
+    public static String getName(AssetSupplier supplier) {
+        return INSTANCE.getMetrics(supplier).getName();
+    }
+
+    /**
+     * Record a decode.
+     * @param nanos decode time
+     */
+    public static void recordDecode(long nanos) {
+        INSTANCE.decodes.record(nanos);
+    }
+
+    /**
+     * Failed reads return nothing or an asset without main object. Encoded
+     * assets are not decoded to find out.
+     * @param obj result of a get
+     * @return true for failures
+     */
+    public static boolean isFailure(Asset obj) {
+        return obj == null || (!(obj instanceof EncodedAssetImpl) && obj.getMain() == null);
+    }
+
+    /**
+     * Count the bytes of verbatim encoded assets.
+     */
+    private static void countWritten(SupplierMetrics metrics, Asset obj) {
+        if (obj instanceof EncodedAssetImpl && ((EncodedAssetImpl) obj).isVerbatim())
+            metrics.addBytesWritten(((EncodedAssetImpl) obj).getBytes().length);
+    }
+
+    /**
+     * Commit a supplier I/O event, if recorded.
+     */
+    private static void commit(SupplierIOEvent event, String operation, SupplierMetrics metrics, String id, long bytes, String outcome) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.setOperation(operation);
+            event.setSupplier(metrics.getName());
+            event.setId(id);
+            event.setBytes(bytes);
+            event.setOutcome(outcome);
+            event.commit();
+        }
+    }
+
+    /**
+     * JMX name of supplier metrics.
+     */
+    private static String getObjectName(SupplierMetrics metrics) {
+        return DOMAIN + ":type=Supplier,name=" + ObjectName.quote(metrics.getName());
+    }
+
+    /**
+     * Register an MXBean; failures are logged only.
+     */
+    private static void register(Object bean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName))
+                server.registerMBean(bean, objectName);
+        }
+        catch (JMException e) {
+            LOGGER.warn("Cannot register " + name, e);
+        }
+    }
+}
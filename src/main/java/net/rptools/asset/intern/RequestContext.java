@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.io.Closeable;
+
+import net.rptools.asset.AssetRequest;
+
+/**
+ * Binds the request handle of a load to the thread running it, so that
+ * suppliers can register their connections and channels without changing
+ * the supplier interface. Loads of an aborted request are stopped by closing
+ * these resources. Their threads are not interrupted: an interrupt during
+ * a read closes the FileChannel, which a zip file system shares among all
+ * its readers.
+ * @author username
+ */
+public class RequestContext {
+    /** Request of the current thread */
+    private final static ThreadLocal<AssetRequest> CURRENT = new ThreadLocal<AssetRequest>();
+
+    /**
+     * Request of the current thread.
+     * @return request or null
+     */
+    public static AssetRequest get() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Whether the request of the current thread is aborted.
+     * @return false without request
+     */
+    public static boolean isAborted() {
+        AssetRequest request = CURRENT.get();
+        return request != null && request.isAborted();
+    }
+
+    /**
+     * Register a resource to close when the request of the current thread is
+     * aborted. Must be followed by {@link #remove}.
+     * @param resource connection, channel or stream to close
+     * @return false if the resource was closed already
+     */
+    public static boolean onAbort(Closeable resource) {
+        AssetRequest request = CURRENT.get();
+        return request == null || request.onAbort(resource);
+    }
+
+    /**
+     * Deregister a resource.
+     * @param resource resource passed to onAbort
+     */
+    public static void remove(Closeable resource) {
+        AssetRequest request = CURRENT.get();
+        if (request != null)
+            request.remove(resource);
+    }
+
+    /**
+     * Bind a request to the current thread until {@link Scope#exit}.
+     * @param request request to bind; null binds nothing
+     * @return scope to exit in a finally block
+     */
+    public static Scope enter(AssetRequest request) {
+        return new Scope(request);
+    }
+
+    /**
+     * Binding of a request to a thread.
+     */
+    public static final class Scope {
+        private final AssetRequest previous;
+        private final AssetRequest request;
+
+        private Scope(AssetRequest request) {
+            this.previous = CURRENT.get();
+            this.request = request;
+            if (request != null)
+                CURRENT.set(request);
+        }
+
+        /**
+         * Restore the previous binding.
+         */
+        public void exit() {
+            if (request == null)
+                return;
+            if (previous == null)
+                CURRENT.remove();
+            else
+                CURRENT.set(previous);
+        }
+    }
+}
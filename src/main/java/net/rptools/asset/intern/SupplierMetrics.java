@@ -0,0 +1,224 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of one supplier: hits, misses and latencies per operation, bytes
+ * read and written, and loads in flight. A has is a hit if the supplier has
+ * the asset, a get if it returned one with main object, an update or remove
+ * if it succeeded. Creates count as updates. Recording does not allocate.
+ * @author username
+ */
+public class SupplierMetrics implements SupplierMetricsMXBean {
+    /** Recorded operations */
+    public enum Operation {
+        HAS, GET, UPDATE, REMOVE
+    }
+
+    /** Name for reporting */
+    private final String name;
+
+    /** Hits by operation */
+    private final AtomicLong[] hits = new AtomicLong[Operation.values().length];
+
+    /** Misses by operation */
+    private final AtomicLong[] misses = new AtomicLong[Operation.values().length];
+
+    /** Latencies by operation */
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+
+    /** Encoded bytes returned by get */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /** Encoded bytes passed to update */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /** Running gets */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Constructor.
+     * @param name name for reporting
+     */
+    public SupplierMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new AtomicLong();
+            misses[i] = new AtomicLong();
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Record a completed operation.
+     * @param operation operation
+     * @param hit whether it was a hit
+     * @param nanos latency
+     */
+    public void record(Operation operation, boolean hit, long nanos) {
+        (hit ? hits : misses)[operation.ordinal()].incrementAndGet();
+        latencies[operation.ordinal()].record(nanos);
+    }
+
+    /** A get started */
+    public void startGet() {
+        inFlight.incrementAndGet();
+    }
+
+    /** A get ended */
+    public void endGet() {
+        inFlight.decrementAndGet();
+    }
+
+    /** Count bytes read */
+    public void addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    /** Count bytes written */
+    public void addBytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    /** Getter */
+    public String getName() {
+        return name;
+    }
+
+    /** Getter */
+    public long getHits(Operation operation) {
+        return hits[operation.ordinal()].get();
+    }
+
+    /** Getter */
+    public long getMisses(Operation operation) {
+        return misses[operation.ordinal()].get();
+    }
+
+    /** Getter */
+    public LatencyHistogram getLatencies(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    @Override
+    public long getHasHits() {
+        return getHits(Operation.HAS);
+    }
+
+    @Override
+    public long getHasMisses() {
+        return getMisses(Operation.HAS);
+    }
+
+    @Override
+    public long getHasP99Micros() {
+        return micros(getLatencies(Operation.HAS).getPercentile(99));
+    }
+
+    @Override
+    public long getGetHits() {
+        return getHits(Operation.GET);
+    }
+
+    @Override
+    public long getGetMisses() {
+        return getMisses(Operation.GET);
+    }
+
+    @Override
+    public long getGetP50Micros() {
+        return micros(getLatencies(Operation.GET).getPercentile(50));
+    }
+
+    @Override
+    public long getGetP99Micros() {
+        return micros(getLatencies(Operation.GET).getPercentile(99));
+    }
+
+    @Override
+    public long getGetMaxMicros() {
+        return micros(getLatencies(Operation.GET).getMax());
+    }
+
+    @Override
+    public long getUpdates() {
+        return getHits(Operation.UPDATE) + getMisses(Operation.UPDATE);
+    }
+
+    @Override
+    public long getUpdateP99Micros() {
+        return micros(getLatencies(Operation.UPDATE).getPercentile(99));
+    }
+
+    @Override
+    public long getRemoves() {
+        return getHits(Operation.REMOVE) + getMisses(Operation.REMOVE);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * All values by name, e.g. get.hits, get.p99 (nanos), bytesRead. The
+     * values are read one by one, so they may be slightly inconsistent while
+     * recording goes on.
+     * @return sorted, unmodifiable snapshot
+     */
+    @Override
+    public Map<String, Long> getSnapshot() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Operation operation : Operation.values()) {
+            String prefix = operation.name().toLowerCase() + ".";
+            LatencyHistogram histogram = getLatencies(operation);
+            result.put(prefix + "hits", getHits(operation));
+            result.put(prefix + "misses", getMisses(operation));
+            result.put(prefix + "mean", histogram.getMean());
+            result.put(prefix + "p50", histogram.getPercentile(50));
+            result.put(prefix + "p90", histogram.getPercentile(90));
+            result.put(prefix + "p99", histogram.getPercentile(99));
+            result.put(prefix + "max", histogram.getMax());
+        }
+        result.put("bytesRead", getBytesRead());
+        result.put("bytesWritten", getBytesWritten());
+        result.put("inFlight", (long) getInFlight());
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Convert for JMX.
+     */
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
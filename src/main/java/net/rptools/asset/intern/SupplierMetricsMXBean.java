@@ -0,0 +1,71 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics of one supplier. Latencies are in microseconds.
+ * @author username
+ */
+public interface SupplierMetricsMXBean {
+    /** Getter */
+    public long getHasHits();
+
+    /** Getter */
+    public long getHasMisses();
+
+    /** Getter */
+    public long getHasP99Micros();
+
+    /** Getter */
+    public long getGetHits();
+
+    /** Getter */
+    public long getGetMisses();
+
+    /** Getter */
+    public long getGetP50Micros();
+
+    /** Getter */
+    public long getGetP99Micros();
+
+    /** Getter */
+    public long getGetMaxMicros();
+
+    /** Getter */
+    public long getUpdates();
+
+    /** Getter */
+    public long getUpdateP99Micros();
+
+    /** Getter */
+    public long getRemoves();
+
+    /** Getter */
+    public long getBytesRead();
+
+    /** Getter */
+    public long getBytesWritten();
+
+    /** Getter */
+    public int getInFlight();
+
+    /**
+     * All values by name, see {@link SupplierMetrics#getSnapshot()}.
+     * @return snapshot
+     */
+    public Map<String, Long> getSnapshot();
+}
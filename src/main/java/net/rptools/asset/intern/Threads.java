@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Threads for blocking work: platform threads from cached pools, or, in
+ * virtual mode, a virtual thread per task. Virtual threads need Java 21;
+ * they are created reflectively, so the library still runs on older
+ * runtimes, which fall back to platform threads.
+ * @author username
+ */
+public class Threads {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(Threads.class.getSimpleName());
+
+    /** Executors.newVirtualThreadPerTaskExecutor, null before Java 21 */
+    private final static Method NEW_VIRTUAL_EXECUTOR = getMethod(Executors.class, "newVirtualThreadPerTaskExecutor");
+
+    /** Thread.startVirtualThread, null before Java 21 */
+    private final static Method START_VIRTUAL = getMethod(Thread.class, "startVirtualThread", Runnable.class);
+
+    /** Whether to use virtual threads */
+    private static volatile boolean virtual;
+
+    /**
+     * Choose the thread mode: Threads.mode is platform or virtual. The mode
+     * is process-wide; the first AssetManagerImpl sets it.
+     * @param properties properties to read from
+     */
+    public static void configure(Properties properties) {
+        boolean requested = "virtual".equals(properties.getProperty(Threads.class.getSimpleName() + ".mode"));
+        if (requested && !isVirtualAvailable())
+            LOGGER.warn("Virtual threads need Java 21, using platform threads");
+        virtual = requested && isVirtualAvailable();
+    }
+
+    /** Getter */
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /** Getter */
+    public static boolean isVirtualAvailable() {
+        return NEW_VIRTUAL_EXECUTOR != null && START_VIRTUAL != null;
+    }
+
+    /**
+     * Executor for blocking tasks.
+     * @param factory factory of platform threads
+     * @return a virtual thread per task executor in virtual mode, a cached
+     *   thread pool otherwise
+     */
+    public static ExecutorService newExecutor(ThreadFactory factory) {
+        if (virtual) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            }
+            catch (Exception e) {
+                LOGGER.warn("Cannot create virtual thread executor", e);
+            }
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    /**
+     * Start a thread for a blocking task.
+     * @param name name of platform threads
+     * @param task task to run
+     * @return started thread
+     */
+    public static Thread start(String name, Runnable task) {
+        if (virtual) {
+            try {
+                return (Thread) START_VIRTUAL.invoke(null, task);
+            }
+            catch (Exception e) {
+                LOGGER.warn("Cannot start virtual thread", e);
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Look up a method that may not exist in this runtime.
+     */
+    private static Method getMethod(Class<?> clazz, String name, Class<?>... types) {
+        try {
+            return clazz.getMethod(name, types);
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeoutException;
+
+import jdk.jfr.EventType;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.ProgressiveAssetListener;
+import net.rptools.asset.intern.jfr.AssetEvent;
+import net.rptools.asset.intern.jfr.ListenerEvent;
+
+/**
+ * Listener reporting its notify callbacks as flight recorder events.
+ * Listeners are only wrapped while the event is recorded.
+ * @author username
+ */
+class TracedListener implements AssetListener {
+    /** Event type, to check whether it is recorded */
+    private final static EventType TYPE = EventType.getEventType(ListenerEvent.class);
+
+    /** Listener to forward to */
+    protected final AssetListener listener;
+
+    /**
+     * Wrap a listener, keeping it progressive if it is.
+     * @param listener listener to wrap; may be null
+     * @return wrapped listener or the listener, if not recording
+     */
+    static AssetListener wrap(AssetListener listener) {
+        if (listener == null || !TYPE.isEnabled())
+            return listener;
+        if (listener instanceof ProgressiveAssetListener)
+            return new Progressive((ProgressiveAssetListener) listener);
+        return new TracedListener(listener);
+    }
+
+    private TracedListener(AssetListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void notify(String id, Asset obj) {
+        ListenerEvent event = new ListenerEvent();
+        event.begin();
+        try {
+            listener.notify(id, obj);
+        }
+        finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.setId(id);
+                event.setListener(listener.getClass());
+                event.setAsset(obj);
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public void notifyPartial(String id, double completed) throws TimeoutException {
+        listener.notifyPartial(id, completed);
+    }
+
+    /**
+     * Variant for progressive listeners.
+     */
+    private static class Progressive extends TracedListener implements ProgressiveAssetListener {
+        private Progressive(ProgressiveAssetListener listener) {
+            super(listener);
+        }
+
+        @Override
+        public void notifyImage(String id, BufferedImage image) {
+            ((ProgressiveAssetListener) listener).notifyImage(id, image);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetManager;
+import net.rptools.asset.intern.supplier.MemCacheAssetSupplier;
+
+/**
+ * Persistent snapshot of the hot set of the memory cache. On shutdown the ids
+ * of the hottest assets are written, optionally together with their decoded
+ * pixels in a raw format. On startup the snapshot is used to prefetch these
+ * assets into the memory cache, so the first frame does not have to decode
+ * everything again.
+ * @author username
+ */
+public class WarmStartSnapshot {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(WarmStartSnapshot.class.getSimpleName());
+
+    /** File identification */
+    private final static int MAGIC = 0x52505753;
+
+    /** File format version */
+    private final static int VERSION = 1;
+
+    /** Snapshot file */
+    private File file;
+
+    /** Maximum number of ids in the snapshot; 0 disables the snapshot */
+    private int size;
+
+    /** Whether decoded pixels are written as well */
+    private boolean pixels;
+
+    /** Size of the last snapshot written or read */
+    private volatile long snapshotBytes;
+
+    /** Number of assets prefetched by the last prefetch */
+    private volatile int prefetchCount;
+
+    /** Duration of the last prefetch */
+    private volatile long prefetchMillis;
+
+    /**
+     * Constructor.
+     * @param properties properties to read the snapshot settings from
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public WarmStartSnapshot(Properties properties) {
+        String prefix = WarmStartSnapshot.class.getSimpleName();
+        this.size = Integer.parseInt(properties.getProperty(prefix + ".size"));
+        this.pixels = Boolean.parseBoolean(properties.getProperty(prefix + ".pixels"));
+        String localPath = properties.getProperty(prefix + ".file");
+        this.file = new File(System.getProperty("user.dir") + System.getProperty("file.separator") + localPath);
+    }
+
+    /** Is the snapshot in use at all? */
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * Write the hottest ids of the memory cache, and optionally their pixels.
+     * @param cache memory cache to take the hot set from
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void save(MemCacheAssetSupplier cache) throws IOException {
+        List<String> ids = cache.getHottest(size);
+        int withPixels = 0;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException("Cannot create " + parent.getAbsolutePath());
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(ids.size());
+            for (String id : ids) {
+                output.writeUTF(id);
+                BufferedImage img = null;
+                if (pixels) {
+                    Asset obj = cache.peek(id);
+                    if (obj != null && obj.getMain() instanceof BufferedImage)
+                        img = (BufferedImage) obj.getMain();
+                }
+                output.writeBoolean(img != null);
+                if (img != null) {
+                    writePixels(output, img);
+                    withPixels++;
+                }
+            }
+        }
+        finally {
+            output.close();
+        }
+        snapshotBytes = file.length();
+        LOGGER.info("Warm-start snapshot saved: {} assets ({} with pixels), {} bytes",
+            new Object[] { ids.size(), withPixels, snapshotBytes });
+    }
+
+    /**
+     * Read the snapshot and put the assets into the memory cache. Assets
+     * without pixels in the snapshot are retrieved from the manager, which
+     * only finds them in suppliers already registered. This method is
+     * synchronous; callers should use a low priority thread.
+     * @param cache memory cache to fill
+     * @param manager manager to retrieve assets without pixels from
+     */
+    public void prefetch(MemCacheAssetSupplier cache, AssetManager manager) {
+        if (!file.exists())
+            return;
+        long start = System.currentTimeMillis();
+        int total = 0;
+        int count = 0;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                LOGGER.warn("Ignoring unknown warm-start snapshot {}", file.getAbsolutePath());
+                return;
+            }
+            total = input.readInt();
+            for (int i = 0; i < total; i++) {
+                String id = input.readUTF();
+                Asset obj = null;
+                if (input.readBoolean())
+                    obj = new AssetImpl(readPixels(input));
+                else if (manager != null && !cache.has(id))
+                    obj = manager.getAsset(id, false);
+                if (obj != null && obj.getMain() != null) {
+                    cache.pin(id, obj);
+                    count++;
+                }
+            }
+        }
+        catch (IOException e) {
+            LOGGER.error("Cannot read warm-start snapshot " + file.getAbsolutePath(), e);
+        }
+        finally {
+            try {
+                if (input != null)
+                    input.close();
+            }
+            catch (IOException e) {
+                LOGGER.error("Closing stream failed", e);
+            }
+        }
+        snapshotBytes = file.length();
+        prefetchCount = count;
+        prefetchMillis = System.currentTimeMillis() - start;
+        LOGGER.info("Warm-start prefetch: {} of {} assets from {} bytes in {} ms",
+            new Object[] { count, total, snapshotBytes, prefetchMillis });
+    }
+
+    /** Getter */
+    public long getSnapshotBytes() {
+        return snapshotBytes;
+    }
+
+    /** Getter */
+    public int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    /** Getter */
+    public long getPrefetchMillis() {
+        return prefetchMillis;
+    }
+
+    /**
+     * Write the pixels as width, height and raw ARGB integers.
+     * @param output stream to write to
+     * @param img image to write
+     * @throws IOException write failed
+     */
+    private static void writePixels(DataOutputStream output, BufferedImage img) throws IOException {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] argb;
+        if (img.getType() == BufferedImage.TYPE_INT_ARGB)
+            argb = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        else
+            argb = img.getRGB(0, 0, width, height, null, 0, width);
+        ByteBuffer buffer = ByteBuffer.allocate(width * height * 4);
+        buffer.asIntBuffer().put(argb, 0, width * height);
+        output.writeInt(width);
+        output.writeInt(height);
+        output.write(buffer.array());
+    }
+
+    /**
+     * Read pixels written by {@link #writePixels}.
+     * @param input stream to read from
+     * @return image of type TYPE_INT_ARGB
+     * @throws IOException read failed
+     */
+    private static BufferedImage readPixels(DataInputStream input) throws IOException {
+        int width = input.readInt();
+        int height = input.readInt();
+        byte[] raw = new byte[width * height * 4];
+        input.readFully(raw);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] argb = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        ByteBuffer.wrap(raw).asIntBuffer().get(argb);
+        return img;
+    }
+}
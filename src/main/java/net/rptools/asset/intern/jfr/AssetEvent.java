@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.Metrics;
+
+/**
+ * Flight recorder event of the asset load lifecycle. Events are created and
+ * begun unconditionally; fields are only computed if shouldCommit() holds,
+ * so they cost next to nothing while not recording. The fields are
+ * protected, as private fields of superclasses are not recorded.
+ * @author username
+ */
+@Category({ "RPTools", "Asset Management" })
+@StackTrace(false)
+public abstract class AssetEvent extends Event {
+    /** Outcome: asset found or operation succeeded */
+    public final static String HIT = "hit";
+
+    /** Outcome: asset not found or operation failed */
+    public final static String MISS = "miss";
+
+    /** Outcome: exception thrown */
+    public final static String ERROR = "error";
+
+    /** Outcome: request aborted */
+    public final static String ABORTED = "aborted";
+
+    @Label("Asset Id")
+    protected String id;
+
+    @Label("Supplier")
+    protected String supplier;
+
+    @Label("Bytes")
+    @DataAmount
+    protected long bytes;
+
+    @Label("Outcome")
+    protected String outcome;
+
+    /** Setter */
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /** Setter */
+    public void setSupplier(String supplier) {
+        this.supplier = supplier;
+    }
+
+    /** Setter */
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /** Setter */
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    /**
+     * Set bytes and outcome from a loaded asset.
+     * @param obj loaded asset, may be null
+     */
+    public void setAsset(Asset obj) {
+        setBytes(getBytes(obj));
+        setOutcome(getOutcome(obj));
+    }
+
+    /**
+     * Encoded size of an asset.
+     * @param obj asset, may be null
+     * @return bytes or 0, if not encoded
+     */
+    public static long getBytes(Asset obj) {
+        return (obj instanceof EncodedAssetImpl ? ((EncodedAssetImpl) obj).getBytes().length : 0);
+    }
+
+    /**
+     * Outcome of a load. Encoded assets are not decoded to find out.
+     * @param obj loaded asset, may be null
+     * @return HIT or MISS
+     */
+    public static String getOutcome(Asset obj) {
+        return (Metrics.isFailure(obj) ? MISS : HIT);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Decode of encoded image bytes. The id is not known at this level.
+ * @author username
+ */
+@Name("net.rptools.asset.Decode")
+@Label("Image Decode")
+@Description("Encoded image decoded with ImageIO")
+public class DecodeEvent extends AssetEvent {
+    @Label("Format")
+    private String format;
+
+    @Label("Width")
+    private int width;
+
+    @Label("Height")
+    private int height;
+
+    /** Setter */
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    /** Setter */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+}
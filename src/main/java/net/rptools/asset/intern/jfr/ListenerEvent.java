@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Callback of an asset listener. Slow listeners hold up the loading thread.
+ * @author username
+ */
+@Name("net.rptools.asset.ListenerCallback")
+@Label("Listener Callback")
+@Description("Asset listener notified of a loaded asset")
+public class ListenerEvent extends AssetEvent {
+    @Label("Listener")
+    private Class<?> listener;
+
+    /** Setter */
+    public void setListener(Class<?> listener) {
+        this.listener = listener;
+    }
+}
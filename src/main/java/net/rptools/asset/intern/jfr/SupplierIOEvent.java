@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Call of a supplier reading or writing an asset, or reopening its storage.
+ * @author username
+ */
+@Name("net.rptools.asset.SupplierIO")
+@Label("Supplier I/O")
+@Description("Get, update, create or remove by a supplier, or reopening of its storage")
+public class SupplierIOEvent extends AssetEvent {
+    /** Operation: get */
+    public final static String GET = "get";
+
+    /** Operation: update */
+    public final static String UPDATE = "update";
+
+    /** Operation: create */
+    public final static String CREATE = "create";
+
+    /** Operation: remove */
+    public final static String REMOVE = "remove";
+
+    /** Operation: reopen storage */
+    public final static String REOPEN = "reopen";
+
+    @Label("Operation")
+    private String operation;
+
+    /** Setter */
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.Metrics;
+import net.rptools.asset.intern.supplier.SupplierSelectionStrategy;
+
+/**
+ * Choice of the supplier to read an asset from. The duration covers the
+ * has probes of the suppliers tried.
+ * @author username
+ */
+@Name("net.rptools.asset.SupplierSelected")
+@Label("Supplier Selected")
+@Description("Supplier chosen by the selection strategy")
+public class SupplierSelectedEvent extends AssetEvent {
+    @Label("Strategy")
+    private String strategy;
+
+    /** Setter */
+    public void setStrategy(String strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * End the event and commit it, if recorded.
+     * @param id asset id looked for
+     * @param supplier supplier chosen; null if none has the asset
+     * @param strategy strategy choosing
+     */
+    public void commit(String id, AssetSupplier supplier, SupplierSelectionStrategy strategy) {
+        end();
+        if (shouldCommit()) {
+            setId(id);
+            setSupplier(supplier != null ? Metrics.getName(supplier) : null);
+            setStrategy(strategy.getClass().getSimpleName());
+            setOutcome(supplier != null ? HIT : MISS);
+            commit();
+        }
+    }
+}
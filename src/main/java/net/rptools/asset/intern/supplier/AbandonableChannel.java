@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel to an asset that becomes the asset only when closed. A caller
+ * whose transfer failed abandons it instead, so that no partial asset is
+ * left behind.
+ * @author username
+ */
+public interface AbandonableChannel extends WritableByteChannel {
+    /**
+     * Discard what was written and close the channel.
+     * @throws IOException if cleaning up fails
+     */
+    public void abandon() throws IOException;
+}
@@ -14,11 +14,16 @@
  */
 package net.rptools.asset.intern.supplier;
 
+import java.awt.image.RenderedImage;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
 
+import javax.imageio.ImageIO;
+
 import net.rptools.asset.Asset;
 import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.EncodedAssetImpl;
 
 /**
  * This class provides defaults for asset suppliers.
@@ -77,4 +82,20 @@ public abstract class AbstractAssetSupplier implements AssetSupplier {
         // We do not throw an exception; the result code is sufficient
         return false;
     }
+
+    /**
+     * Write an asset in its format. Encoded assets are written as they are,
+     * if their format is not changed, so they are never decoded.
+     * @param obj asset to write
+     * @param output stream to write to; not closed
+     * @throws IOException if writing fails, also if there is no writer for
+     *   the format and image type; nothing is written then
+     * @throws ClassCastException if the asset is not an image
+     */
+    protected static void writeAsset(Asset obj, OutputStream output) throws IOException {
+        if (obj instanceof EncodedAssetImpl && ((EncodedAssetImpl) obj).isVerbatim())
+            output.write(((EncodedAssetImpl) obj).getBytes());
+        else if (!ImageIO.write(RenderedImage.class.cast(obj.getMain()), obj.getFormat(), output))
+            throw new IOException("No writer for " + obj.getFormat() + " and " + obj.getMain());
+    }
 }
@@ -14,22 +14,31 @@
  */
 package net.rptools.asset.intern.supplier;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
+import net.rptools.asset.StreamingAssetSupplier;
 import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.ImageDecoder;
 
 /**
  * Refactored class. Provides commonalities for UIR asset suppliers.
  * @author username
  */
-public abstract class AbstractURIAssetSupplier extends AbstractAssetSupplier {
+public abstract class AbstractURIAssetSupplier extends AbstractAssetSupplier implements StreamingAssetSupplier {
     /** Logging */
     protected final static Logger LOGGER = LoggerFactory.getLogger(AbstractURIAssetSupplier.class.getSimpleName());
 
@@ -43,32 +52,71 @@ public abstract class AbstractURIAssetSupplier extends AbstractAssetSupplier {
     }
 
     @Override
-    public AssetImpl get(String id, AssetListener listener) {
-        AssetImpl result = null;
+    public Asset get(String id, AssetListener listener) {
+        Asset result = null;
         try {
             URI uri = new URI(getKnownAsset(id));
-            LOGGER.info("Start loading {}", id);
+            LOGGER.debug("Start loading {}", id);
             result = loadImage(id, uri, listener);
-            LOGGER.info("Finished loading {}", id);
+            LOGGER.debug("Finished loading {}", id);
         }
         catch (URISyntaxException e) {
             LOGGER.error(id + " is not an URL", e);
             return null;
         }
         finally {
-            if (listener != null)
+            if (listener != null) {
+                ImageDecoder.decodeInPool(result);
                 listener.notify(id, result);
+            }
         }
         return result;
     }
 
+    @Override
+    public ReadableByteChannel openRead(String id) throws IOException {
+        if (!has(id))
+            return null;
+        try {
+            return Channels.newChannel(new URI(getKnownAsset(id)).toURL().openStream());
+        }
+        catch (URISyntaxException e) {
+            throw new IOException(id + " is not an URL", e);
+        }
+    }
+
+    @Override
+    public WritableByteChannel openWrite(String id) throws IOException {
+        throw new UnsupportedOperationException("AbstractURIAssetSupplier.openWrite");
+    }
+
     /**
      * Read the image, informing the listener once in a while.
      * @param url url to get
      * @param listener listener to inform
      * @return prepared image
      */
-    abstract protected AssetImpl loadImage(String id, URI uri, AssetListener listener);
+    abstract protected Asset loadImage(String id, URI uri, AssetListener listener);
+
+    /**
+     * Read an encoded image completely, without decoding it. The stream is
+     * not closed.
+     * @param input stream to read
+     * @return encoded asset or, if the format is unknown, an asset without
+     *   main object
+     * @throws IOException if reading fails
+     */
+    protected static Asset readAsset(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int length = input.read(buffer); length != -1; length = input.read(buffer))
+            output.write(buffer, 0, length);
+        byte[] bytes = output.toByteArray();
+        String format = ImageDecoder.getFormat(bytes);
+        if (format == null)
+            return new AssetImpl(null);
+        return new EncodedAssetImpl(bytes, format);
+    }
 
     /**
      * Direct reference getter, to be overloaded by subclasses.
@@ -0,0 +1,214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.Metrics;
+import net.rptools.asset.intern.jfr.SupplierSelectedEvent;
+
+/**
+ * Latency aware supplier selection strategy. Caches are consulted first, in
+ * the order of the default strategy. Among the other suppliers having an
+ * asset, the one with the lowest moving average of its read latency is
+ * chosen, as long as its moving average of failed reads is below
+ * maxErrorRate. Unhealthy suppliers are only chosen if no healthy one has the
+ * asset. Suppliers without a sample during the last probeInterval
+ * milliseconds are tried first, so that recovered or new suppliers get a
+ * chance. Ties are broken by priority. Writing is done as in the default
+ * strategy.
+ * @author username
+ */
+public class AdaptiveSupplierSelectionStrategy implements SupplierSelectionStrategy {
+    /** Strategy for writing */
+    private final static SupplierSelectionStrategy DEFAULT = new DefaultSupplierSelectionStrategy();
+
+    /** Weight of the newest sample in the moving averages */
+    private double alpha;
+
+    /** Error rate from which on a supplier is unhealthy */
+    private double maxErrorRate;
+
+    /** Age in millis after which statistics no longer count */
+    private long probeInterval;
+
+    /** Statistics by supplier */
+    private final ConcurrentHashMap<AssetSupplier, Statistics> statistics = new ConcurrentHashMap<AssetSupplier, Statistics>();
+
+    /**
+     * Constructor.
+     * @param properties properties to read the parameters from
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public AdaptiveSupplierSelectionStrategy(Properties properties) {
+        alpha = Double.parseDouble(properties.getProperty(AdaptiveSupplierSelectionStrategy.class.getSimpleName() + ".alpha"));
+        maxErrorRate = Double.parseDouble(properties.getProperty(AdaptiveSupplierSelectionStrategy.class.getSimpleName() + ".maxErrorRate"));
+        probeInterval = Long.parseLong(properties.getProperty(AdaptiveSupplierSelectionStrategy.class.getSimpleName() + ".probeInterval"));
+    }
+
+    @Override
+    public Asset getAsset(SupplierRouting routing, String id, AssetListener listener, boolean cache) {
+        AssetSupplier supplier = getSupplier(routing, id, AssetSupplier.class);
+        if (supplier == null)
+            return null;
+        Asset obj = null;
+        long start = System.nanoTime();
+        try {
+            obj = Metrics.get(supplier, id, listener);
+        }
+        finally {
+            if (!SupplierRouting.isCache(supplier))
+                getStatistics(supplier).record((System.nanoTime() - start) / 1e6, Metrics.isFailure(obj), alpha);
+        }
+        if (cache)
+            DefaultSupplierSelectionStrategy.updateCaches(id, routing, supplier, obj);
+        return obj;
+    }
+
+    @Override
+    public <T> T getSupplier(SupplierRouting routing, String id, Class<T> type) {
+        SupplierSelectedEvent event = new SupplierSelectedEvent();
+        event.begin();
+        T result = getSupplier(routing, id, type, System.currentTimeMillis());
+        event.commit(id, (AssetSupplier) result, this);
+        return result;
+    }
+
+    /**
+     * Find the fastest healthy supplier having the asset, after the caches.
+     */
+    private <T> T getSupplier(SupplierRouting routing, String id, Class<T> type, long now) {
+        T result = DefaultSupplierSelectionStrategy.getSupplier(routing.getCaches(), id, type);
+        if (result != null)
+            return result;
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (AssetSupplier supplier : routing.getSources())
+            if (type.isInstance(supplier))
+                candidates.add(new Candidate(supplier, getStatistics(supplier), now));
+        // Stable, so priority order breaks ties
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                if (a.unhealthy != b.unhealthy)
+                    return a.unhealthy ? 1 : -1;
+                return Double.compare(a.latency, b.latency);
+            }
+        });
+        for (Candidate candidate : candidates)
+            if (Metrics.has(candidate.supplier, id))
+                return type.cast(candidate.supplier);
+        return null;
+    }
+
+    @Override
+    public void create(SupplierRouting routing, Asset obj, AssetListener listener, boolean cache) {
+        DEFAULT.create(routing, obj, listener, cache);
+    }
+
+    /**
+     * Moving average of the read latency of a supplier.
+     * @param supplier supplier to report
+     * @return latency in millis; 0 if unknown
+     */
+    public double getLatency(AssetSupplier supplier) {
+        return getStatistics(supplier).getLatency();
+    }
+
+    /**
+     * Moving average of failed reads of a supplier.
+     * @param supplier supplier to report
+     * @return rate between 0 and 1
+     */
+    public double getErrorRate(AssetSupplier supplier) {
+        return getStatistics(supplier).getErrorRate();
+    }
+
+    /**
+     * Get or create the statistics of a supplier.
+     */
+    private Statistics getStatistics(AssetSupplier supplier) {
+        Statistics result = statistics.get(supplier);
+        if (result == null) {
+            result = new Statistics();
+            Statistics previous = statistics.putIfAbsent(supplier, result);
+            if (previous != null)
+                result = previous;
+        }
+        return result;
+    }
+
+    /**
+     * Score of a supplier, fixed while sorting.
+     */
+    private class Candidate {
+        private final AssetSupplier supplier;
+        private final boolean unhealthy;
+        private final double latency;
+
+        private Candidate(AssetSupplier supplier, Statistics statistics, long now) {
+            this.supplier = supplier;
+            synchronized (statistics) {
+                if (statistics.lastSample + probeInterval < now) {
+                    this.unhealthy = false;
+                    this.latency = 0;
+                }
+                else {
+                    this.unhealthy = statistics.errorRate >= maxErrorRate;
+                    this.latency = statistics.latency;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moving averages of one supplier.
+     */
+    private static class Statistics {
+        private double latency;
+        private double errorRate;
+        private long lastSample = Long.MIN_VALUE / 2;
+
+        private synchronized void record(double millis, boolean failure, double alpha) {
+            double error = (failure ? 1 : 0);
+            if (lastSample == Long.MIN_VALUE / 2) {
+                latency = millis;
+                errorRate = error;
+            }
+            else {
+                errorRate += alpha * (error - errorRate);
+                // Failing fast must not look fast
+                if (!failure)
+                    latency += alpha * (millis - latency);
+            }
+            lastSample = System.currentTimeMillis();
+        }
+
+        private synchronized double getLatency() {
+            return latency;
+        }
+
+        private synchronized double getErrorRate() {
+            return errorRate;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Immutable index of asset ids to locations. Updates return a new index, so
+ * suppliers publish it through a volatile field and read it without locks.
+ * <p>
+ * Entries are sorted by the UTF-8 bytes of their ids and packed into a single
+ * byte array, id followed by location. An open addressing hash table of entry
+ * numbers finds them. This costs about 20 bytes per entry besides the text,
+ * where a {@link Properties} entry costs well over 100.
+ * <p>
+ * The index file format is that of {@link Properties}.
+ * @author username
+ */
+public final class AssetIndex {
+    /** Bits of a slot holding the hash tag */
+    private final static int TAG = 0xff000000;
+
+    /** Empty index */
+    public final static AssetIndex EMPTY = new Builder(0, 0).build();
+
+    /** Ids and locations, one entry after the other */
+    private final byte[] data;
+
+    /**
+     * Offsets in data: the start of each entry followed by the end of its id,
+     * then the end of the last entry. Entry e spans offsets[2e] to
+     * offsets[2e + 2].
+     */
+    private final int[] offsets;
+
+    /** Most entries an index can hold */
+    public final static int MAX_SIZE = (1 << 24) - 1;
+
+    /**
+     * Entry number plus one by hash in the low three bytes; 0 is free. The
+     * high byte is that of the hash of the entry, which lets probes skip most
+     * other entries without looking at their ids.
+     */
+    private final int[] slots;
+
+    /**
+     * Constructor.
+     */
+    private AssetIndex(byte[] data, int[] offsets) {
+        this.data = data;
+        this.offsets = offsets;
+        if (size() > MAX_SIZE)
+            throw new IllegalArgumentException("Index too large: " + size());
+        int capacity = Integer.highestOneBit(Math.max(2, size() * 2 - 1)) << 1;
+        this.slots = new int[capacity];
+        for (int i = 0; i < size(); i++) {
+            int hash = hash(data, offsets[2 * i], offsets[2 * i + 1]);
+            int slot = hash & (capacity - 1);
+            while (slots[slot] != 0)
+                slot = (slot + 1) & (capacity - 1);
+            slots[slot] = (hash & TAG) | (i + 1);
+        }
+    }
+
+    /**
+     * Index of all entries.
+     * @param entries ids and locations
+     * @return new index
+     */
+    public static AssetIndex of(Map<String, String> entries) {
+        return EMPTY.with(entries);
+    }
+
+    /**
+     * Read an index file.
+     * @param stream stream in properties format, not closed
+     * @return new index
+     * @throws IOException if reading fails
+     */
+    public static AssetIndex load(InputStream stream) throws IOException {
+        Properties properties = new Properties();
+        properties.load(stream);
+        return of(toMap(properties));
+    }
+
+    /**
+     * Read an index file.
+     * @param reader reader in properties format, not closed
+     * @return new index
+     * @throws IOException if reading fails
+     */
+    public static AssetIndex load(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        return of(toMap(properties));
+    }
+
+    /**
+     * Write the index file, sorted by id.
+     * @param stream stream to write properties format to, not closed
+     * @param comments header comment
+     * @throws IOException if writing fails
+     */
+    public void store(OutputStream stream, String comments) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.ISO_8859_1));
+        writer.write("#" + comments + "\n");
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < size(); i++) {
+            line.setLength(0);
+            escape(getId(i), true, line);
+            line.append('=');
+            escape(getLocation(i), false, line);
+            line.append('\n');
+            writer.append(line);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Look up a location.
+     * @param id id of the asset
+     * @return its location or null
+     */
+    public String get(String id) {
+        int entry = find(id);
+        return (entry < 0 ? null : getLocation(entry));
+    }
+
+    /**
+     * Whether there is an entry for an id.
+     * @param id id of the asset
+     * @return true if it has a location
+     */
+    public boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Getter, number of entries */
+    public int size() {
+        return offsets.length / 2;
+    }
+
+    /**
+     * Id of an entry; entries are sorted by id.
+     * @param entry entry number below {@link #size()}
+     * @return id
+     */
+    public String getId(int entry) {
+        return new String(data, offsets[2 * entry], offsets[2 * entry + 1] - offsets[2 * entry], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Location of an entry.
+     * @param entry entry number below {@link #size()}
+     * @return location
+     */
+    public String getLocation(int entry) {
+        return new String(data, offsets[2 * entry + 1], offsets[2 * entry + 2] - offsets[2 * entry + 1], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Index with one entry set or, if the location is null, removed.
+     * @param id id of the asset
+     * @param location location or null
+     * @return new index
+     */
+    public AssetIndex with(String id, String location) {
+        Map<String, String> changes = new TreeMap<String, String>();
+        changes.put(id, location);
+        return with(changes);
+    }
+
+    /**
+     * Index with entries set or, where the location is null, removed. The
+     * entries are merged in a single pass, so batches are cheaper than one
+     * call per entry.
+     * @param changes ids and locations or null
+     * @return new index
+     */
+    public AssetIndex with(Map<String, String> changes) {
+        TreeMap<byte[], byte[]> sorted = new TreeMap<byte[], byte[]>(UNSIGNED);
+        int length = 0;
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            byte[] id = change.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] location = (change.getValue() == null ? null : change.getValue().getBytes(StandardCharsets.UTF_8));
+            sorted.put(id, location);
+            if (location != null)
+                length += id.length + location.length;
+        }
+        Builder builder = new Builder(size() + sorted.size(), data.length + length);
+        int entry = 0;
+        for (Map.Entry<byte[], byte[]> change : sorted.entrySet()) {
+            byte[] id = change.getKey();
+            int compare = -1;
+            for (; entry < size(); entry++) {
+                compare = compare(data, offsets[2 * entry], offsets[2 * entry + 1], id, 0, id.length);
+                if (compare >= 0)
+                    break;
+                builder.add(data, offsets[2 * entry], offsets[2 * entry + 1], offsets[2 * entry + 2]);
+            }
+            if (compare == 0)
+                entry++;
+            if (change.getValue() != null)
+                builder.add(id, change.getValue());
+        }
+        for (; entry < size(); entry++)
+            builder.add(data, offsets[2 * entry], offsets[2 * entry + 1], offsets[2 * entry + 2]);
+        return builder.build();
+    }
+
+    /**
+     * Find an entry. The hash is that of the id string, which strings cache.
+     * @return entry number or -1
+     */
+    private int find(String id) {
+        if (id == null)
+            return -1;
+        int mask = slots.length - 1;
+        int hash = mix(id.hashCode());
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (((slots[slot] ^ hash) & TAG) != 0)
+                continue;
+            int entry = (slots[slot] & ~TAG) - 1;
+            if (equals(data, offsets[2 * entry], offsets[2 * entry + 1], id))
+                return entry;
+        }
+        return -1;
+    }
+
+    /**
+     * Compare a byte range with a string, without encoding ASCII strings.
+     */
+    private static boolean equals(byte[] bytes, int from, int to, String text) {
+        if (to - from < text.length())
+            return false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+                return compare(bytes, from, to, encoded, 0, encoded.length) == 0;
+            }
+            if (bytes[from + i] != c)
+                return false;
+        }
+        return to - from == text.length();
+    }
+
+    /**
+     * Hash of the string encoded in a byte range, the same as the hash of the
+     * string. ASCII is not decoded.
+     */
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] < 0)
+                return mix(new String(bytes, from, to - from, StandardCharsets.UTF_8).hashCode());
+            hash = 31 * hash + bytes[i];
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spread a hash over all bits, so that similar ids, like numbered ones,
+     * do not form clusters in the table.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Compare byte ranges as unsigned bytes.
+     */
+    private static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+        int length = Math.min(aTo - aFrom, bTo - bFrom);
+        for (int i = 0; i < length; i++) {
+            int compare = (a[aFrom + i] & 0xff) - (b[bFrom + i] & 0xff);
+            if (compare != 0)
+                return compare;
+        }
+        return (aTo - aFrom) - (bTo - bFrom);
+    }
+
+    /** Order of the ids */
+    private final static Comparator<byte[]> UNSIGNED = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            return AssetIndex.compare(a, 0, a.length, b, 0, b.length);
+        }
+    };
+
+    /**
+     * Properties as map.
+     */
+    private static Map<String, String> toMap(Properties properties) {
+        Map<String, String> result = new TreeMap<String, String>();
+        for (String name : properties.stringPropertyNames())
+            result.put(name, properties.getProperty(name));
+        return result;
+    }
+
+    /**
+     * Escape like {@link Properties#store(OutputStream, String)}.
+     */
+    private static void escape(String text, boolean key, StringBuilder result) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case ' ':
+                if (key || i == 0)
+                    result.append('\\');
+                result.append(c);
+                break;
+            case '\t':
+                result.append("\\t");
+                break;
+            case '\n':
+                result.append("\\n");
+                break;
+            case '\r':
+                result.append("\\r");
+                break;
+            case '\f':
+                result.append("\\f");
+                break;
+            case '=':
+            case ':':
+            case '#':
+            case '!':
+            case '\\':
+                result.append('\\').append(c);
+                break;
+            default:
+                if (c < 0x20 || c > 0x7e)
+                    result.append(String.format("\\u%04X", (int) c));
+                else
+                    result.append(c);
+            }
+        }
+    }
+
+    /**
+     * Collects sorted entries.
+     */
+    private static class Builder {
+        private byte[] data;
+        private int[] offsets;
+        private int count;
+        private int length;
+
+        private Builder(int entries, int bytes) {
+            data = new byte[bytes];
+            offsets = new int[2 * entries + 1];
+        }
+
+        private void add(byte[] id, byte[] location) {
+            append(id, 0, id.length);
+            offsets[2 * count + 1] = length;
+            append(location, 0, location.length);
+            offsets[2 * ++count] = length;
+        }
+
+        private void add(byte[] source, int start, int split, int end) {
+            append(source, start, split);
+            offsets[2 * count + 1] = length;
+            append(source, split, end);
+            offsets[2 * ++count] = length;
+        }
+
+        private void append(byte[] source, int from, int to) {
+            System.arraycopy(source, from, data, length, to - from);
+            length += to - from;
+        }
+
+        private AssetIndex build() {
+            return new AssetIndex(Arrays.copyOf(data, length), Arrays.copyOf(offsets, 2 * count + 1));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import net.rptools.asset.AssetSupplier;
+
+/**
+ * Supplier that can take many encoded assets at once, committing its index
+ * (and archive) only once.
+ * @author username
+ */
+public interface BulkAssetSupplier extends AssetSupplier {
+    /**
+     * Store the files as they are under the given ids. Existing ids are
+     * overwritten.
+     * @param entries ids mapped to files holding the encoded assets
+     * @throws IOException if the files cannot be stored; entries stored
+     *   before the failure may or may not be committed
+     */
+    public void importAll(Map<String, File> entries) throws IOException;
+
+    /**
+     * Remove the assets under the given ids. Unknown ids are ignored.
+     * @param ids ids to remove
+     * @throws IOException if the assets cannot be removed; assets removed
+     *   before the failure may or may not be committed
+     */
+    public void removeAll(Collection<String> ids) throws IOException;
+}
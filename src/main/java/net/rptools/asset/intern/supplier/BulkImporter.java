@@ -0,0 +1,308 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.ImageDecoder;
+
+/**
+ * Imports a directory tree of images into a bulk supplier. Files are hashed
+ * and validated in parallel; the hash is used as asset id. The supplier
+ * commits its index once per batch. An interrupted import is resumed by
+ * running it again: files whose id the supplier already has are skipped.
+ * @author username
+ */
+public class BulkImporter {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(BulkImporter.class.getSimpleName());
+
+    /** Files hashed by one fork-join task without splitting further */
+    private final static int THRESHOLD = 8;
+
+    /** Number of assets committed at once */
+    private int batchSize;
+
+    /** Parallelism of the hashing pool */
+    private int parallelism;
+
+    /**
+     * Constructor.
+     * @param properties properties to read the import settings from
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public BulkImporter(Properties properties) {
+        this.batchSize = Integer.parseInt(properties.getProperty(BulkImporter.class.getSimpleName() + ".batchSize"));
+        int configured = Integer.parseInt(properties.getProperty(BulkImporter.class.getSimpleName() + ".parallelism"));
+        this.parallelism = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Import all image files below a directory.
+     * @param root directory to scan
+     * @param target supplier to import into
+     * @return statistics of the import, including the ids assigned
+     * @throws IOException if scanning or committing fails
+     */
+    public Result importTree(File root, BulkAssetSupplier target) throws IOException {
+        long start = System.currentTimeMillis();
+        final List<File> files = new ArrayList<File>();
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile())
+                    files.add(file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<Candidate> candidates;
+        try {
+            candidates = pool.invoke(new HashTask(files, 0, files.size()));
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        Result result = new Result();
+        result.scanned = files.size();
+        Map<String, File> batch = new LinkedHashMap<String, File>();
+        String rootPath = root.getAbsolutePath();
+        for (Candidate candidate : candidates) {
+            if (candidate.id == null) {
+                LOGGER.warn("Not importing {}, no image", candidate.file);
+                result.invalid++;
+                continue;
+            }
+            result.ids.put(candidate.file.getAbsolutePath().substring(rootPath.length() + 1), candidate.id);
+            if (batch.containsKey(candidate.id) || target.has(candidate.id)) {
+                result.skipped++;
+                continue;
+            }
+            batch.put(candidate.id, candidate.file);
+            result.imported++;
+            result.bytes += candidate.file.length();
+            if (batch.size() >= batchSize) {
+                target.importAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+            target.importAll(batch);
+
+        result.millis = System.currentTimeMillis() - start;
+        LOGGER.info("Imported {} of {} files ({} skipped, {} invalid), {} bytes in {} ms: {} files/s, {} MB/s",
+            new Object[] { result.imported, result.scanned, result.skipped, result.invalid, result.bytes, result.millis,
+                String.format("%.1f", result.getFilesPerSecond()), String.format("%.2f", result.getMegabytesPerSecond()) });
+        return result;
+    }
+
+    /**
+     * Command line entry point.
+     * @param args source directory, "file" or "zip", and the target as used
+     *   by the respective supplier constructor
+     * @throws Exception if anything fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 || !("file".equals(args[1]) || "zip".equals(args[1]))) {
+            System.err.println("Usage: BulkImporter <directory> file|zip <target>");
+            System.exit(1);
+        }
+        Properties properties = AssetManagerImpl.getTotalProperties(null);
+        BulkAssetSupplier target;
+        if ("file".equals(args[1])) {
+            // A new directory starts with an empty index
+            File directory = new File(args[2]);
+            File index = new File(directory, "index");
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Cannot create " + directory.getAbsolutePath());
+            if (!index.exists() && !index.createNewFile())
+                throw new IOException("Cannot create " + index.getAbsolutePath());
+            target = new FileAssetSupplier(properties, args[2]);
+        }
+        else {
+            target = new ZipFileAssetSupplier(properties, args[2]);
+        }
+        Result result = new BulkImporter(properties).importTree(new File(args[0]), target);
+        for (Map.Entry<String, String> entry : result.getIds().entrySet())
+            System.out.println(entry.getValue() + "=" + entry.getKey());
+    }
+
+    /**
+     * Compute the id (content hash) of a file, if it is an image.
+     * @param file file to check
+     * @return id or null, if the file is no image
+     */
+    private static String hash(File file) {
+        if (ImageDecoder.getFormat(file) == null)
+            return null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            InputStream input = new DigestInputStream(new BufferedInputStream(new FileInputStream(file)), digest);
+            try {
+                byte[] buffer = new byte[8192];
+                while (input.read(buffer) != -1) {
+                    // digest only
+                }
+            }
+            finally {
+                input.close();
+            }
+            StringBuilder id = new StringBuilder();
+            for (byte b : digest.digest())
+                id.append(String.format("%02x", b));
+            return id.toString();
+        }
+        catch (IOException e) {
+            LOGGER.warn("Cannot read " + file, e);
+            return null;
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * File with its id.
+     * @author username
+     */
+    private final static class Candidate {
+        /** File to import */
+        private final File file;
+        /** Content hash, null if invalid */
+        private final String id;
+        /** Standard constructor */
+        private Candidate(File file, String id) {
+            this.file = file;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Hashing of a range of files, split in halves.
+     * @author username
+     */
+    private final static class HashTask extends RecursiveTask<List<Candidate>> {
+        private static final long serialVersionUID = 1L;
+        /** All files */
+        private final List<File> files;
+        /** First index of this task */
+        private final int from;
+        /** Last index of this task, exclusive */
+        private final int to;
+        /** Standard constructor */
+        private HashTask(List<File> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            List<Candidate> result = new ArrayList<Candidate>();
+            if (to - from <= THRESHOLD) {
+                for (File file : files.subList(from, to))
+                    result.add(new Candidate(file, hash(file)));
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            HashTask low = new HashTask(files, from, middle);
+            HashTask high = new HashTask(files, middle, to);
+            low.fork();
+            result.addAll(high.compute());
+            result.addAll(0, low.join());
+            return result;
+        }
+    }
+
+    /**
+     * Statistics of an import.
+     * @author username
+     */
+    public final static class Result {
+        /** Paths relative to the root mapped to ids */
+        private final Map<String, String> ids = new TreeMap<String, String>();
+        /** Files found */
+        private int scanned;
+        /** Files imported */
+        private int imported;
+        /** Files already present */
+        private int skipped;
+        /** Files that are no images */
+        private int invalid;
+        /** Bytes imported */
+        private long bytes;
+        /** Duration */
+        private long millis;
+
+        /** Getter */
+        public Map<String, String> getIds() {
+            return ids;
+        }
+
+        /** Getter */
+        public int getScanned() {
+            return scanned;
+        }
+
+        /** Getter */
+        public int getImported() {
+            return imported;
+        }
+
+        /** Getter */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /** Getter */
+        public int getInvalid() {
+            return invalid;
+        }
+
+        /** Getter */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /** Getter */
+        public long getMillis() {
+            return millis;
+        }
+
+        /** Throughput */
+        public double getFilesPerSecond() {
+            return imported * 1000.0 / Math.max(1, millis);
+        }
+
+        /** Throughput */
+        public double getMegabytesPerSecond() {
+            return bytes * 1000.0 / 1024 / 1024 / Math.max(1, millis);
+        }
+    }
+}
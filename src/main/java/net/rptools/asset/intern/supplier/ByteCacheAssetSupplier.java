@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.ReadOptions;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.ImageDecoder;
+
+/**
+ * Memory cache for encoded images. The encoded bytes take a fraction of the
+ * decoded pixels, so many more assets fit into the budget (in megabytes); a
+ * hit costs a decode, but no I/O. The least recently used assets are
+ * evicted. Only encoded assets that are still in their encoded format are
+ * cached, so nothing is ever encoded for this cache. It is discouraged to use
+ * the create method of caches.
+ * @author username
+ */
+public class ByteCacheAssetSupplier extends AbstractAssetSupplier {
+    /** Least recently used first */
+    private final Map<String, EncodedAssetImpl> entries = new LinkedHashMap<String, EncodedAssetImpl>(16, 0.75f, true);
+
+    /** Budget in bytes */
+    private long budget;
+
+    /** Bytes used */
+    private long used;
+
+    /**
+     * Constructor. Priorities specific to this class.
+     * @param override properties to take precendence over default ones
+     * @throws IOException can't load properties
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public ByteCacheAssetSupplier(Properties override) throws IOException {
+        super(override);
+        this.priority = Integer.parseInt(properties.getProperty(ByteCacheAssetSupplier.class.getSimpleName() + ".priority"));
+        this.budget = Long.parseLong(properties.getProperty(ByteCacheAssetSupplier.class.getSimpleName() + ".megabytes")) << 20;
+    }
+
+    /**
+     * Whether this cache is configured at all.
+     * @param properties properties to read the budget from
+     * @return true if the budget is positive
+     */
+    public static boolean isEnabled(Properties properties) {
+        return Long.parseLong(properties.getProperty(ByteCacheAssetSupplier.class.getSimpleName() + ".megabytes")) > 0;
+    }
+
+    @Override
+    public synchronized boolean has(String id) {
+        return entries.containsKey(id);
+    }
+
+    @Override
+    public Asset get(String id, AssetListener listener) {
+        EncodedAssetImpl entry;
+        synchronized (this) {
+            entry = entries.get(id);
+        }
+        // A fresh asset each time, so the decoded image is not held here
+        Asset obj = null;
+        if (entry != null) {
+            obj = new EncodedAssetImpl(entry.getBytes(), entry.getEncodedFormat());
+            obj.setFormat(entry.getFormat());
+        }
+        if (listener != null) {
+            ImageDecoder.decodeInPool(obj);
+            listener.notify(id, obj);
+        }
+        return obj;
+    }
+
+    @Override
+    public boolean canCreate(Class<?> clazz) {
+        return false;
+    }
+
+    @Override
+    public String create(Asset obj) {
+        String id = UUID.randomUUID().toString();
+        update(id, obj);
+        return id;
+    }
+
+    @Override
+    public void update(String id, Asset obj) {
+        if (!(obj instanceof EncodedAssetImpl) || !((EncodedAssetImpl) obj).isVerbatim())
+            return;
+        EncodedAssetImpl encoded = (EncodedAssetImpl) obj;
+        EncodedAssetImpl entry = new EncodedAssetImpl(encoded.getBytes(), encoded.getEncodedFormat());
+        entry.setFormat(encoded.getFormat());
+        long size = entry.getBytes().length;
+        if (size > budget)
+            return;
+        synchronized (this) {
+            EncodedAssetImpl old = entries.put(id, entry);
+            if (old != null)
+                used -= old.getBytes().length;
+            used += size;
+            for (Iterator<EncodedAssetImpl> iter = entries.values().iterator(); used > budget && iter.hasNext(); ) {
+                used -= iter.next().getBytes().length;
+                iter.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean canRemove(String id) {
+        return entries.containsKey(id);
+    }
+
+    @Override
+    public synchronized boolean remove(String id) {
+        EncodedAssetImpl old = entries.remove(id);
+        if (old == null)
+            return false;
+        used -= old.getBytes().length;
+        return true;
+    }
+
+    /**
+     * Remove all variants of an asset, e.g. mipmap levels and tiles.
+     * @param id asset id the variants belong to
+     */
+    public synchronized void removeVariants(String id) {
+        String prefix = id + ReadOptions.VARIANT_SEPARATOR;
+        for (Iterator<Map.Entry<String, EncodedAssetImpl>> iter = entries.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<String, EncodedAssetImpl> entry = iter.next();
+            if (entry.getKey().startsWith(prefix)) {
+                used -= entry.getValue().getBytes().length;
+                iter.remove();
+            }
+        }
+    }
+
+    /** Clear cache; valid only for this supplier */
+    public synchronized void clear() {
+        entries.clear();
+        used = 0;
+    }
+
+    /** Getter, bytes used */
+    public synchronized long getUsed() {
+        return used;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.util.Collection;
+
+import net.rptools.asset.AssetSupplier;
+
+/**
+ * Supplier whose assets may change without going through the manager, for
+ * example in a watched directory. The manager listens to drop its cached
+ * copies.
+ * @author username
+ */
+public interface ChangingAssetSupplier extends AssetSupplier {
+    /**
+     * Listener to changes.
+     */
+    public interface ChangeListener {
+        /**
+         * Assets were modified or removed.
+         * @param supplier supplier holding the assets
+         * @param ids ids of the assets
+         */
+        public void changed(AssetSupplier supplier, Collection<String> ids);
+    }
+
+    /**
+     * Setter.
+     * @param listener listener to notify or null
+     */
+    public void setChangeListener(ChangeListener listener);
+}
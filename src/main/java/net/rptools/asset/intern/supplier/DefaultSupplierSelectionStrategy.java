@@ -1,25 +1,61 @@
 package net.rptools.asset.intern.supplier;
 
+import java.util.List;
 import java.util.SortedSet;
 
 import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
 import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.Metrics;
+import net.rptools.asset.intern.RequestContext;
+import net.rptools.asset.intern.jfr.CacheFillEvent;
+import net.rptools.asset.intern.jfr.SupplierSelectedEvent;
 
 /**
  * Default supplier selection strategy. When reading we choose the suppliers
- * MemCache, DiskCache, File, ZipFile, Http in that order and among one type
- * according to priority. When writing, the first priority (writable) File is
- * chosen. All DiskCaches and MemCaches are updated when reading and
- * writing (and the cache parameter is true).
+ * MemCache, OffHeapCache, ByteCache, DiskCache, File, ZipFile, MultiZip,
+ * Http in that order and among one type according to priority. When
+ * writing, the first priority (writable) File is chosen. When reading (and
+ * the cache parameter is true), the caches before the supplier that
+ * answered are filled; when writing, all caches are. The orders are
+ * precomputed by SupplierRouting. The static methods are kept for callers
+ * without a strategy instance or routing.
  * @author username
  */
-public class DefaultSupplierSelectionStrategy {
-    // Sorted class names
-    private static Class<?>[] order = {
-        MemCacheAssetSupplier.class, DiskCacheAssetSupplier.class, FileAssetSupplier.class, ZipFileAssetSupplier.class,
-        HttpAssetSupplier.class
-    };
+public class DefaultSupplierSelectionStrategy implements SupplierSelectionStrategy {
+    @Override
+    public Asset getAsset(SupplierRouting routing, String id, AssetListener listener, boolean cache) {
+        AssetSupplier supplier = getSupplier(routing, id, AssetSupplier.class);
+        if (supplier == null)
+            return null;
+        Asset obj = Metrics.get(supplier, id, listener);
+        if (cache)
+            updateCaches(id, routing, supplier, obj);
+        return obj;
+    }
+
+    @Override
+    public <T> T getSupplier(SupplierRouting routing, String id, Class<T> type) {
+        SupplierSelectedEvent event = new SupplierSelectedEvent();
+        event.begin();
+        T result = getSupplier(routing.getReadOrder(), id, type);
+        event.commit(id, (AssetSupplier) result, this);
+        return result;
+    }
+
+    @Override
+    public void create(SupplierRouting routing, Asset obj, AssetListener listener, boolean cache) {
+        for (AssetSupplier supplier : routing.getWriteTargets()) {
+            if (supplier.canCreate(obj.getType())) {
+                String id = Metrics.create(supplier, obj);
+                if (listener != null)
+                    listener.notify(id, obj);
+                if (cache)
+                    updateCaches(id, routing, null, obj);
+                return;
+            }
+        }
+    }
 
     /**
      * Get an asset according to this strategy.
@@ -30,19 +66,18 @@ public class DefaultSupplierSelectionStrategy {
      * @return the asset sought for
      */
     public static Asset getAssetByStrategy(SortedSet<AssetSupplier> assetSuppliers, String id, AssetListener listener, boolean cache) {
-        for (Class<?> clazz : order) {
-            for (AssetSupplier supplier : assetSuppliers) {
-                if (clazz.isInstance(supplier)) {
-                    if (supplier.has(id)) {
-                        Asset obj = supplier.get(id, listener);
-                        if (cache)
-                            updateCaches(id, assetSuppliers, obj);
-                        return obj;
-                    }
-                }
-            }
-        }
-        return null;
+        return new DefaultSupplierSelectionStrategy().getAsset(new SupplierRouting(assetSuppliers), id, listener, cache);
+    }
+
+    /**
+     * Get the supplier to read an asset from according to this strategy.
+     * @param assetSuppliers list of suppliers to choose from
+     * @param id id to look for
+     * @param type only suppliers of this type are considered
+     * @return the supplier that has the asset or null
+     */
+    public static <T> T getSupplierByStrategy(SortedSet<AssetSupplier> assetSuppliers, String id, Class<T> type) {
+        return new DefaultSupplierSelectionStrategy().getSupplier(new SupplierRouting(assetSuppliers), id, type);
     }
 
     /**
@@ -53,29 +88,54 @@ public class DefaultSupplierSelectionStrategy {
      * @param obj asset to store/create
      */
     public static void createAsset(SortedSet<AssetSupplier> assetSuppliers, final Asset obj, final AssetListener listener, final boolean cache) {
-        for (AssetSupplier supplier : assetSuppliers) {
-            if (supplier instanceof FileAssetSupplier && supplier.canCreate(obj.getType())) {
-                String id = supplier.create(obj);
-                if (listener != null)
-                    listener.notify(id, obj);
-                if (cache)
-                    updateCaches(id, assetSuppliers, obj);
-                return;
-            }
+        new DefaultSupplierSelectionStrategy().create(new SupplierRouting(assetSuppliers), obj, listener, cache);
+    }
+
+    /**
+     * Find the first supplier having an asset.
+     * @param suppliers suppliers in the order to probe
+     * @param id id to look for
+     * @param type only suppliers of this type are considered
+     * @return the supplier that has the asset or null
+     */
+    static <T> T getSupplier(List<AssetSupplier> suppliers, String id, Class<T> type) {
+        for (AssetSupplier supplier : suppliers) {
+            if (type.isInstance(supplier) && Metrics.has(supplier, id))
+                return type.cast(supplier);
         }
+        return null;
     }
 
     /**
-     * Update caches with a new object.
+     * Update caches with a new object, unless the request was aborted or
+     * the load failed. Only the caches read before the supplier that
+     * answered are filled, and those that already hold the id are skipped.
      * @param id asset id to update
-     * @param updateSet caches to update
+     * @param routing routing holding the caches to update
+     * @param source supplier that answered; null or a source fills all caches
      * @param obj new object for the given id
      */
-    private static void updateCaches(String id, SortedSet<AssetSupplier> updateSet, Asset obj) {
-        // Now update
-        for (AssetSupplier supplier : updateSet) {
-            if (supplier instanceof DiskCacheAssetSupplier || supplier instanceof MemCacheAssetSupplier)
-                supplier.update(id, obj);
+    static void updateCaches(String id, SupplierRouting routing, AssetSupplier source, Asset obj) {
+        // Aborted loads may be incomplete, failed loads would hide the asset
+        if (RequestContext.isAborted() || Metrics.isFailure(obj))
+            return;
+        CacheFillEvent event = new CacheFillEvent();
+        event.begin();
+        int filled = 0;
+        for (AssetSupplier supplier : routing.getCaches()) {
+            if (supplier == source)
+                break;
+            if (!Metrics.has(supplier, id)) {
+                Metrics.update(supplier, id, obj);
+                filled++;
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.setId(id);
+            event.setCaches(filled);
+            event.setAsset(obj);
+            event.commit();
         }
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the files of one directory. Events are coalesced until the
+ * directory has been quiet for the debounce interval, or for at most ten
+ * intervals during long bulk copies, and then handed over as one batch.
+ * @author username
+ */
+class DirectoryWatcher implements Closeable {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(DirectoryWatcher.class.getSimpleName());
+
+    /**
+     * Receives batches of changes.
+     */
+    interface Handler {
+        /**
+         * Files were created, modified or deleted.
+         * @param names file names in the directory
+         */
+        void changed(Set<String> names);
+
+        /**
+         * Events were lost, the directory must be rescanned.
+         */
+        void overflow();
+    }
+
+    /** Watch service */
+    private final WatchService service;
+
+    /** Quiet interval */
+    private final long debounce;
+
+    /** Handler */
+    private final Handler handler;
+
+    /** Watching thread */
+    private final Thread thread;
+
+    /**
+     * Constructor. Starts watching.
+     * @param directory directory to watch
+     * @param debounce quiet interval in millis
+     * @param handler handler of the batches
+     * @throws IOException if the directory cannot be watched
+     */
+    DirectoryWatcher(Path directory, long debounce, Handler handler) throws IOException {
+        this.service = directory.getFileSystem().newWatchService();
+        this.debounce = debounce;
+        this.handler = handler;
+        directory.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "DirectoryWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Collect and hand over batches until closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<String> names = new HashSet<String>();
+                boolean overflow = false;
+                long end = System.currentTimeMillis() + 10 * debounce;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW)
+                            overflow = true;
+                        else
+                            names.add(event.context().toString());
+                    }
+                    if (!key.reset()) {
+                        LOGGER.warn("Watched directory is gone");
+                        return;
+                    }
+                    long wait = Math.min(debounce, end - System.currentTimeMillis());
+                    key = (wait > 0 ? service.poll(wait, TimeUnit.MILLISECONDS) : null);
+                }
+                try {
+                    if (overflow)
+                        handler.overflow();
+                    else
+                        handler.changed(names);
+                }
+                catch (RuntimeException e) {
+                    LOGGER.error("Handling changes failed", e);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // Closed
+        }
+        catch (ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Stop watching. Batches not yet handed over are lost.
+     */
+    @Override
+    public void close() throws IOException {
+        service.close();
+        thread.interrupt();
+    }
+}
@@ -14,17 +14,19 @@
  */
 package net.rptools.asset.intern.supplier;
 
-import java.awt.image.RenderedImage;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.util.*;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
 import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.RequestContext;
 
 /**
  * This class provides access to the disk cache. We only provide
@@ -50,6 +53,13 @@ public class DiskCacheAssetSupplier extends AbstractURIAssetSupplier {
     /** Notify partial interval */
     private long notifyInterval = 500; // millis
 
+    /** Builds pyramids for large images */
+    private MipmapBuilder mipmaps;
+
+    /** Guards writes; a lock rather than a monitor, so virtual threads
+     * blocked in I/O do not pin their carrier */
+    private final ReentrantLock lock = new ReentrantLock();
+
     /**
      * Constructor. Loads properties.
      * @param override properties to take precendence over default ones
@@ -58,27 +68,74 @@ public class DiskCacheAssetSupplier extends AbstractURIAssetSupplier {
     public DiskCacheAssetSupplier(Properties override) throws IOException {
         super(override);
         this.priority = Integer.parseInt(properties.getProperty(DiskCacheAssetSupplier.class.getSimpleName() + ".priority"));
+        this.mipmaps = new MipmapBuilder(properties);
         String cacheLocalPath = properties.getProperty(DiskCacheAssetSupplier.class.getSimpleName() + ".directory");
         createPath(System.getProperty("user.dir") + System.getProperty("file.separator") + cacheLocalPath);
     }
 
     @Override
-    public synchronized void update(String id, Asset obj) {
-        File testFile = getAssetFile(id);
-        if (testFile == null) {
-            LOGGER.info("Cannot cache asset {}", id);
-            return;
-        }
-        // This method also serves as update, so do something even if asset
-        // already exists
+    public void update(String id, Asset obj) {
+        lock.lock();
         try {
-            ImageIO.write(RenderedImage.class.cast(obj.getMain()), obj.getFormat(), new FileOutputStream(testFile));
+            File testFile = getAssetFile(id);
+            if (testFile == null) {
+                LOGGER.info("Cannot cache asset {}", id);
+                return;
+            }
+            // This method also serves as update, so do something even if asset
+            // already exists
+            OutputStream output = null;
+            try {
+                output = new FileOutputStream(testFile);
+                writeAsset(obj, output);
+                mipmaps.schedule(this, id, obj);
+            }
+            catch (Exception e) {
+                LOGGER.error("Cannot cache asset " + id, e);
+                try {
+                    if (output != null)
+                        output.close();
+                    output = null;
+                }
+                catch (IOException e2) {
+                    LOGGER.error("Closing stream failed", e2);
+                }
+                // An empty or partial file would be taken for the asset
+                if (!testFile.delete())
+                    LOGGER.warn("Cannot delete {}", testFile);
+            }
+            finally {
+                try {
+                    if (output != null)
+                        output.close();
+                }
+                catch (IOException e) {
+                    LOGGER.error("Closing stream failed", e);
+                }
+            }
         }
-        catch (Exception e) {
-            LOGGER.error("Cannot cache asset " + id, e);
+        finally {
+            lock.unlock();
         }
     }
 
+    @Override
+    public ReadableByteChannel openRead(String id) throws IOException {
+        File testFile = getAssetFile(id);
+        if (testFile == null || !testFile.exists())
+            return null;
+        return FileChannel.open(testFile.toPath(), StandardOpenOption.READ);
+    }
+
+    @Override
+    public WritableByteChannel openWrite(String id) throws IOException {
+        File testFile = getAssetFile(id);
+        if (testFile == null)
+            throw new IOException("Cannot cache asset " + id);
+        // A partial file would be taken for the asset
+        return new FileWriteChannel(testFile);
+    }
+
     @Override
     public boolean canCreate(Class<?> clazz) {
         return true;
@@ -109,6 +166,7 @@ public class DiskCacheAssetSupplier extends AbstractURIAssetSupplier {
         File testFile = getAssetFile(id);
         try {
             if (testFile != null && testFile.exists()) {
+                MipmapBuilder.removeLevels(this, id);
                 return testFile.delete();
             }
         }
@@ -131,7 +189,7 @@ public class DiskCacheAssetSupplier extends AbstractURIAssetSupplier {
     private File getAssetFile(String id) {
         try {
             String absName = getKnownAsset(id);
-            LOGGER.info("reading {} as {}", id, absName);
+            LOGGER.debug("reading {} as {}", id, absName);
             return new File(new URI(absName));
         }
         catch (Exception e) {
@@ -141,12 +199,15 @@ public class DiskCacheAssetSupplier extends AbstractURIAssetSupplier {
     }
 
     @Override
-    protected AssetImpl loadImage(String id, URI uri, AssetListener listener) {
+    protected Asset loadImage(String id, URI uri, AssetListener listener) {
+        InputStream input = null;
         try {
             URLConnection connection = uri.toURL().openConnection();
             int assetLength = Math.max(0, connection.getContentLength());
-            InputStream input = new InputStreamInterceptor(id, assetLength, connection.getInputStream(), listener, notifyInterval);
-            return new AssetImpl(ImageIO.read(input));
+            input = new InputStreamInterceptor(id, assetLength, connection.getInputStream(), listener, notifyInterval);
+            if (!RequestContext.onAbort(input))
+                return new AssetImpl(null);
+            return readAsset(input);
         }
         catch (MalformedURLException e) {
             return null;
@@ -154,6 +215,17 @@ public class DiskCacheAssetSupplier extends AbstractURIAssetSupplier {
         catch (IOException e) {
             return new AssetImpl(null);
         }
+        finally {
+            try {
+                if (input != null) {
+                    RequestContext.remove(input);
+                    input.close();
+                }
+            }
+            catch (IOException e) {
+                LOGGER.error("Closing stream failed", e);
+            }
+        }
     }
 
     /**
@@ -17,14 +17,31 @@ package net.rptools.asset.intern.supplier;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
 import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.RequestContext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,21 +49,57 @@ import org.slf4j.LoggerFactory;
 /**
  * This class provides access to File URLs. The index file holds local file names.
  * We only provide BufferedImages currently.
+ * <p>
+ * With FileAssetSupplier.watch, the directory is watched. Changes by others
+ * are applied to the index as they happen: a rewritten index is reloaded,
+ * new files are indexed under their name, deleted ones are unindexed, and
+ * the change listener learns about modified and removed assets. Others
+ * should replace the index atomically, e.g. by renaming a new one, as done
+ * here. The watching thread runs until close(), which is up to the owner of
+ * the supplier; the manager does not close it.
  * @author username
  */
-public class FileAssetSupplier extends AbstractURIAssetSupplier {
+public class FileAssetSupplier extends AbstractURIAssetSupplier implements BulkAssetSupplier, ChangingAssetSupplier, Closeable {
     /** Logging */
     private final static Logger LOGGER = LoggerFactory.getLogger(FileAssetSupplier.class.getSimpleName());
 
     /** Notify partial interval */
     private long notifyInterval = 500; // millis
 
-    /** Index of ids/files to locate in this supplier */
-    private final Properties knownAssets = new Properties();
+    /** Builds pyramids for large images */
+    private MipmapBuilder mipmaps;
+
+    /** Splits very large images into tiles */
+    private TileBuilder tiles;
+
+    /** Index of ids/files to locate in this supplier, replaced on writes */
+    private volatile AssetIndex knownAssets = AssetIndex.EMPTY;
+
+    /** Guards writes; a lock rather than a monitor, so virtual threads
+     * blocked in I/O do not pin their carrier */
+    private final ReentrantLock lock = new ReentrantLock();
 
     /** resource root directory path */
     private String fileAssetPath;
 
+    /** Name of the index file */
+    private final static String INDEX = "index";
+
+    /** Watches the directory, null if not watching */
+    private DirectoryWatcher watcher;
+
+    /** Listener to changes found by watching */
+    private volatile ChangeListener changeListener;
+
+    /** Modification times of files written here, to ignore their events */
+    private final Map<String, Long> ownWrites = new ConcurrentHashMap<String, Long>();
+
+    /** Modification time and length of the index last written here */
+    private long indexModified, indexLength;
+
+    /** Start of the last applied batch of changes */
+    private long lastScan;
+
     /**
      * Constructor. Loads properties and sets up the index file at the
      * <em>prefix</em> location.
@@ -59,8 +112,40 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
         super(override);
         this.notifyInterval = Long.parseLong(properties.getProperty(FileAssetSupplier.class.getSimpleName() + ".notifyInterval"));
         this.priority = Integer.parseInt(properties.getProperty(FileAssetSupplier.class.getSimpleName() + ".priority"));
+        this.mipmaps = new MipmapBuilder(properties);
+        this.tiles = new TileBuilder(properties);
         createPath(prefix);
         loadIndex(prefix);
+        if (Boolean.parseBoolean(properties.getProperty(FileAssetSupplier.class.getSimpleName() + ".watch"))) {
+            long debounce = Long.parseLong(properties.getProperty(FileAssetSupplier.class.getSimpleName() + ".debounce"));
+            lastScan = System.currentTimeMillis();
+            watcher = new DirectoryWatcher(new File(fileAssetPath).toPath(), debounce, new DirectoryWatcher.Handler() {
+                @Override
+                public void changed(Set<String> names) {
+                    applyChanges(names, false);
+                }
+                @Override
+                public void overflow() {
+                    LOGGER.info("Lost changes of {}, rescanning", fileAssetPath);
+                    applyChanges(new HashSet<String>(Arrays.asList(new File(fileAssetPath).list())), true);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * Stop watching the directory.
+     * @throws IOException if the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (watcher != null)
+            watcher.close();
     }
 
     @Override
@@ -75,38 +160,164 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
     }
 
     @Override
-    public synchronized String create(Asset obj) {
+    public String create(Asset obj) {
+        lock.lock();
         try {
-            BufferedImage img = BufferedImage.class.cast(obj.getMain());
-            String id = UUID.randomUUID().toString();
-            // Set up name, if nothing useful is passed
-            String localName = id;
-            File f = setAssetFile(id, localName);
-            ImageIO.write(img, obj.getFormat(), f);
-            return id;
+            try {
+                String id = UUID.randomUUID().toString();
+                // Set up name, if nothing useful is passed
+                String localName = id;
+                File f = setAssetFile(id, localName);
+                writeAssetFile(id, obj, f);
+                recordWrite(f);
+                mipmaps.schedule(this, id, obj);
+                tiles.schedule(this, id, obj);
+                return id;
+            }
+            catch (Exception e) {
+                LOGGER.warn("Create failed for " + obj, e);
+                return null;
+            }
         }
-        catch (Exception e) {
-            LOGGER.warn("Create failed for " + obj, e);
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void update(String id, Asset obj) {
+        lock.lock();
+        try {
+            try {
+                File f = prepareAssetFile(id);
+                writeAssetFile(id, obj, f);
+                recordWrite(f);
+                mipmaps.schedule(this, id, obj);
+                tiles.schedule(this, id, obj);
+            }
+            catch (Exception e) {
+                LOGGER.warn("Create failed for " + id, e);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ReadableByteChannel openRead(String id) throws IOException {
+        File f = (id != null ? getAssetFile(id) : null);
+        if (f == null)
             return null;
+        return FileChannel.open(f.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * The index references the asset only after the channel is closed, and
+     * not at all if it is abandoned or a write fails.
+     */
+    @Override
+    public WritableByteChannel openWrite(final String id) throws IOException {
+        final String localName = getLocalName(id);
+        final File f = new File(fileAssetPath + localName);
+        return new FileWriteChannel(f) {
+            @Override
+            protected void commit() throws IOException {
+                lock.lock();
+                try {
+                    if (setAssetFile(id, localName) == null)
+                        throw new IOException("Cannot write " + id);
+                    recordWrite(f);
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void importAll(Map<String, File> entries) throws IOException {
+        lock.lock();
+        try {
+            Map<String, String> imported = new HashMap<String, String>();
+            try {
+                for (Map.Entry<String, File> entry : entries.entrySet()) {
+                    String id = entry.getKey();
+                    File f = new File(fileAssetPath + id);
+                    Files.copy(entry.getValue().toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    recordWrite(f);
+                    imported.put(id, id);
+                }
+            }
+            finally {
+                LOGGER.info("writing {} imported assets", entries.size());
+                knownAssets = knownAssets.with(imported);
+                storeIndex();
+            }
+        }
+        finally {
+            lock.unlock();
         }
     }
 
     @Override
-    public synchronized void update(String id, Asset obj) {
+    public void removeAll(Collection<String> ids) throws IOException {
+        lock.lock();
         try {
-            BufferedImage img = BufferedImage.class.cast(obj.getMain());
-            String absName = getKnownAsset(id); // Returns absolute URI
-            String localName = null;
-            if (absName == null)
-                localName = id;
-            else
-                localName = absName.substring(("file://" + fileAssetPath).length());
-            File f = setAssetFile(id, localName);
-            ImageIO.write(img, obj.getFormat(), f);
+            Map<String, String> removed = new HashMap<String, String>();
+            try {
+                for (String id : ids) {
+                    File f = getAssetFile(id);
+                    if (f == null)
+                        continue;
+                    removed.put(id, null);
+                    if (f.exists() && !f.delete())
+                        throw new IOException("Cannot delete " + f);
+                }
+            }
+            finally {
+                LOGGER.info("removing {} assets", removed.size());
+                knownAssets = knownAssets.with(removed);
+                storeIndex();
+            }
+            for (String id : removed.keySet()) {
+                MipmapBuilder.removeLevels(this, id);
+                TileBuilder.removeTiles(this, id);
+            }
         }
-        catch (Exception e) {
-            LOGGER.warn("Create failed for " + id, e);
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resolve reference for writing, keeping the local name of an existing
+     * asset.
+     * @param id asset to resolve
+     * @return file to write to
+     * @throws IOException if the index cannot be written
+     */
+    private File prepareAssetFile(String id) throws IOException {
+        lock.lock();
+        try {
+            return setAssetFile(id, getLocalName(id));
         }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Local name of an asset: that of an existing asset, else the id.
+     * @param id asset id
+     * @return file name in the directory
+     */
+    private String getLocalName(String id) {
+        String absName = getKnownAsset(id); // Returns absolute URI
+        if (absName == null)
+            return id;
+        return absName.substring(("file://" + fileAssetPath).length());
     }
 
     @Override
@@ -118,17 +329,50 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
     @Override
     public boolean remove(String id) {
         if (id == null) return false;
-        File testFile = getAssetFile(id);
+        lock.lock();
         try {
-            if (testFile != null && testFile.exists()) {
-                setAssetFile(id, null);
-                return testFile.delete();
+            File testFile = getAssetFile(id);
+            try {
+                if (testFile != null && testFile.exists()) {
+                    setAssetFile(id, null);
+                    MipmapBuilder.removeLevels(this, id);
+                    TileBuilder.removeTiles(this, id);
+                    return testFile.delete();
+                }
+            }
+            catch (Exception e) {
+                LOGGER.error("Remove failed for " + id, e);
             }
+            return false;
         }
-        catch (Exception e) {
-            LOGGER.error("Remove failed for " + id, e);
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write an asset to a file. If writing fails, the asset is removed, so
+     * that the index does not reference an empty or partial file.
+     * @param id asset id
+     * @param obj asset to write
+     * @param f file to write to
+     * @throws IOException if writing fails
+     */
+    private void writeAssetFile(String id, Asset obj, File f) throws IOException {
+        boolean written = false;
+        OutputStream output = new FileOutputStream(f);
+        try {
+            writeAsset(obj, output);
+            written = true;
+        }
+        finally {
+            output.close();
+            if (!written) {
+                setAssetFile(id, null);
+                if (!f.delete())
+                    LOGGER.warn("Cannot delete {}", f);
+            }
         }
-        return false;
     }
 
     /**
@@ -156,23 +400,51 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
      * @param localName local part of URI referenced
      * @throws IOException if close failed
      */
-    private synchronized File setAssetFile(String id, String localName) throws IOException {
-        OutputStream stream = null;
+    private File setAssetFile(String id, String localName) throws IOException {
+        lock.lock();
         try {
-            setKnownAsset(id, localName);
-            LOGGER.info("writing {} as {}", id, localName);
-            stream = new FileOutputStream(fileAssetPath + "index");
-            knownAssets.store(stream, "Encoded as java properties");
-            if (localName == null)
+            try {
+                setKnownAsset(id, localName);
+                LOGGER.debug("writing {} as {}", id, localName);
+                storeIndex();
+                if (localName == null)
+                    return null;
+                return new File(new URI("file://" + fileAssetPath + localName));
+            }
+            catch (Exception e) {
+                LOGGER.error("Store failed for " + id, e);
                 return null;
-            return new File(new URI("file://" + fileAssetPath + localName));
+            }
         }
-        catch (Exception e) {
-            LOGGER.error("Store failed for " + id, e);
-            return null;
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the index file to a temporary file and rename it, so that
+     * readers never see a partial index.
+     * @throws IOException if the index cannot be written
+     */
+    private void storeIndex() throws IOException {
+        lock.lock();
+        try {
+            File index = new File(fileAssetPath + INDEX);
+            // Hidden, so watching does not index it
+            File temp = new File(fileAssetPath + "." + INDEX + ".tmp");
+            OutputStream stream = new FileOutputStream(temp);
+            try {
+                knownAssets.store(stream, "Encoded as java properties");
+            }
+            finally {
+                stream.close();
+            }
+            Files.move(temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            indexModified = index.lastModified();
+            indexLength = index.length();
         }
         finally {
-            if (stream != null) stream.close();
+            lock.unlock();
         }
     }
 
@@ -183,15 +455,12 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
      * @param localName asset to associate with the id
      */
     private void setKnownAsset(String id, String localName) {
-        if (localName == null)
-            knownAssets.remove(id);
-        else
-            knownAssets.setProperty(id, localName);
+        knownAssets = knownAssets.with(id, localName);
     }
 
     @Override
     protected String getKnownAsset(String id) {
-        String localName = knownAssets.getProperty(id);
+        String localName = knownAssets.get(id);
         if (localName == null) return null;
         return "file://" + fileAssetPath + localName;
     }
@@ -204,8 +473,8 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
     private void loadIndex(String prefix) throws IOException {
         InputStream stream = null;
         try {
-            stream = new FileInputStream(prefix + SEP + "index");
-            knownAssets.load(stream);
+            stream = new FileInputStream(prefix + SEP + INDEX);
+            knownAssets = AssetIndex.load(stream);
         }
         finally {
             if (stream != null)
@@ -213,6 +482,152 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
         }
     }
 
+    /**
+     * Remember a file written here, so that watching does not take it for a
+     * change by others.
+     * @param f file written
+     */
+    private void recordWrite(File f) {
+        if (watcher != null)
+            ownWrites.put(f.getName(), f.lastModified());
+    }
+
+    /**
+     * Apply a batch of changes by others to the index and notify the
+     * listener of modified and removed assets.
+     * @param names changed file names
+     * @param rescan whether the names are all files of the directory, after
+     *   events were lost
+     */
+    private void applyChanges(Set<String> names, boolean rescan) {
+        Set<String> stale = new TreeSet<String>();
+        lock.lock();
+        try {
+            long scan = System.currentTimeMillis();
+            if (names.remove(INDEX) || rescan)
+                reloadIndex(stale);
+            Map<String, List<String>> located = locate(names, rescan);
+            Map<String, String> changes = new HashMap<String, String>();
+            for (String name : names) {
+                File file = new File(fileAssetPath + name);
+                List<String> ids = located.remove(name);
+                if (ids == null) {
+                    if (file.isFile() && !name.startsWith("."))
+                        changes.put(name, name);
+                }
+                else if (!file.exists()) {
+                    for (String id : ids)
+                        changes.put(id, null);
+                    stale.addAll(ids);
+                }
+                else if (isModified(name, file, rescan)) {
+                    stale.addAll(ids);
+                }
+            }
+            if (rescan) {
+                // Indexed files not found
+                for (List<String> ids : located.values()) {
+                    for (String id : ids)
+                        changes.put(id, null);
+                    stale.addAll(ids);
+                }
+            }
+            if (!changes.isEmpty()) {
+                LOGGER.debug("applying {} index changes", changes.size());
+                knownAssets = knownAssets.with(changes);
+                storeIndex();
+            }
+            lastScan = scan;
+        }
+        catch (IOException e) {
+            LOGGER.error("Applying changes failed", e);
+        }
+        finally {
+            lock.unlock();
+        }
+        ChangeListener listener = changeListener;
+        if (listener != null && !stale.isEmpty())
+            listener.changed(this, Collections.unmodifiableSet(stale));
+    }
+
+    /**
+     * Reload an index written by others.
+     * @param stale ids whose location changed or that were removed
+     */
+    private void reloadIndex(Set<String> stale) {
+        File file = new File(fileAssetPath + INDEX);
+        if (file.lastModified() == indexModified && file.length() == indexLength)
+            return;
+        AssetIndex loaded;
+        try {
+            InputStream stream = new FileInputStream(file);
+            try {
+                loaded = AssetIndex.load(stream);
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            LOGGER.error("Reloading index failed", e);
+            return;
+        }
+        AssetIndex index = knownAssets;
+        for (int i = 0; i < index.size(); i++) {
+            String id = index.getId(i);
+            if (!index.getLocation(i).equals(loaded.get(id)))
+                stale.add(id);
+        }
+        knownAssets = loaded;
+        indexModified = file.lastModified();
+        indexLength = file.length();
+    }
+
+    /**
+     * Ids indexed by the given file names. Usually the name of an asset is
+     * its id, so the index needs not be scanned.
+     * @param names file names
+     * @param all whether to return all files indexed
+     * @return lists of ids by file name
+     */
+    private Map<String, List<String>> locate(Set<String> names, boolean all) {
+        AssetIndex index = knownAssets;
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        if (!all) {
+            for (String name : names) {
+                if (!name.equals(index.get(name)))
+                    break;
+                result.put(name, new ArrayList<String>(Collections.singletonList(name)));
+            }
+            if (result.size() == names.size())
+                return result;
+            result.clear();
+        }
+        for (int i = 0; i < index.size(); i++) {
+            String location = index.getLocation(i);
+            if (!all && !names.contains(location))
+                continue;
+            List<String> ids = result.get(location);
+            if (ids == null)
+                result.put(location, ids = new ArrayList<String>(1));
+            ids.add(index.getId(i));
+        }
+        return result;
+    }
+
+    /**
+     * Whether a file was modified by others.
+     * @param name file name
+     * @param file file
+     * @param rescan whether all files are checked, not only changed ones
+     */
+    private boolean isModified(String name, File file, boolean rescan) {
+        Long own = ownWrites.remove(name);
+        if (own != null && own == file.lastModified())
+            return false;
+        return !rescan || file.lastModified() >= lastScan;
+    }
+
     /**
      * Helper to set up cache directory path. Does not include the identifying prefix.
      * @param home prefix that is ensured to exist.
@@ -234,12 +649,15 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
     }
 
     @Override
-    protected AssetImpl loadImage(String id, URI uri, AssetListener listener) {
+    protected Asset loadImage(String id, URI uri, AssetListener listener) {
+        InputStream input = null;
         try {
             URLConnection connection = uri.toURL().openConnection();
             int assetLength = Math.max(0, connection.getContentLength());
-            InputStream input = new InputStreamInterceptor(id, assetLength, connection.getInputStream(), listener, notifyInterval);
-            return new AssetImpl(ImageIO.read(input));
+            input = new InputStreamInterceptor(id, assetLength, connection.getInputStream(), listener, notifyInterval);
+            if (!RequestContext.onAbort(input))
+                return new AssetImpl(null);
+            return readAsset(input);
         }
         catch (MalformedURLException e) {
             return null;
@@ -247,5 +665,16 @@ public class FileAssetSupplier extends AbstractURIAssetSupplier {
         catch (IOException e) {
             return new AssetImpl(null);
         }
+        finally {
+            try {
+                if (input != null) {
+                    RequestContext.remove(input);
+                    input.close();
+                }
+            }
+            catch (IOException e) {
+                LOGGER.error("Closing stream failed", e);
+            }
+        }
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Channel writing a file through a hidden temporary file next to it. Closing
+ * moves the file into place and commits it; a failed write or abandoning
+ * deletes the temporary file, so readers never see a partial file.
+ * @author username
+ */
+class FileWriteChannel implements AbandonableChannel {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(FileWriteChannel.class.getSimpleName());
+
+    /** File to write */
+    private final File file;
+
+    /** Temporary file written */
+    private final File temp;
+
+    /** Channel onto the temporary file */
+    private final FileChannel channel;
+
+    /** Whether a write failed */
+    private boolean failed;
+
+    /**
+     * Constructor.
+     * @param file file to write
+     * @throws IOException if the temporary file cannot be opened
+     */
+    FileWriteChannel(File file) throws IOException {
+        this.file = file;
+        this.temp = new File(file.getParentFile(), "." + file.getName() + ".part");
+        this.channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        try {
+            return channel.write(src);
+        }
+        catch (IOException | RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen())
+            return;
+        boolean committed = false;
+        try {
+            channel.close();
+            if (failed)
+                return;
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            commit();
+            committed = true;
+        }
+        finally {
+            if (!committed && temp.exists() && !temp.delete())
+                LOGGER.warn("Cannot delete {}", temp);
+        }
+    }
+
+    @Override
+    public void abandon() throws IOException {
+        failed = true;
+        close();
+    }
+
+    /**
+     * Make the file known, once it is in place. To be overloaded.
+     * @throws IOException if committing fails
+     */
+    protected void commit() throws IOException {
+    }
+}
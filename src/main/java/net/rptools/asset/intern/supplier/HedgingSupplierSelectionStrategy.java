@@ -0,0 +1,519 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetRequest;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.ProgressiveAssetListener;
+import net.rptools.asset.intern.Metrics;
+import net.rptools.asset.intern.RequestContext;
+
+/**
+ * Decorates another strategy with hedged reads. The asset is read from the
+ * supplier the decorated strategy chooses. If that read has not completed
+ * successfully within a deadline, the asset is requested from the next
+ * supplier having it as well. A read that has already read data gets a
+ * second deadline before being hedged. The first successful result wins,
+ * the other read is cancelled by closing its streams. The deadline is the
+ * configured percentile of the recent read latencies of the supplier, but at
+ * least minDelay millis. Cancelled reads count with the time until they were
+ * cancelled, a lower bound of their latency. The extra reads are limited to
+ * the fraction budget of all reads. Caches are never hedged. Hedging is off
+ * with a budget of 0.
+ * @author username
+ */
+public class HedgingSupplierSelectionStrategy implements SupplierSelectionStrategy {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(HedgingSupplierSelectionStrategy.class.getSimpleName());
+
+    /** Threads running the reads */
+    private final static ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Hedge-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** Minimum number of samples before the percentile is used */
+    private final static int MIN_SAMPLES = 10;
+
+    /** Maximum number of saved up hedges */
+    private final static double MAX_TOKENS = 10;
+
+    /** Decorated strategy */
+    private SupplierSelectionStrategy strategy;
+
+    /** Fraction of reads which may be hedged */
+    private double budget;
+
+    /** Percentile of the read latency used as deadline */
+    private double percentile;
+
+    /** Lower bound of the deadline in millis */
+    private long minDelay;
+
+    /** Deadline in millis while there are too few samples */
+    private long initialDelay;
+
+    /** Number of latencies kept per supplier */
+    private int samples;
+
+    /** Saved up hedges */
+    private double tokens;
+
+    /** Number of reads, for reporting */
+    private final AtomicLong reads = new AtomicLong();
+
+    /** Number of hedged reads, for reporting */
+    private final AtomicLong hedges = new AtomicLong();
+
+    /** Recent latencies by supplier */
+    private final ConcurrentHashMap<AssetSupplier, Latencies> latencies = new ConcurrentHashMap<AssetSupplier, Latencies>();
+
+    /**
+     * Constructor.
+     * @param properties properties to read the parameters from
+     * @param strategy strategy to decorate
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public HedgingSupplierSelectionStrategy(Properties properties, SupplierSelectionStrategy strategy) {
+        this.strategy = strategy;
+        budget = Double.parseDouble(properties.getProperty(HedgingSupplierSelectionStrategy.class.getSimpleName() + ".budget"));
+        percentile = Double.parseDouble(properties.getProperty(HedgingSupplierSelectionStrategy.class.getSimpleName() + ".percentile"));
+        minDelay = Long.parseLong(properties.getProperty(HedgingSupplierSelectionStrategy.class.getSimpleName() + ".minDelay"));
+        initialDelay = Long.parseLong(properties.getProperty(HedgingSupplierSelectionStrategy.class.getSimpleName() + ".initialDelay"));
+        samples = Integer.parseInt(properties.getProperty(HedgingSupplierSelectionStrategy.class.getSimpleName() + ".samples"));
+    }
+
+    /**
+     * Whether hedging is configured.
+     * @param properties properties to check
+     * @return true if the budget is positive
+     */
+    public static boolean isEnabled(Properties properties) {
+        return Double.parseDouble(properties.getProperty(HedgingSupplierSelectionStrategy.class.getSimpleName() + ".budget")) > 0;
+    }
+
+    @Override
+    public Asset getAsset(SupplierRouting routing, String id, AssetListener listener, boolean cache) {
+        AssetSupplier primary = strategy.getSupplier(routing, id, AssetSupplier.class);
+        if (primary == null || SupplierRouting.isCache(primary))
+            return strategy.getAsset(routing, id, listener, cache);
+        reads.incrementAndGet();
+        synchronized (this) {
+            tokens = Math.min(MAX_TOKENS, tokens + budget);
+        }
+
+        Race race = new Race(id, listener);
+        Asset obj = null;
+        try {
+            race.start(primary, SupplierRouting.only(primary));
+            long delay = getDelay(primary);
+            boolean finished = race.await(delay);
+            if (!finished && race.hasProgress())
+                finished = race.await(delay);
+            if (!finished || race.getWinner() == null) {
+                AssetSupplier backup = strategy.getSupplier(routing.getAlternatives(primary), id, AssetSupplier.class);
+                if (backup != null && takeToken()) {
+                    LOGGER.debug("Hedging {} from {} with {}", id, primary, backup);
+                    hedges.incrementAndGet();
+                    race.start(backup, SupplierRouting.only(backup));
+                }
+            }
+            race.await(Long.MAX_VALUE);
+            obj = race.getResult();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            race.cancel();
+        }
+        if (listener != null)
+            listener.notify(id, obj);
+        if (cache)
+            DefaultSupplierSelectionStrategy.updateCaches(id, routing, null, obj);
+        return obj;
+    }
+
+    @Override
+    public <T> T getSupplier(SupplierRouting routing, String id, Class<T> type) {
+        return strategy.getSupplier(routing, id, type);
+    }
+
+    @Override
+    public void create(SupplierRouting routing, Asset obj, AssetListener listener, boolean cache) {
+        strategy.create(routing, obj, listener, cache);
+    }
+
+    /** Getter */
+    public long getReads() {
+        return reads.get();
+    }
+
+    /** Getter */
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * Deadline for reads from a supplier.
+     * @param supplier supplier to read from
+     * @return millis
+     */
+    long getDelay(AssetSupplier supplier) {
+        Latencies recent = latencies.get(supplier);
+        if (recent == null)
+            return initialDelay;
+        long result = recent.getPercentile(percentile);
+        return (result < 0 ? initialDelay : Math.max(minDelay, result));
+    }
+
+    /**
+     * Spend one hedge of the budget.
+     * @return whether there was one left
+     */
+    private synchronized boolean takeToken() {
+        if (tokens < 1)
+            return false;
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Record the latency of a successful or cancelled read.
+     */
+    private void record(AssetSupplier supplier, long millis) {
+        Latencies recent = latencies.get(supplier);
+        if (recent == null) {
+            recent = new Latencies(samples);
+            Latencies previous = latencies.putIfAbsent(supplier, recent);
+            if (previous != null)
+                recent = previous;
+        }
+        recent.add(millis);
+    }
+
+    /**
+     * Handle for one read of a race, with the deadline of the request.
+     * @param request request of the race or null
+     * @return new handle
+     */
+    private static AssetRequest createHandle(AssetRequest request) {
+        long remaining = (request == null ? Long.MAX_VALUE : request.getRemaining());
+        if (remaining == Long.MAX_VALUE)
+            return new AssetRequest();
+        return new AssetRequest(Math.max(1, remaining));
+    }
+
+    /**
+     * Reads of one asset competing with each other. Guarded by a lock rather
+     * than the monitor, so a virtual thread waiting for the race does not pin
+     * its carrier.
+     */
+    private class Race {
+        private final String id;
+        private final AssetListener listener;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition decided = lock.newCondition();
+        private final List<Future<?>> attempts = new ArrayList<Future<?>>();
+        private final List<AssetRequest> handles = new ArrayList<AssetRequest>();
+        private int running;
+        private boolean done;
+        private double progress;
+        private Asset winner;
+        private Asset result;
+
+        private Race(String id, AssetListener listener) {
+            this.id = id;
+            this.listener = listener;
+        }
+
+        /**
+         * Start reading from one supplier. The read gets its own handle, so
+         * its streams can be closed and its bytes counted separately. The
+         * handle is aborted with the request.
+         */
+        private void start(final AssetSupplier supplier, final SupplierRouting only) {
+            final AssetListener attempt = createListener();
+            final AssetRequest request = RequestContext.get();
+            final AssetRequest handle = createHandle(request);
+            final Closeable abort = new Closeable() {
+                @Override
+                public void close() {
+                    handle.cancel();
+                }
+            };
+            if (request != null)
+                request.onAbort(abort);
+            final long start = System.nanoTime();
+            lock.lock();
+            try {
+                running++;
+                handles.add(handle);
+                attempts.add(EXECUTOR.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        Asset obj = null;
+                        RequestContext.Scope scope = RequestContext.enter(handle);
+                        try {
+                            obj = strategy.getAsset(only, id, attempt, false);
+                        }
+                        finally {
+                            scope.exit();
+                            if (request != null) {
+                                request.remove(abort);
+                                request.countRead(handle.getBytesRead());
+                            }
+                            finish(supplier, obj, (System.nanoTime() - start) / 1000000);
+                        }
+                    }
+                }));
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * One read returned.
+         */
+        private void finish(AssetSupplier supplier, Asset obj, long millis) {
+            lock.lock();
+            try {
+                running--;
+                if (done) {
+                    // Cancelled loser: it would have taken at least this long
+                    record(supplier, millis);
+                    return;
+                }
+                if (!Metrics.isFailure(obj)) {
+                    record(supplier, millis);
+                    if (winner == null)
+                        winner = obj;
+                }
+                if (result == null || winner == obj)
+                    result = obj;
+                decided.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wait for a winner or for all reads to fail.
+         * @return whether the race is decided
+         */
+        private boolean await(long millis) throws InterruptedException {
+            long end = System.currentTimeMillis() + Math.min(millis, Long.MAX_VALUE / 2);
+            lock.lock();
+            try {
+                while (winner == null && running > 0) {
+                    long wait = end - System.currentTimeMillis();
+                    if (wait <= 0)
+                        return false;
+                    decided.await(wait, TimeUnit.MILLISECONDS);
+                }
+                return true;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Stop the losers by closing their streams. Their threads are not
+         * interrupted, which would close channels shared with other reads.
+         * Their results are ignored from now on.
+         */
+        private void cancel() {
+            List<AssetRequest> closing;
+            lock.lock();
+            try {
+                done = true;
+                for (Future<?> attempt : attempts)
+                    attempt.cancel(false);
+                closing = new ArrayList<AssetRequest>(handles);
+            }
+            finally {
+                lock.unlock();
+            }
+            for (AssetRequest handle : closing)
+                handle.cancel();
+        }
+
+        /**
+         * Whether any read has read data yet.
+         */
+        private boolean hasProgress() {
+            lock.lock();
+            try {
+                for (AssetRequest handle : handles)
+                    if (handle.getBytesRead() > 0)
+                        return true;
+                return false;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private Asset getWinner() {
+            lock.lock();
+            try {
+                return winner;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private Asset getResult() {
+            lock.lock();
+            try {
+                return result;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Whether progress and images are still forwarded.
+         */
+        private boolean isOpen() {
+            lock.lock();
+            try {
+                return !done && winner == null;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Progress is forwarded as the maximum of all reads. Results are
+         * notified by the race. Without a listener, the supplier needs not
+         * report progress either.
+         */
+        private AssetListener createListener() {
+            if (listener == null)
+                return null;
+            if (listener instanceof ProgressiveAssetListener) {
+                return new ProgressiveAssetListener() {
+                    @Override
+                    public void notify(String id, Asset obj) {
+                        // Notified by the race
+                    }
+                    @Override
+                    public void notifyPartial(String id, double completed) throws TimeoutException {
+                        forward(completed);
+                    }
+                    @Override
+                    public void notifyImage(String id, BufferedImage image) {
+                        if (!isOpen())
+                            return;
+                        ((ProgressiveAssetListener) listener).notifyImage(id, image);
+                    }
+                };
+            }
+            return new AssetListener() {
+                @Override
+                public void notify(String id, Asset obj) {
+                    // Notified by the race
+                }
+                @Override
+                public void notifyPartial(String id, double completed) throws TimeoutException {
+                    forward(completed);
+                }
+            };
+        }
+
+        /**
+         * Forward progress, if it is progress.
+         */
+        private void forward(double completed) throws TimeoutException {
+            lock.lock();
+            try {
+                if (done || winner != null || completed <= progress)
+                    return;
+                progress = completed;
+            }
+            finally {
+                lock.unlock();
+            }
+            listener.notifyPartial(id, completed);
+        }
+    }
+
+    /**
+     * Ring buffer of recent latencies of one supplier.
+     */
+    private static class Latencies {
+        private final long[] millis;
+        private int count;
+
+        private Latencies(int size) {
+            millis = new long[size];
+        }
+
+        private synchronized void add(long value) {
+            millis[count++ % millis.length] = value;
+        }
+
+        /**
+         * @return the percentile or -1 if there are too few samples
+         */
+        private long getPercentile(double percentile) {
+            long[] sorted;
+            synchronized (this) {
+                if (count < MIN_SAMPLES)
+                    return -1;
+                sorted = Arrays.copyOf(millis, Math.min(count, millis.length));
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
@@ -14,32 +14,81 @@
  */
 package net.rptools.asset.intern.supplier;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 
-import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetRequest;
+import net.rptools.asset.ProgressiveAssetListener;
 import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.RequestContext;
 
 /**
  * This class provides access to HTTP URLs.
  * Network (web) access is required for this supplier to work reasonably.
  * We only provide BufferedImages currently.
+ * <p>
+ * If the server publishes index versions (see {@link IndexPublisher}), the
+ * index is kept in HttpAssetSupplier.indexCache and brought up to date by
+ * fetching the deltas since the cached version, at most
+ * HttpAssetSupplier.maxDeltas of them; otherwise the full index is fetched.
+ * If the server cannot be reached, the cached index is used. With
+ * HttpAssetSupplier.refresh (seconds), the index is synchronized
+ * periodically and changed ids are reported to the change listener.
  * @author username
  */
-public class HttpAssetSupplier extends AbstractURIAssetSupplier {
+public class HttpAssetSupplier extends AbstractURIAssetSupplier implements ChangingAssetSupplier, Closeable {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(HttpAssetSupplier.class.getSimpleName());
+
     /** Notify partial interval */
     private long notifyInterval = 500; // millis
 
+    /** Deltas fetched at most before fetching the full index instead */
+    private int maxDeltas;
+
+    /** Cached copy of the index, null if not caching */
+    private File cacheFile;
+
+    /** Version of the index; -1 if the server does not publish versions */
+    private long version = -1;
+
+    /** Serializes synchronizations */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Listener to changes found by refreshing */
+    private volatile ChangeListener changeListener;
+
+    /** Refreshing thread, null if not refreshing */
+    private Thread refresher;
+
     /** resource root directory path */
     private String webAssetPath;
 
     /** Index of ids/files to locate in this supplier, allows override for testing */
-    protected final Properties knownAssets = new Properties();
+    protected volatile AssetIndex knownAssets = AssetIndex.EMPTY;
 
     /**
      * Constructor. Loads properties.
@@ -54,49 +103,300 @@ public class HttpAssetSupplier extends AbstractURIAssetSupplier {
         super(override);
         this.notifyInterval = Long.parseLong(properties.getProperty(HttpAssetSupplier.class.getSimpleName() + ".notifyInterval"));
         this.priority = Integer.parseInt(properties.getProperty(HttpAssetSupplier.class.getSimpleName() + ".priority"));
+        this.maxDeltas = Integer.parseInt(properties.getProperty(HttpAssetSupplier.class.getSimpleName() + ".maxDeltas"));
         // Load index file
         this.webAssetPath = url + (url.endsWith("/") ? "" : "/");
+        String cachePath = properties.getProperty(HttpAssetSupplier.class.getSimpleName() + ".indexCache");
+        if (cachePath != null && !cachePath.trim().isEmpty()) {
+            File cacheDirectory = new File(System.getProperty("user.dir"), cachePath.trim());
+            if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs())
+                throw new IOException("Cannot create " + cacheDirectory.getAbsolutePath());
+            this.cacheFile = new File(cacheDirectory, URLEncoder.encode(webAssetPath, "UTF-8"));
+        }
         loadIndexProperties();
+        final long refresh = Long.parseLong(properties.getProperty(HttpAssetSupplier.class.getSimpleName() + ".refresh")) * 1000;
+        if (refresh > 0) {
+            refresher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    refresh(refresh);
+                }
+            }, "HttpIndexRefresh");
+            refresher.setDaemon(true);
+            refresher.start();
+        }
     }
 
     /**
-     * Allows override for testing.
-     * @param prefix
+     * Allows override for testing. Starts from the cached index, if any, and
+     * synchronizes it.
      * @throws URISyntaxException 
-     * @throws IOException 
+     * @throws IOException if neither the server nor a cached index is there
      */
     protected void loadIndexProperties() throws IOException, URISyntaxException {
-        InputStreamReader reader = null;
+        loadCache();
+        try {
+            synchronizeIndex();
+        }
+        catch (IOException e) {
+            if (version < 0)
+                throw e;
+            LOGGER.warn("Cannot synchronize the index of {}, using version {} cached", webAssetPath, version);
+        }
+    }
+
+    /**
+     * Bring the index up to the version the server publishes, by deltas if
+     * possible. Deltas set or remove ids, so applying one whose changes are
+     * already contained does no harm.
+     * @return number of ids changed
+     * @throws IOException if the server cannot be read
+     */
+    public int synchronizeIndex() throws IOException {
+        Collection<String> changed;
+        lock.lock();
+        try {
+            long latest = readVersion();
+            if (latest >= 0 && latest == version)
+                return 0;
+            AssetIndex previous = knownAssets;
+            AssetIndex index = null;
+            changed = null;
+            if (latest > version && version >= 0 && latest - version <= maxDeltas) {
+                try {
+                    Map<String, String> changes = readDeltas(version, latest);
+                    index = previous.with(changes);
+                    changed = changes.keySet();
+                }
+                catch (FileNotFoundException e) {
+                    LOGGER.info("Deltas since version {} of {} are gone", version, webAssetPath);
+                }
+            }
+            if (index == null) {
+                index = readIndex(IndexPublisher.INDEX);
+                changed = IndexPublisher.diff(previous, index).keySet();
+            }
+            LOGGER.info("Index of {} at version {}, {} ids changed", new Object[] { webAssetPath, latest, changed.size() });
+            knownAssets = index;
+            version = latest;
+            storeCache();
+        }
+        finally {
+            lock.unlock();
+        }
+        ChangeListener listener = changeListener;
+        if (listener != null && !changed.isEmpty())
+            listener.changed(this, changed);
+        return changed.size();
+    }
+
+    /** Getter, -1 if the server does not publish versions */
+    public long getIndexVersion() {
+        lock.lock();
         try {
-            URLConnection connection = new URI(webAssetPath + "index").toURL().openConnection();
+            return version;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    /**
+     * Stop refreshing the index.
+     */
+    @Override
+    public void close() {
+        if (refresher != null)
+            refresher.interrupt();
+    }
+
+    /**
+     * Synchronize periodically until interrupted.
+     * @param interval millis between synchronizations
+     */
+    private void refresh(long interval) {
+        try {
+            while (true) {
+                Thread.sleep(interval);
+                try {
+                    synchronizeIndex();
+                }
+                catch (IOException e) {
+                    LOGGER.warn("Cannot synchronize the index of " + webAssetPath, e);
+                }
+                catch (RuntimeException e) {
+                    LOGGER.error("Synchronizing the index of " + webAssetPath + " failed", e);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Version the server publishes.
+     * @return version or -1 if it does not publish versions
+     */
+    private long readVersion() throws IOException {
+        Reader reader;
+        try {
+            reader = openReader(IndexPublisher.VERSION);
+        }
+        catch (FileNotFoundException e) {
+            return -1;
+        }
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[64];
+            for (int length = reader.read(buffer); length != -1 && text.length() < 64; length = reader.read(buffer))
+                text.append(buffer, 0, length);
+            return Long.parseLong(text.toString().trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Bad index version of " + webAssetPath, e);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Changes from one version to another, removals with null location.
+     * @throws FileNotFoundException if a delta is not published
+     */
+    private Map<String, String> readDeltas(long from, long to) throws IOException {
+        Map<String, String> changes = new HashMap<String, String>();
+        for (long delta = from + 1; delta <= to; delta++) {
+            AssetIndex index = readIndex(IndexPublisher.DELTAS + "/" + delta);
+            for (int i = 0; i < index.size(); i++) {
+                String location = index.getLocation(i);
+                changes.put(index.getId(i), location.isEmpty() ? null : location);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Read an index file of the server.
+     */
+    private AssetIndex readIndex(String name) throws IOException {
+        Reader reader = openReader(name);
+        try {
+            return AssetIndex.load(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Open a file of the server.
+     * @throws FileNotFoundException if the file does not exist
+     */
+    private Reader openReader(String name) throws IOException {
+        try {
+            URLConnection connection = new URI(webAssetPath + name).toURL().openConnection();
             String encoding = connection.getContentEncoding();
             encoding = encoding == null ? "UTF-8" : encoding;
-            reader = new InputStreamReader(connection.getInputStream(), encoding);
-            knownAssets.load(reader);
+            return new InputStreamReader(connection.getInputStream(), encoding);
         }
-        finally {
-            if (reader != null)
-                reader.close();
+        catch (URISyntaxException e) {
+            throw new IOException(webAssetPath + name + " is not an URL", e);
+        }
+    }
+
+    /**
+     * Start from the cached index. The version is written after the index,
+     * so at worst it is older and deltas are applied again.
+     */
+    private void loadCache() {
+        if (cacheFile == null)
+            return;
+        File versionFile = new File(cacheFile.getPath() + ".version");
+        if (!cacheFile.exists() || !versionFile.exists())
+            return;
+        try {
+            long cached = Long.parseLong(new String(Files.readAllBytes(versionFile.toPath()), StandardCharsets.ISO_8859_1).trim());
+            InputStream stream = new FileInputStream(cacheFile);
+            try {
+                knownAssets = AssetIndex.load(stream);
+            }
+            finally {
+                stream.close();
+            }
+            version = cached;
+        }
+        catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Cannot read the cached index " + cacheFile, e);
+        }
+    }
+
+    /**
+     * Update the cached index, if the server publishes versions.
+     */
+    private void storeCache() {
+        if (cacheFile == null || version < 0)
+            return;
+        try {
+            File temp = new File(cacheFile.getPath() + ".tmp");
+            OutputStream stream = new FileOutputStream(temp);
+            try {
+                knownAssets.store(stream, "Version " + version + " of " + webAssetPath);
+            }
+            finally {
+                stream.close();
+            }
+            Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.write(temp.toPath(), (version + "\n").getBytes(StandardCharsets.ISO_8859_1));
+            Files.move(temp.toPath(), new File(cacheFile.getPath() + ".version").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            LOGGER.warn("Cannot write the cached index " + cacheFile, e);
         }
     }
 
     @Override
     public boolean has(String id) {
-        return (knownAssets.getProperty(id) != null);
+        return knownAssets.contains(id);
     }
 
     @Override
     protected String getKnownAsset(String id) {
-        return webAssetPath + knownAssets.getProperty(id);
+        return webAssetPath + knownAssets.get(id);
     }
 
     @Override
-    protected AssetImpl loadImage(String id, URI uri, AssetListener listener) {
+    protected Asset loadImage(String id, URI uri, AssetListener listener) {
+        InputStream input = null;
+        Closeable disconnect = null;
         try {
-            HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+            final HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+            disconnect = new Closeable() {
+                @Override
+                public void close() {
+                    connection.disconnect();
+                }
+            };
+            if (!RequestContext.onAbort(disconnect))
+                return new AssetImpl(null);
+            // A blocked read cannot be disconnected, so deadlines also bound each read
+            AssetRequest request = RequestContext.get();
+            if (request != null && request.getRemaining() != Long.MAX_VALUE) {
+                int timeout = (int) Math.max(1, Math.min(Integer.MAX_VALUE, request.getRemaining()));
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+            }
             long assetLength = Math.max(0, connection.getContentLengthLong());
-            InputStream input = new InputStreamInterceptor(id, assetLength, connection.getInputStream(), listener, notifyInterval);
-            return new AssetImpl(ImageIO.read(input));
+            input = new InputStreamInterceptor(id, assetLength, connection.getInputStream(), listener, notifyInterval);
+            if (listener instanceof ProgressiveAssetListener)
+                return new ProgressiveDecoder(id, (ProgressiveAssetListener) listener, notifyInterval).read(input);
+            return readAsset(input);
         }
         catch (MalformedURLException e) {
             return null;
@@ -104,5 +404,16 @@ public class HttpAssetSupplier extends AbstractURIAssetSupplier {
         catch (IOException e) {
             return new AssetImpl(null);
         }
+        finally {
+            if (disconnect != null)
+                RequestContext.remove(disconnect);
+            try {
+                if (input != null)
+                    input.close();
+            }
+            catch (IOException e) {
+                LOGGER.error("Closing stream failed", e);
+            }
+        }
     }
 }
@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes versions of an index in the static file layout the
+ * HttpAssetSupplier synchronizes with, so any web server can serve it:
+ * <ul>
+ * <li><em>index</em>, the full index of the latest version, as before</li>
+ * <li><em>index.version</em>, the number of the latest version</li>
+ * <li><em>index.delta/n</em>, the changes of version n over n - 1, in index
+ * format; an empty location removes the id</li>
+ * </ul>
+ * Deltas and index are written before the version, so a client never sees a
+ * version without them. Old deltas may be dropped; clients that are behind
+ * further fetch the full index.
+ * @author username
+ */
+public class IndexPublisher {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(IndexPublisher.class.getSimpleName());
+
+    /** Full index */
+    public final static String INDEX = "index";
+
+    /** Latest version */
+    public final static String VERSION = "index.version";
+
+    /** Directory of the deltas */
+    public final static String DELTAS = "index.delta";
+
+    /**
+     * Constructor. Static use only.
+     */
+    private IndexPublisher() {
+    }
+
+    /**
+     * Publish a new version of the index, if it differs from the latest.
+     * @param directory directory served
+     * @param index new index
+     * @param keep number of deltas to keep
+     * @return version of the index
+     * @throws IOException if reading or writing fails
+     */
+    public static long publish(File directory, AssetIndex index, int keep) throws IOException {
+        long version = readVersion(directory);
+        File indexFile = new File(directory, INDEX);
+        AssetIndex latest = indexFile.exists() ? readIndex(indexFile) : AssetIndex.EMPTY;
+        Map<String, String> changes = diff(latest, index);
+        if (changes.isEmpty() && version > 0)
+            return version;
+
+        version++;
+        File deltas = new File(directory, DELTAS);
+        if (!deltas.isDirectory() && !deltas.mkdirs())
+            throw new IOException("Cannot create " + deltas.getAbsolutePath());
+        write(new File(deltas, Long.toString(version)), AssetIndex.of(changes), "Changes of version " + version);
+        write(indexFile, index, "Version " + version);
+        File versionFile = new File(directory, VERSION);
+        File temp = new File(directory, VERSION + ".tmp");
+        Files.write(temp.toPath(), (version + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        Files.move(temp.toPath(), versionFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (File delta : deltas.listFiles()) {
+            try {
+                if (Long.parseLong(delta.getName()) <= version - keep && !delta.delete())
+                    LOGGER.warn("Cannot delete {}", delta);
+            }
+            catch (NumberFormatException e) {
+                // not a delta
+            }
+        }
+        LOGGER.info("Published version {} of {}: {} changes, {} entries", new Object[] { version, directory, changes.size(), index.size() });
+        return version;
+    }
+
+    /**
+     * Command line entry point.
+     * @param args directory served, new index file, optionally the number of
+     *   deltas to keep (default 100)
+     * @throws Exception if anything fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Usage: IndexPublisher <directory> <index> [<keep>]");
+            System.exit(1);
+        }
+        int keep = (args.length == 3 ? Integer.parseInt(args[2]) : 100);
+        System.out.println(publish(new File(args[0]), readIndex(new File(args[1])), keep));
+    }
+
+    /**
+     * Changes from one index to another, removals with empty location.
+     * @param from old index
+     * @param to new index
+     * @return changes by id
+     */
+    static Map<String, String> diff(AssetIndex from, AssetIndex to) {
+        Map<String, String> changes = new HashMap<String, String>();
+        for (int i = 0; i < to.size(); i++) {
+            String id = to.getId(i);
+            String location = to.getLocation(i);
+            if (!location.equals(from.get(id)))
+                changes.put(id, location);
+        }
+        for (int i = 0; i < from.size(); i++) {
+            String id = from.getId(i);
+            if (!to.contains(id))
+                changes.put(id, "");
+        }
+        return changes;
+    }
+
+    /**
+     * Latest version published, 0 if none.
+     */
+    private static long readVersion(File directory) throws IOException {
+        File versionFile = new File(directory, VERSION);
+        if (!versionFile.exists())
+            return 0;
+        return Long.parseLong(new String(Files.readAllBytes(versionFile.toPath()), StandardCharsets.ISO_8859_1).trim());
+    }
+
+    private static AssetIndex readIndex(File file) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        try {
+            return AssetIndex.load(stream);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Write an index file, replacing it at once.
+     */
+    private static void write(File file, AssetIndex index, String comments) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream stream = new FileOutputStream(temp);
+        try {
+            index.store(stream, comments);
+        }
+        finally {
+            stream.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
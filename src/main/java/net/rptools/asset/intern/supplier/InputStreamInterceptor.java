@@ -21,6 +21,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetRequest;
+import net.rptools.asset.intern.RequestContext;
+import net.rptools.asset.intern.Threads;
 
 /**
  * Interceptor for input stream to inform users of progress/partial completion for the download.
@@ -42,6 +45,9 @@ public class InputStreamInterceptor extends InputStream {
     /** Notify partial interval */
     private long notifyInterval; // millis
 
+    /** Request counting the bytes read, or null */
+    private final AssetRequest request;
+
     /**
      * Constructor.
      * @param id used to notify listener
@@ -54,10 +60,10 @@ public class InputStreamInterceptor extends InputStream {
         this.inputStream = inputStream;
         this.done = false;
         this.notifyInterval = interval;
+        this.request = RequestContext.get();
 
-        Thread notifier = new PartialNotifierThread(id, assetLength, listener);
         if (listener != null)
-            notifier.start();
+            Threads.start("PartialNotifier", new PartialNotifier(id, assetLength, listener));
     }
 
     @Override
@@ -68,20 +74,37 @@ public class InputStreamInterceptor extends InputStream {
         // stop threads;
         if (result == -1) done = true;
         if (done) return -1;
+        if (request != null) request.countRead(1);
+        return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        // Bulk variant, so that readers need not go through read() per byte
+        if (done) return -1;
+        int result = inputStream.read(buffer, offset, length);
+        if (result == -1) {
+            done = true;
+            return -1;
+        }
+        remainder -= result;
+        if (request != null) request.countRead(result);
         return result;
     }
 
     @Override
     public void close() throws IOException {
+        // Also stops notifying if reading failed before the end
+        done = true;
         if (inputStream != null)
             inputStream.close();
     }
     
     /**
-     * Notifier thread.
+     * Notifier, run in its own (possibly virtual) thread.
      * @author username
      */
-    private final class PartialNotifierThread extends Thread {
+    private final class PartialNotifier implements Runnable {
         /** Asset id */
         private final String id;
         /** Asset length */
@@ -89,7 +112,7 @@ public class InputStreamInterceptor extends InputStream {
         /** listener to inform */
         private final AssetListener listener;
         /** Standard constructor */
-        private PartialNotifierThread(String id, long assetLength, AssetListener listener) {
+        private PartialNotifier(String id, long assetLength, AssetListener listener) {
             this.id = id;
             this.assetLength = assetLength;
             this.listener = listener;
@@ -99,8 +122,8 @@ public class InputStreamInterceptor extends InputStream {
         public void run() {
             while (!done) {
                 try {
-                    LOGGER.info("notifyInterval: {}", notifyInterval);
-                    sleep(notifyInterval);
+                    LOGGER.debug("notifyInterval: {}", notifyInterval);
+                    Thread.sleep(notifyInterval);
                     double ratio = 0;
                     // remainder counts down from assetLength, which might be 0.
                     // In some valid cases, remainder may get negative
@@ -110,7 +133,7 @@ public class InputStreamInterceptor extends InputStream {
                     else {
                         ratio = remainder/(double)(remainder - 1); // white (?) lie
                     }
-                    LOGGER.info("Notifying {} & {}; ratio={}", remainder, assetLength, ratio);
+                    LOGGER.debug("Notifying {} & {}; ratio={}", remainder, assetLength, ratio);
                     listener.notifyPartial(id, ratio);
                 }
                 catch (Exception e) {
@@ -17,9 +17,13 @@ package net.rptools.asset.intern.supplier;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
+import net.rptools.asset.ReadOptions;
 
 /**
  * Memory asset cache. It is discouraged to use the create method of caches.
@@ -33,6 +37,15 @@ public class MemCacheAssetSupplier extends AbstractAssetSupplier {
     /** precautionary alive set */
     private Set<Asset> alive = Collections.synchronizedSet(new HashSet<Asset>());
 
+    /** hit counters, used to determine the hot set */
+    private ConcurrentMap<String, AtomicInteger> hits = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /** maximum number of hit counters; beyond, all counters are halved */
+    private int maxHits;
+
+    /** strongly held assets (warm start), released on first hit */
+    private Map<String, Asset> pinned = new ConcurrentHashMap<String, Asset>();
+
     /**
      * Constructor. Priorities specific to this class.
      * @param override properties to take precendence over default ones
@@ -41,6 +54,7 @@ public class MemCacheAssetSupplier extends AbstractAssetSupplier {
     public MemCacheAssetSupplier(Properties override) throws IOException {
         super(override);
         this.priority = Integer.parseInt(properties.getProperty(MemCacheAssetSupplier.class.getSimpleName() + ".priority"));
+        this.maxHits = Integer.parseInt(properties.getProperty(MemCacheAssetSupplier.class.getSimpleName() + ".maxHits"));
     }
 
     @Override
@@ -75,11 +89,26 @@ public class MemCacheAssetSupplier extends AbstractAssetSupplier {
         Asset obj = null;
         if (ref != null)
             obj = ref.get();
+        if (obj != null) {
+            pinned.remove(id);
+            countHit(id);
+        }
         if (listener != null)
             listener.notify(id, obj);
         return obj;
     }
 
+    /**
+     * Get an asset without counting a hit or releasing a pin, e.g. to
+     * save it.
+     * @param id asset id
+     * @return asset or null
+     */
+    public Asset peek(String id) {
+        WeakReference<Asset> ref = map.get(id);
+        return (ref != null ? ref.get() : null);
+    }
+
     @Override
     public boolean canCreate(Class<?> clazz) {
         return true;
@@ -105,11 +134,107 @@ public class MemCacheAssetSupplier extends AbstractAssetSupplier {
 
     @Override
     public boolean remove(String id) {
+        hits.remove(id);
+        pinned.remove(id);
         return (map.remove(id) != null);
     }
     
+    /**
+     * Remove all variants of an asset, e.g. reduced images.
+     * @param id asset id the variants belong to
+     */
+    public void removeVariants(String id) {
+        String prefix = id + ReadOptions.VARIANT_SEPARATOR;
+        synchronized (map) {
+            for (Iterator<String> iter = map.keySet().iterator(); iter.hasNext(); ) {
+                String key = iter.next();
+                if (key.startsWith(prefix)) {
+                    iter.remove();
+                    hits.remove(key);
+                    pinned.remove(key);
+                }
+            }
+        }
+    }
+
     /** Clear cache; valid only for this supplier */
     public void clear() {
         map.clear();
+        hits.clear();
+        pinned.clear();
+    }
+
+    /**
+     * Put an asset into the cache and hold it strongly until it is retrieved
+     * for the first time. Used to warm the cache before anybody references
+     * the asset.
+     * @param id asset id
+     * @param obj asset to hold
+     */
+    public void pin(String id, Asset obj) {
+        if (obj == null) return;
+        pinned.put(id, obj);
+        update(id, obj);
+    }
+
+    /**
+     * Get the ids with the most hits, the hottest first. Ids whose assets
+     * have already been collected are included, because they are still
+     * likely to be requested again.
+     * @param count maximum number of ids to return
+     * @return list of ids, at most count long
+     */
+    public List<String> getHottest(int count) {
+        List<Map.Entry<String, AtomicInteger>> entries = new ArrayList<Map.Entry<String, AtomicInteger>>(hits.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, AtomicInteger>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicInteger> high, Map.Entry<String, AtomicInteger> low) {
+                return Integer.compare(low.getValue().get(), high.getValue().get());
+            }
+        });
+        List<String> result = new ArrayList<String>();
+        for (Map.Entry<String, AtomicInteger> entry : entries) {
+            if (result.size() >= count)
+                break;
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Count a hit for the given id. Variants are not counted, since they
+     * cannot be prefetched from the sources.
+     * @param id asset id
+     */
+    private void countHit(String id) {
+        if (id.contains(ReadOptions.VARIANT_SEPARATOR))
+            return;
+        AtomicInteger counter = hits.get(id);
+        if (counter == null) {
+            AtomicInteger fresh = new AtomicInteger();
+            counter = hits.putIfAbsent(id, fresh);
+            if (counter == null)
+                counter = fresh;
+        }
+        counter.incrementAndGet();
+        if (hits.size() > maxHits)
+            decay();
+    }
+
+    /**
+     * Halve all hit counters, dropping those reaching 0, until there are at
+     * most maxHits. Old hits thus count less than recent ones. Hits counted
+     * meanwhile may get lost, which is fine for finding the hot set.
+     */
+    private synchronized void decay() {
+        while (hits.size() > maxHits) {
+            for (Iterator<AtomicInteger> iter = hits.values().iterator(); iter.hasNext(); ) {
+                AtomicInteger counter = iter.next();
+                int halved = counter.get() / 2;
+                counter.set(halved);
+                if (halved == 0)
+                    iter.remove();
+            }
+        }
     }
 }
@@ -0,0 +1,201 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.ReadOptions;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.ImageDecoder;
+
+/**
+ * Builds mip pyramids for large images in the background. Level n is the
+ * image reduced by 2^n in both directions and is stored in the same
+ * supplier under its own (variant) id. Levels are built until they would
+ * get smaller than the minimal level size.
+ * Pyramids are opt-in: they cost a write per level in the supplier they
+ * are stored in, so they are only built if a minimal size is configured.
+ * @author username
+ */
+public class MipmapBuilder {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(MipmapBuilder.class.getSimpleName());
+
+    /** Single low priority thread for all suppliers, shared with the {@link TileBuilder} */
+    final static ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MipmapBuilder");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /** Images smaller than this (in both directions) get no pyramid; 0 disables pyramids */
+    private int minSize;
+
+    /** No level is smaller than this in both directions */
+    private int levelSize;
+
+    /**
+     * Constructor.
+     * @param properties properties to read the settings from
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public MipmapBuilder(Properties properties) {
+        this.minSize = Integer.parseInt(properties.getProperty(MipmapBuilder.class.getSimpleName() + ".minSize"));
+        this.levelSize = Integer.parseInt(properties.getProperty(MipmapBuilder.class.getSimpleName() + ".levelSize"));
+    }
+
+    /**
+     * Id of a pyramid level.
+     * @param id asset id
+     * @param level level, 0 is the asset itself
+     * @return level id
+     */
+    public static String getLevelId(String id, int level) {
+        return (level == 0 ? id : id + ReadOptions.VARIANT_SEPARATOR + "mip" + level);
+    }
+
+    /**
+     * Level needed for a scale, i.e. the highest level that is still at
+     * least as large as the scaled image.
+     * @param scale scale factor, 1 is the original size
+     * @return level, at least 0
+     */
+    public static int getLevel(double scale) {
+        if (scale >= 1 || scale <= 0)
+            return 0;
+        return (int) Math.floor(Math.log(1 / scale) / Math.log(2) + 1e-9);
+    }
+
+    /**
+     * Build the pyramid in the background, if the asset is a large image
+     * that has no pyramid yet in the supplier. Levels and other variants are
+     * ignored.
+     * @param supplier supplier to store the levels in
+     * @param id asset id
+     * @param obj asset
+     */
+    public void schedule(final AssetSupplier supplier, final String id, final Asset obj) {
+        if (minSize <= 0 || id == null || obj == null || id.contains(ReadOptions.VARIANT_SEPARATOR)
+                || !BufferedImage.class.equals(obj.getType()))
+            return;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                build(supplier, id, obj);
+            }
+        });
+    }
+
+    /**
+     * Remove all levels of an asset.
+     * @param supplier supplier holding the levels
+     * @param id asset id
+     */
+    public static void removeLevels(AssetSupplier supplier, String id) {
+        if (id.contains(ReadOptions.VARIANT_SEPARATOR))
+            return;
+        for (int level = 1; supplier.has(getLevelId(id, level)); level++)
+            supplier.remove(getLevelId(id, level));
+    }
+
+    /**
+     * Build and store the levels.
+     * @param supplier supplier to store the levels in
+     * @param id asset id
+     * @param obj asset
+     */
+    private void build(AssetSupplier supplier, String id, Asset obj) {
+        try {
+            if (supplier.has(getLevelId(id, 1)))
+                return;
+            BufferedImage img = getImage(obj);
+            if (img == null)
+                return;
+            int level = 0;
+            while (Math.max(img.getWidth(), img.getHeight()) / 2 >= levelSize) {
+                img = halve(img);
+                level++;
+                Asset levelAsset = new AssetImpl(img);
+                levelAsset.setFormat(obj.getFormat());
+                supplier.update(getLevelId(id, level), levelAsset);
+            }
+            LOGGER.info("Built {} pyramid levels for {}", level, id);
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.error("Cannot build pyramid for " + id, e);
+        }
+    }
+
+    /**
+     * Get the pixels of a large image. Encoded assets are decoded separately
+     * and only if the header shows a large image, so the asset itself stays
+     * encoded.
+     * @param obj asset
+     * @return image or null, if the image is too small
+     * @throws IOException if decoding fails
+     */
+    private BufferedImage getImage(Asset obj) throws IOException {
+        if (obj instanceof EncodedAssetImpl && !((EncodedAssetImpl) obj).isDecoded()) {
+            byte[] bytes = ((EncodedAssetImpl) obj).getBytes();
+            Dimension size = ImageDecoder.getSize(bytes);
+            if (size == null || Math.max(size.width, size.height) < minSize)
+                return null;
+            return ImageDecoder.decode(bytes);
+        }
+        BufferedImage img = (BufferedImage) obj.getMain();
+        if (img == null || Math.max(img.getWidth(), img.getHeight()) < minSize)
+            return null;
+        return img;
+    }
+
+    /**
+     * Reduce an image to half its size (rounded up).
+     * @param img image to reduce
+     * @return new image
+     */
+    private static BufferedImage halve(BufferedImage img) {
+        int width = (img.getWidth() + 1) / 2;
+        int height = (img.getHeight() + 1) / 2;
+        int type = (img.getType() != BufferedImage.TYPE_CUSTOM ? img.getType() : BufferedImage.TYPE_INT_ARGB);
+        BufferedImage result = new BufferedImage(width, height, type);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(img, 0, 0, width, height, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.RequestContext;
+import net.rptools.asset.intern.jfr.SupplierIOEvent;
+
+/**
+ * Read only union of many zip packs, each with an index like the one of
+ * {@link ZipFileAssetSupplier}. The indexes are merged into one, so a lookup
+ * costs the same for one pack or a hundred. Packs later in the list override
+ * earlier ones. Packs are opened when read from; at most
+ * MultiZipAssetSupplier.openArchives stay open, the least recently used are
+ * closed once no read uses them. Closing the supplier closes all archives;
+ * reads after that close theirs when done.
+ * @author username
+ */
+public class MultiZipAssetSupplier extends AbstractURIAssetSupplier implements Closeable {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(MultiZipAssetSupplier.class.getSimpleName());
+
+    /** Notify partial interval */
+    private long notifyInterval = 500; // millis
+
+    /** Zip file paths, in override order */
+    private final List<Path> packs = new ArrayList<Path>();
+
+    /** Merged index of ids to pack number and entry */
+    private final AssetIndex knownAssets;
+
+    /** Most archives kept open when unused */
+    private final int openArchives;
+
+    /** Open archives by pack number, least recently used first */
+    private final LinkedHashMap<Integer, Archive> open = new LinkedHashMap<Integer, Archive>(16, 0.75f, true);
+
+    /** Guards the open archives */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Whether closed, keeping no archive open when unused */
+    private boolean closed;
+
+    /**
+     * Constructor. Reads and merges the indexes of the packs.
+     * @param override properties to take precendence over default ones
+     * @param prefixes zip files, each actually an infix after
+     *   <em>user.dir</em>; later ones override earlier ones
+     * @throws IOException can't load properties or an index
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public MultiZipAssetSupplier(Properties override, List<String> prefixes) throws IOException {
+        super(override);
+        this.notifyInterval = Long.parseLong(properties.getProperty(MultiZipAssetSupplier.class.getSimpleName() + ".notifyInterval"));
+        this.priority = Integer.parseInt(properties.getProperty(MultiZipAssetSupplier.class.getSimpleName() + ".priority"));
+        this.openArchives = Integer.parseInt(properties.getProperty(MultiZipAssetSupplier.class.getSimpleName() + ".openArchives"));
+        Map<String, String> merged = new HashMap<String, String>();
+        for (String prefix : prefixes) {
+            Path path = Paths.get(System.getProperty("user.dir") + ("/" + prefix).replaceAll("/", SEP));
+            AssetIndex index = loadIndex(path);
+            for (int i = 0; i < index.size(); i++)
+                merged.put(index.getId(i), packs.size() + "/" + index.getLocation(i));
+            packs.add(path);
+        }
+        knownAssets = AssetIndex.of(merged);
+        LOGGER.info("{} assets in {} packs", knownAssets.size(), packs.size());
+    }
+
+    /**
+     * Close the open archives, those in use once their reads end.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            closeUnused();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean has(String id) {
+        return knownAssets.contains(id);
+    }
+
+    /**
+     * Location of an asset: the pack number, a slash and the entry name.
+     */
+    @Override
+    protected String getKnownAsset(String id) {
+        return knownAssets.get(id);
+    }
+
+    @Override
+    protected Asset loadImage(String id, URI uri, AssetListener listener) {
+        InputStream input = null;
+        Archive archive = null;
+        try {
+            String location = uri.getPath();
+            int slash = location.indexOf('/');
+            archive = acquire(Integer.parseInt(location.substring(0, slash)));
+            Path entry = archive.zipFile.getPath(location.substring(slash + 1));
+            input = new InputStreamInterceptor(id, Files.size(entry), Files.newInputStream(entry), listener, notifyInterval);
+            if (!RequestContext.onAbort(input))
+                return new AssetImpl(null);
+            return readAsset(input);
+        }
+        catch (IOException e) {
+            return new AssetImpl(null);
+        }
+        finally {
+            try {
+                if (input != null) {
+                    RequestContext.remove(input);
+                    input.close();
+                }
+            }
+            catch (IOException e) {
+                LOGGER.error("Closing stream failed", e);
+            }
+            if (archive != null)
+                release(archive);
+        }
+    }
+
+    @Override
+    public ReadableByteChannel openRead(String id) throws IOException {
+        String location = (id != null ? getKnownAsset(id) : null);
+        if (location == null)
+            return null;
+        int slash = location.indexOf('/');
+        final Archive archive = acquire(Integer.parseInt(location.substring(0, slash)));
+        try {
+            final ReadableByteChannel channel = Files.newByteChannel(archive.zipFile.getPath(location.substring(slash + 1)));
+            return new ReadableByteChannel() {
+                private boolean released;
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    return channel.read(dst);
+                }
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+                @Override
+                public void close() throws IOException {
+                    try {
+                        channel.close();
+                    }
+                    finally {
+                        if (!released)
+                            release(archive);
+                        released = true;
+                    }
+                }
+            };
+        }
+        catch (IOException e) {
+            release(archive);
+            throw e;
+        }
+    }
+
+    /** Getter, number of packs */
+    public int getPackCount() {
+        return packs.size();
+    }
+
+    /** Getter, number of archives open now */
+    public int getOpenArchives() {
+        lock.lock();
+        try {
+            return open.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the index of a pack.
+     * @param path zip file
+     * @return its index
+     * @throws IOException if the index cannot be read
+     */
+    private static AssetIndex loadIndex(Path path) throws IOException {
+        FileSystem zipFile = FileSystems.newFileSystem(path, (ClassLoader) null);
+        try {
+            InputStream stream = Files.newInputStream(zipFile.getPath("index"));
+            try {
+                return AssetIndex.load(stream);
+            }
+            finally {
+                stream.close();
+            }
+        }
+        finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Use an archive, opening it if needed. Opening is done outside the lock,
+     * so that reads from open archives need not wait for it.
+     * @param pack pack number
+     * @return archive to release after use
+     * @throws IOException if the archive cannot be opened
+     */
+    private Archive acquire(int pack) throws IOException {
+        lock.lock();
+        try {
+            Archive archive = open.get(pack);
+            if (archive != null) {
+                archive.users++;
+                return archive;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        FileSystem zipFile = openZipFile(packs.get(pack));
+        lock.lock();
+        try {
+            Archive archive = open.get(pack);
+            if (archive != null) {
+                // Opened concurrently
+                zipFile.close();
+            }
+            else {
+                archive = new Archive(zipFile);
+                open.put(pack, archive);
+            }
+            archive.users++;
+            closeUnused();
+            return archive;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * End using an archive.
+     * @param archive archive acquired
+     */
+    private void release(Archive archive) {
+        lock.lock();
+        try {
+            archive.users--;
+            closeUnused();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the least recently used archives beyond the bound, as far as they
+     * are not used. Once closed, the bound is 0.
+     */
+    private void closeUnused() {
+        int bound = (closed ? 0 : openArchives);
+        Iterator<Archive> archives = open.values().iterator();
+        while (open.size() > bound && archives.hasNext()) {
+            Archive archive = archives.next();
+            if (archive.users > 0)
+                continue;
+            archives.remove();
+            try {
+                archive.zipFile.close();
+            }
+            catch (IOException e) {
+                LOGGER.error("Closing archive failed", e);
+            }
+        }
+    }
+
+    /**
+     * Open a zip file.
+     */
+    private FileSystem openZipFile(Path path) throws IOException {
+        SupplierIOEvent event = new SupplierIOEvent();
+        event.begin();
+        FileSystem zipFile = FileSystems.newFileSystem(path, (ClassLoader) null);
+        event.end();
+        if (event.shouldCommit()) {
+            event.setOperation(SupplierIOEvent.REOPEN);
+            event.setSupplier(getClass().getSimpleName() + "-" + getPriority());
+            event.setBytes(Files.size(path));
+            event.setOutcome(SupplierIOEvent.HIT);
+            event.commit();
+        }
+        return zipFile;
+    }
+
+    /**
+     * An open pack and the number of reads using it.
+     */
+    private static class Archive {
+        private final FileSystem zipFile;
+        private int users;
+
+        private Archive(FileSystem zipFile) {
+            this.zipFile = zipFile;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.ReadOptions;
+import net.rptools.asset.intern.AssetImpl;
+
+/**
+ * Off-heap cache for decoded images. The pixels are held in direct buffers,
+ * so they do not burden the garbage collector, and are copied into a fresh
+ * BufferedImage on each hit. The cache has its own budget in megabytes and
+ * evicts the least recently used images. Only images are cached; encoded
+ * assets are decoded when they are put into the cache. It is discouraged
+ * to use the create method of caches.
+ * @author username
+ */
+public class OffHeapCacheAssetSupplier extends AbstractAssetSupplier {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(OffHeapCacheAssetSupplier.class.getSimpleName());
+
+    /** Rows copied at once between heap and direct buffer */
+    private final static int CHUNK_ROWS = 64;
+
+    /** Image types whose rasters are copied as they are */
+    private final static int[] RAW_TYPES = {
+        BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE,
+        BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+        BufferedImage.TYPE_4BYTE_ABGR_PRE, BufferedImage.TYPE_BYTE_GRAY
+    };
+
+    /** Least recently used first */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** Budget in bytes */
+    private long budget;
+
+    /** Bytes used */
+    private long used;
+
+    /**
+     * Constructor. Priorities specific to this class.
+     * @param override properties to take precendence over default ones
+     * @throws IOException can't load properties
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public OffHeapCacheAssetSupplier(Properties override) throws IOException {
+        super(override);
+        this.priority = Integer.parseInt(properties.getProperty(OffHeapCacheAssetSupplier.class.getSimpleName() + ".priority"));
+        this.budget = Long.parseLong(properties.getProperty(OffHeapCacheAssetSupplier.class.getSimpleName() + ".megabytes")) << 20;
+    }
+
+    /**
+     * Whether this cache is configured at all.
+     * @param properties properties to read the budget from
+     * @return true if the budget is positive
+     */
+    public static boolean isEnabled(Properties properties) {
+        return Long.parseLong(properties.getProperty(OffHeapCacheAssetSupplier.class.getSimpleName() + ".megabytes")) > 0;
+    }
+
+    @Override
+    public synchronized boolean has(String id) {
+        return entries.containsKey(id);
+    }
+
+    @Override
+    public Asset get(String id, AssetListener listener) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(id);
+        }
+        Asset obj = null;
+        if (entry != null) {
+            obj = new AssetImpl(entry.toImage());
+            obj.setFormat(entry.format);
+        }
+        if (listener != null)
+            listener.notify(id, obj);
+        return obj;
+    }
+
+    @Override
+    public boolean canCreate(Class<?> clazz) {
+        return BufferedImage.class.equals(clazz);
+    }
+
+    @Override
+    public String create(Asset obj) {
+        String id = UUID.randomUUID().toString();
+        update(id, obj);
+        return id;
+    }
+
+    @Override
+    public void update(String id, Asset obj) {
+        if (obj == null || !BufferedImage.class.equals(obj.getType()))
+            return;
+        BufferedImage img = (BufferedImage) obj.getMain();
+        if (img == null)
+            return;
+        Entry entry = new Entry(img, obj.getFormat());
+        if (entry.pixels.capacity() > budget) {
+            LOGGER.debug("Not caching {}, too large", id);
+            return;
+        }
+        synchronized (this) {
+            Entry old = entries.put(id, entry);
+            if (old != null)
+                used -= old.pixels.capacity();
+            used += entry.pixels.capacity();
+            for (Iterator<Entry> iter = entries.values().iterator(); used > budget && iter.hasNext(); ) {
+                used -= iter.next().pixels.capacity();
+                iter.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean canRemove(String id) {
+        return entries.containsKey(id);
+    }
+
+    @Override
+    public synchronized boolean remove(String id) {
+        Entry old = entries.remove(id);
+        if (old == null)
+            return false;
+        used -= old.pixels.capacity();
+        return true;
+    }
+
+    /**
+     * Remove all variants of an asset, e.g. mipmap levels and tiles.
+     * @param id asset id the variants belong to
+     */
+    public synchronized void removeVariants(String id) {
+        String prefix = id + ReadOptions.VARIANT_SEPARATOR;
+        for (Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<String, Entry> entry = iter.next();
+            if (entry.getKey().startsWith(prefix)) {
+                used -= entry.getValue().pixels.capacity();
+                iter.remove();
+            }
+        }
+    }
+
+    /** Clear cache; valid only for this supplier */
+    public synchronized void clear() {
+        entries.clear();
+        used = 0;
+    }
+
+    /** Getter, bytes used */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * Decoded image held off-heap. Images of other than the raw types are
+     * converted to ARGB.
+     */
+    private static class Entry {
+        /** Pixels, as the raster's data elements */
+        private final ByteBuffer pixels;
+
+        /** Width */
+        private final int width;
+
+        /** Height */
+        private final int height;
+
+        /** BufferedImage type */
+        private final int type;
+
+        /** Format to store */
+        private final String format;
+
+        /**
+         * Constructor. Copies the pixels.
+         * @param img image to copy
+         * @param format format of the asset
+         */
+        Entry(BufferedImage img, String format) {
+            if (!isRaw(img)) {
+                BufferedImage argb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+                Graphics2D graphics = argb.createGraphics();
+                try {
+                    graphics.drawImage(img, 0, 0, null);
+                }
+                finally {
+                    graphics.dispose();
+                }
+                img = argb;
+            }
+            this.width = img.getWidth();
+            this.height = img.getHeight();
+            this.type = img.getType();
+            this.format = format;
+            Raster raster = img.getRaster();
+            int elements = raster.getNumDataElements();
+            boolean ints = (raster.getTransferType() == DataBuffer.TYPE_INT);
+            pixels = ByteBuffer.allocateDirect(width * height * elements * (ints ? 4 : 1)).order(ByteOrder.nativeOrder());
+            Object chunk = null;
+            for (int y = 0; y < height; y += CHUNK_ROWS) {
+                int rows = Math.min(CHUNK_ROWS, height - y);
+                int length = width * rows * elements;
+                chunk = raster.getDataElements(0, y, width, rows, (rows == CHUNK_ROWS ? chunk : null));
+                if (ints) {
+                    pixels.asIntBuffer().put((int[]) chunk, 0, length);
+                    pixels.position(pixels.position() + length * 4);
+                }
+                else {
+                    pixels.put((byte[]) chunk, 0, length);
+                }
+            }
+        }
+
+        /**
+         * Copy the pixels into a new image.
+         * @return new image
+         */
+        BufferedImage toImage() {
+            BufferedImage img = new BufferedImage(width, height, type);
+            WritableRaster raster = img.getRaster();
+            int elements = raster.getNumDataElements();
+            boolean ints = (raster.getTransferType() == DataBuffer.TYPE_INT);
+            ByteBuffer source = pixels.duplicate().order(ByteOrder.nativeOrder());
+            source.rewind();
+            Object chunk = null;
+            for (int y = 0; y < height; y += CHUNK_ROWS) {
+                int rows = Math.min(CHUNK_ROWS, height - y);
+                int length = width * rows * elements;
+                if (ints) {
+                    int[] data = (chunk != null && rows == CHUNK_ROWS ? (int[]) chunk : new int[length]);
+                    source.asIntBuffer().get(data, 0, length);
+                    source.position(source.position() + length * 4);
+                    chunk = data;
+                }
+                else {
+                    byte[] data = (chunk != null && rows == CHUNK_ROWS ? (byte[]) chunk : new byte[length]);
+                    source.get(data, 0, length);
+                    chunk = data;
+                }
+                raster.setDataElements(0, y, width, rows, chunk);
+            }
+            return img;
+        }
+
+        /**
+         * Whether the raster of an image can be copied as it is.
+         * @param img image to test
+         * @return true for the raw types
+         */
+        private static boolean isRaw(BufferedImage img) {
+            for (int type : RAW_TYPES)
+                if (img.getType() == type)
+                    return true;
+            return false;
+        }
+    }
+}
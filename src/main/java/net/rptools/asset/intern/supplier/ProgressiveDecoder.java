@@ -0,0 +1,168 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.ProgressiveAssetListener;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.ImageDecoder;
+
+/**
+ * Decoder for images that are still being loaded. The image is decoded
+ * while the bytes arrive, and snapshots of the image decoded so far are
+ * passed to a progressive listener, at most once per notify interval. The
+ * bytes are kept as well, so the result is an encoded asset that is already
+ * decoded.
+ * @author username
+ */
+public class ProgressiveDecoder implements IIOReadUpdateListener {
+    /** Asset id to notify */
+    private final String id;
+
+    /** Listener to inform */
+    private final ProgressiveAssetListener listener;
+
+    /** Minimal time between snapshots */
+    private final long notifyInterval; // millis
+
+    /** Time of the last snapshot */
+    private long lastNotify;
+
+    /**
+     * Constructor.
+     * @param id asset id to notify
+     * @param listener listener to pass snapshots to
+     * @param notifyInterval minimal time between snapshots
+     */
+    public ProgressiveDecoder(String id, ProgressiveAssetListener listener, long notifyInterval) {
+        this.id = id;
+        this.listener = listener;
+        this.notifyInterval = notifyInterval;
+    }
+
+    /**
+     * Read and decode an image completely. The stream is not closed.
+     * @param input stream to read
+     * @return decoded encoded asset or, if the format is unknown, an asset
+     *   without main object
+     * @throws IOException if reading or decoding fails
+     */
+    public Asset read(InputStream input) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream tee = new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value != -1)
+                    bytes.write(value);
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                if (count > 0)
+                    bytes.write(buffer, offset, count);
+                return count;
+            }
+        };
+        ImageInputStream stream = new MemoryCacheImageInputStream(tee);
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext())
+                return new AssetImpl(null);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                reader.addIIOReadUpdateListener(this);
+                BufferedImage img = reader.read(0);
+                // Keep trailing bytes the reader did not need
+                byte[] buffer = new byte[8192];
+                while (tee.read(buffer) != -1)
+                    ;
+                return new EncodedAssetImpl(bytes.toByteArray(), reader.getFormatName().toLowerCase(),
+                    ImageDecoder.toPixelType(img));
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass,
+            int minX, int minY, int periodX, int periodY, int[] bands) {
+        // Nothing decoded yet
+    }
+
+    @Override
+    public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY, int width, int height,
+            int periodX, int periodY, int[] bands) {
+        offer(theImage);
+    }
+
+    @Override
+    public void passComplete(ImageReader source, BufferedImage theImage) {
+        offer(theImage);
+    }
+
+    @Override
+    public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass,
+            int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+        // Thumbnails are not passed on
+    }
+
+    @Override
+    public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY, int width,
+            int height, int periodX, int periodY, int[] bands) {
+        // Thumbnails are not passed on
+    }
+
+    @Override
+    public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+        // Thumbnails are not passed on
+    }
+
+    /**
+     * Pass a copy of the image to the listener, if the notify interval has
+     * passed.
+     * @param img image being decoded
+     */
+    private void offer(BufferedImage img) {
+        long now = System.currentTimeMillis();
+        if (now - lastNotify < notifyInterval)
+            return;
+        lastNotify = now;
+        BufferedImage copy = new BufferedImage(img.getColorModel(), img.copyData(null), img.isAlphaPremultiplied(), null);
+        listener.notifyImage(id, copy);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.rptools.asset.AssetSupplier;
+
+/**
+ * Immutable snapshot of the registered suppliers, precomputed for the
+ * strategies. Registering and deregistering create a new snapshot, so
+ * lookups need no locks. The read order holds the caches MemCache, OffHeapCache,
+ * ByteCache, DiskCache followed by the sources File, ZipFile, MultiZip, Http, each
+ * class in order of priority. Suppliers of other classes are not read by
+ * the default strategy, but they are sources.
+ * @author username
+ */
+public final class SupplierRouting {
+    /** Sorted class names of caches */
+    private final static Class<?>[] CACHES = {
+        MemCacheAssetSupplier.class, OffHeapCacheAssetSupplier.class, ByteCacheAssetSupplier.class,
+        DiskCacheAssetSupplier.class
+    };
+
+    /** Sorted class names of sources */
+    private final static Class<?>[] SOURCES = {
+        FileAssetSupplier.class, ZipFileAssetSupplier.class, MultiZipAssetSupplier.class, HttpAssetSupplier.class
+    };
+
+    /** Highest priority first */
+    private final static Comparator<AssetSupplier> PRIORITY = new Comparator<AssetSupplier>() {
+        @Override
+        public int compare(AssetSupplier high, AssetSupplier low) {
+            return low.getPriority() - high.getPriority();
+        }
+    };
+
+    /** Empty routing */
+    public final static SupplierRouting EMPTY = new SupplierRouting(Collections.<AssetSupplier>emptyList());
+
+    /** All suppliers by priority */
+    private final List<AssetSupplier> suppliers;
+
+    /** Caches and known sources in read order */
+    private final List<AssetSupplier> readOrder;
+
+    /** Caches in read order, updated when reading and writing */
+    private final List<AssetSupplier> caches;
+
+    /** All suppliers but caches by priority */
+    private final List<AssetSupplier> sources;
+
+    /** File suppliers by priority */
+    private final List<AssetSupplier> writeTargets;
+
+    /**
+     * Constructor.
+     * @param suppliers suppliers to route to; copied
+     */
+    public SupplierRouting(Collection<? extends AssetSupplier> suppliers) {
+        List<AssetSupplier> sorted = new ArrayList<AssetSupplier>(suppliers);
+        Collections.sort(sorted, PRIORITY);
+        this.suppliers = Collections.unmodifiableList(sorted);
+        this.caches = select(sorted, CACHES);
+        this.writeTargets = select(sorted, new Class<?>[] { FileAssetSupplier.class });
+        List<AssetSupplier> order = new ArrayList<AssetSupplier>(caches);
+        order.addAll(select(sorted, SOURCES));
+        this.readOrder = Collections.unmodifiableList(order);
+        List<AssetSupplier> others = new ArrayList<AssetSupplier>();
+        for (AssetSupplier supplier : sorted)
+            if (!isCache(supplier))
+                others.add(supplier);
+        this.sources = Collections.unmodifiableList(others);
+    }
+
+    /**
+     * New routing including a supplier.
+     * @param supplier supplier to add
+     * @return new routing; this one, if the supplier is known already
+     */
+    public SupplierRouting add(AssetSupplier supplier) {
+        if (suppliers.contains(supplier))
+            return this;
+        List<AssetSupplier> result = new ArrayList<AssetSupplier>(suppliers);
+        result.add(supplier);
+        return new SupplierRouting(result);
+    }
+
+    /**
+     * New routing excluding a supplier.
+     * @param supplier supplier to remove
+     * @return new routing; this one, if the supplier is not known
+     */
+    public SupplierRouting remove(AssetSupplier supplier) {
+        if (!suppliers.contains(supplier))
+            return this;
+        List<AssetSupplier> result = new ArrayList<AssetSupplier>(suppliers);
+        result.remove(supplier);
+        return new SupplierRouting(result);
+    }
+
+    /**
+     * Routing to a single supplier.
+     * @param supplier supplier to route to
+     * @return new routing
+     */
+    public static SupplierRouting only(AssetSupplier supplier) {
+        return new SupplierRouting(Collections.singletonList(supplier));
+    }
+
+    /**
+     * Routing to the sources other than the given one.
+     * @param supplier supplier to exclude
+     * @return new routing
+     */
+    public SupplierRouting getAlternatives(AssetSupplier supplier) {
+        List<AssetSupplier> result = new ArrayList<AssetSupplier>(sources);
+        result.remove(supplier);
+        return new SupplierRouting(result);
+    }
+
+    /** Getter */
+    public List<AssetSupplier> getSuppliers() {
+        return suppliers;
+    }
+
+    /** Getter */
+    public List<AssetSupplier> getReadOrder() {
+        return readOrder;
+    }
+
+    /** Getter */
+    public List<AssetSupplier> getCaches() {
+        return caches;
+    }
+
+    /** Getter */
+    public List<AssetSupplier> getSources() {
+        return sources;
+    }
+
+    /** Getter */
+    public List<AssetSupplier> getWriteTargets() {
+        return writeTargets;
+    }
+
+    /**
+     * Whether a supplier is one of the caches.
+     * @param supplier supplier to check
+     * @return true for caches
+     */
+    public static boolean isCache(AssetSupplier supplier) {
+        for (Class<?> clazz : CACHES)
+            if (clazz.isInstance(supplier))
+                return true;
+        return false;
+    }
+
+    /**
+     * Suppliers of the given classes, class by class.
+     */
+    private static List<AssetSupplier> select(List<AssetSupplier> sorted, Class<?>[] order) {
+        List<AssetSupplier> result = new ArrayList<AssetSupplier>();
+        for (Class<?> clazz : order)
+            for (AssetSupplier supplier : sorted)
+                if (clazz.isInstance(supplier))
+                    result.add(supplier);
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+
+/**
+ * Decides which of the registered suppliers serves a request. Implementations
+ * are selected with the AssetManagerImpl.strategy property, either by one of
+ * the short names "default" and "adaptive" or by a class name. Classes are
+ * instantiated through a constructor taking the total properties, if there is
+ * one, or the default constructor. Implementations must be thread safe;
+ * the routing is immutable and may be read without locks.
+ * @author username
+ */
+public interface SupplierSelectionStrategy {
+    /**
+     * Get an asset according to this strategy.
+     * @param routing current snapshot of the suppliers to choose from
+     * @param id id to look for
+     * @param listener listener to inform about progress
+     * @param cache whether to cache the obtained asset
+     * @return the asset sought for
+     */
+    Asset getAsset(SupplierRouting routing, String id, AssetListener listener, boolean cache);
+
+    /**
+     * Get the supplier to read an asset from according to this strategy.
+     * @param routing current snapshot of the suppliers to choose from
+     * @param id id to look for
+     * @param type only suppliers of this type are considered
+     * @return the supplier that has the asset or null
+     */
+    <T> T getSupplier(SupplierRouting routing, String id, Class<T> type);
+
+    /**
+     * Create an asset according to this strategy.
+     * @param routing current snapshot of the suppliers to choose from
+     * @param obj asset to store/create
+     * @param listener listener to inform about progress
+     * @param cache whether to cache the obtained asset
+     */
+    void create(SupplierRouting routing, Asset obj, AssetListener listener, boolean cache);
+}
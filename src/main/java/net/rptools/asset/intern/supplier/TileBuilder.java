@@ -0,0 +1,270 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.asset.intern.supplier;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.ReadOptions;
+import net.rptools.asset.StreamingAssetSupplier;
+import net.rptools.asset.TileManifest;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.ImageDecoder;
+
+/**
+ * Splits very large images into tiles in the background. The tiles are
+ * stored in the same supplier under their tile ids, followed by the
+ * {@link TileManifest}, so an existing manifest means all tiles are there.
+ * Encoded images are read one row of tiles at a time through one reader
+ * and stream, so the complete image is never held in memory. Suppliers
+ * taking many assets at once get all tiles in one batch, so their index is
+ * committed once and not per tile.
+ * @author username
+ */
+public class TileBuilder {
+    /** Logging */
+    private final static Logger LOGGER = LoggerFactory.getLogger(TileBuilder.class.getSimpleName());
+
+    /** Images smaller than this (in both directions) are not tiled; 0 disables tiling */
+    private int minSize;
+
+    /** Width and height of the tiles */
+    private int tileSize;
+
+    /**
+     * Constructor.
+     * @param properties properties to read the settings from
+     * @throws NumberFormatException if certain properties aren't numbers
+     */
+    public TileBuilder(Properties properties) {
+        this.minSize = Integer.parseInt(properties.getProperty(TileBuilder.class.getSimpleName() + ".minSize"));
+        this.tileSize = Integer.parseInt(properties.getProperty(TileBuilder.class.getSimpleName() + ".tileSize"));
+    }
+
+    /**
+     * Split the asset in the background, if it is a very large image that is
+     * not tiled yet in the supplier. Variants are ignored.
+     * @param supplier supplier to store the tiles in
+     * @param id asset id
+     * @param obj asset
+     */
+    public void schedule(final StreamingAssetSupplier supplier, final String id, final Asset obj) {
+        if (minSize <= 0 || id == null || obj == null || id.contains(ReadOptions.VARIANT_SEPARATOR)
+                || !BufferedImage.class.equals(obj.getType()))
+            return;
+        MipmapBuilder.EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                build(supplier, id, obj);
+            }
+        });
+    }
+
+    /**
+     * Read the manifest of a tiled asset.
+     * @param supplier supplier holding the tiles
+     * @param id asset id
+     * @return manifest or null, if the asset is not tiled in the supplier
+     * @throws IOException if the manifest cannot be read
+     */
+    public static TileManifest readManifest(StreamingAssetSupplier supplier, String id) throws IOException {
+        ReadableByteChannel channel = supplier.openRead(TileManifest.getManifestId(id));
+        if (channel == null)
+            return null;
+        InputStream input = Channels.newInputStream(channel);
+        try {
+            return TileManifest.read(input);
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Remove all tiles and the manifest of an asset.
+     * @param supplier supplier holding the tiles
+     * @param id asset id
+     */
+    public static void removeTiles(StreamingAssetSupplier supplier, String id) {
+        if (id.contains(ReadOptions.VARIANT_SEPARATOR))
+            return;
+        try {
+            TileManifest manifest = readManifest(supplier, id);
+            if (manifest == null)
+                return;
+            List<String> ids = new ArrayList<String>();
+            ids.add(TileManifest.getManifestId(id));
+            for (int row = 0; row < manifest.getRows(); row++)
+                for (int column = 0; column < manifest.getColumns(); column++)
+                    ids.add(TileManifest.getTileId(id, column, row));
+            if (supplier instanceof BulkAssetSupplier)
+                ((BulkAssetSupplier) supplier).removeAll(ids);
+            else
+                for (String tileId : ids)
+                    supplier.remove(tileId);
+        }
+        catch (IOException e) {
+            LOGGER.error("Cannot remove tiles of " + id, e);
+        }
+    }
+
+    /**
+     * Split and store the tiles and the manifest.
+     * @param supplier supplier to store the tiles in
+     * @param id asset id
+     * @param obj asset
+     */
+    private void build(StreamingAssetSupplier supplier, String id, Asset obj) {
+        try {
+            if (supplier.has(TileManifest.getManifestId(id)))
+                return;
+            ImageDecoder.Strips strips = null;
+            BufferedImage img = null;
+            Dimension size;
+            if (obj instanceof EncodedAssetImpl && !((EncodedAssetImpl) obj).isDecoded()) {
+                strips = ImageDecoder.openStrips(((EncodedAssetImpl) obj).getBytes());
+                size = (strips != null ? new Dimension(strips.getWidth(), strips.getHeight()) : null);
+            }
+            else {
+                img = (BufferedImage) obj.getMain();
+                size = (img != null ? new Dimension(img.getWidth(), img.getHeight()) : null);
+            }
+            TileManifest manifest;
+            try {
+                if (size == null || Math.max(size.width, size.height) < minSize)
+                    return;
+                manifest = new TileManifest(size.width, size.height, tileSize);
+                String format = (obj.getFormat() != null ? obj.getFormat() : "png");
+                if (supplier instanceof BulkAssetSupplier)
+                    storeAll((BulkAssetSupplier) supplier, id, strips, img, format, manifest);
+                else
+                    for (int row = 0; row < manifest.getRows(); row++) {
+                        BufferedImage strip = getStrip(strips, img, manifest, row);
+                        for (int column = 0; column < manifest.getColumns(); column++)
+                            supplier.update(TileManifest.getTileId(id, column, row), getTile(strip, format, manifest, column, row));
+                    }
+            }
+            finally {
+                if (strips != null)
+                    strips.close();
+            }
+            OutputStream output = Channels.newOutputStream(supplier.openWrite(TileManifest.getManifestId(id)));
+            try {
+                manifest.write(output);
+            }
+            finally {
+                output.close();
+            }
+            LOGGER.info("Split {} into {}x{} tiles", id, manifest.getColumns(), manifest.getRows());
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.error("Cannot tile " + id, e);
+        }
+    }
+
+    /**
+     * Encode all tiles into a temporary directory and hand them to the
+     * supplier in one batch.
+     * @param supplier supplier to store the tiles in
+     * @param id asset id
+     * @param strips encoded image to read strip by strip, or null
+     * @param img decoded image, if there are no strips
+     * @param format format to encode the tiles in
+     * @param manifest tile layout
+     * @throws IOException if decoding, encoding or storing fails
+     */
+    private void storeAll(BulkAssetSupplier supplier, String id, ImageDecoder.Strips strips, BufferedImage img,
+            String format, TileManifest manifest) throws IOException {
+        File dir = Files.createTempDirectory(TileBuilder.class.getSimpleName()).toFile();
+        Map<String, File> entries = new HashMap<String, File>();
+        try {
+            for (int row = 0; row < manifest.getRows(); row++) {
+                BufferedImage strip = getStrip(strips, img, manifest, row);
+                for (int column = 0; column < manifest.getColumns(); column++) {
+                    File file = new File(dir, column + "_" + row);
+                    entries.put(TileManifest.getTileId(id, column, row), file);
+                    OutputStream output = new FileOutputStream(file);
+                    try {
+                        AbstractAssetSupplier.writeAsset(getTile(strip, format, manifest, column, row), output);
+                    }
+                    finally {
+                        output.close();
+                    }
+                }
+            }
+            supplier.importAll(entries);
+        }
+        finally {
+            for (File file : entries.values())
+                if (file.exists() && !file.delete())
+                    LOGGER.warn("Cannot delete {}", file);
+            if (!dir.delete())
+                LOGGER.warn("Cannot delete {}", dir);
+        }
+    }
+
+    /**
+     * Get one row of tiles as a strip of the full width.
+     * @param strips encoded image to read strip by strip, or null
+     * @param img decoded image, if there are no strips
+     * @param manifest tile layout
+     * @param row tile row
+     * @return strip
+     * @throws IOException if decoding fails
+     */
+    private static BufferedImage getStrip(ImageDecoder.Strips strips, BufferedImage img, TileManifest manifest, int row)
+            throws IOException {
+        Rectangle bounds = manifest.getTileBounds(0, row);
+        bounds.width = manifest.getWidth();
+        if (strips != null)
+            return strips.read(bounds);
+        return img.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    /**
+     * Cut a tile from its strip.
+     * @param strip row of tiles
+     * @param format format to encode the tile in
+     * @param manifest tile layout
+     * @param column tile column
+     * @param row tile row
+     * @return tile asset
+     */
+    private static Asset getTile(BufferedImage strip, String format, TileManifest manifest, int column, int row) {
+        Rectangle bounds = manifest.getTileBounds(column, row);
+        Asset tile = new AssetImpl(strip.getSubimage(bounds.x, 0, bounds.width, bounds.height));
+        tile.setFormat(format);
+        return tile;
+    }
+}
@@ -15,15 +15,29 @@
 package net.rptools.asset.intern.supplier;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,12 +45,14 @@ import org.slf4j.LoggerFactory;
 import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
 import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.RequestContext;
+import net.rptools.asset.intern.jfr.SupplierIOEvent;
 
 /**
  * Using NIO to get assets from ZIP files.
  * @author username
  */
-public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
+public class ZipFileAssetSupplier extends AbstractURIAssetSupplier implements BulkAssetSupplier {
     /** Logging */
     private final static Logger LOGGER = LoggerFactory.getLogger(ZipFileAssetSupplier.class.getSimpleName());
 
@@ -46,12 +62,40 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
     /** Zipfile path */
     private String zipFilePath;
 
-    /** Index of ids/files to locate in this supplier */
-    private final Properties knownAssets = new Properties();
+    /** Index of ids/files to locate in this supplier, replaced on writes */
+    private volatile AssetIndex knownAssets = AssetIndex.EMPTY;
+
+    /** Guards writes; a lock rather than a monitor, so virtual threads
+     * blocked in I/O do not pin their carrier */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when the last read of the current zip file ends */
+    private final Condition drained = lock.newCondition();
 
     /** Notify partial interval */
     private long notifyInterval = 500; // millis
 
+    /** Compactions tried while writes go on, before holding writes off */
+    private final static int COMPACT_ATTEMPTS = 3;
+
+    /** Reloads of the zip file so far; a compaction is void if it changed */
+    private long generation;
+
+    /** Reads open on the current zip file */
+    private int readers;
+
+    /** Zip files replaced by a compaction, with their reads still open */
+    private final Map<FileSystem, Integer> retired = new HashMap<FileSystem, Integer>();
+
+    /** Reads by id since construction, for compaction by frequency */
+    private final ConcurrentMap<String, AtomicLong> accesses = new ConcurrentHashMap<String, AtomicLong>();
+
+    /** Builds pyramids for large images */
+    private MipmapBuilder mipmaps;
+
+    /** Splits very large images into tiles */
+    private TileBuilder tiles;
+
     /**
      * Constructor. Loads properties and sets up the index (file) at the
      * <em>prefix</em> location.
@@ -64,6 +108,8 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
         super(override);
         this.notifyInterval = Long.parseLong(properties.getProperty(ZipFileAssetSupplier.class.getSimpleName() + ".notifyInterval"));
         this.priority = Integer.parseInt(properties.getProperty(ZipFileAssetSupplier.class.getSimpleName() + ".priority"));
+        this.mipmaps = new MipmapBuilder(properties);
+        this.tiles = new TileBuilder(properties);
         zipFilePath = System.getProperty("user.dir") + ("/" + prefix).replaceAll("/", SEP);
         reloadZipFile();
         loadIndex();
@@ -72,7 +118,7 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
     @Override
     public boolean has(String id) {
         if (id == null) return false;
-        return (knownAssets.getProperty(id) != null);
+        return knownAssets.contains(id);
     }
 
     /**
@@ -82,7 +128,7 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
      * @return prepared image
      * @throws IOException in case any any problems occur
      */
-    protected AssetImpl loadImage(String id, URI uri, AssetListener listener) {
+    protected Asset loadImage(String id, URI uri, AssetListener listener) {
         InputStream input = null;
         try {
             input = getStreamFromZipEntry(id, uri, listener);
@@ -92,13 +138,16 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
             return null;
         }
         try {
-            return new AssetImpl(ImageIO.read(input));
+            if (!RequestContext.onAbort(input))
+                return new AssetImpl(null);
+            return readAsset(input);
         }
         catch (IOException e) {
             return new AssetImpl(null);
         }
         finally {
             try {
+                RequestContext.remove(input);
                 input.close(); // closes stream as well
             }
             catch (Exception e) { // includes NPE
@@ -113,14 +162,21 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
      * @param listener listsner to be notified as load progresses.
      * @return stream containing the asset
      */
-    private synchronized InputStream getStreamFromZipEntry(String id, URI uri, AssetListener listener) throws IOException {
-        InputStream input;
-        // This is a zip-local-URI;
-        Path entry = zipFile.getPath(uri.getPath());
-        InputStream stream = Files.newInputStream(entry);
-        long assetLength = Files.size(entry);
-        input = new InputStreamInterceptor(id, assetLength, stream, listener, notifyInterval);
-        return input;
+    private InputStream getStreamFromZipEntry(String id, URI uri, AssetListener listener) throws IOException {
+        lock.lock();
+        try {
+            InputStream input;
+            // This is a zip-local-URI;
+            Path entry = zipFile.getPath(uri.getPath());
+            long assetLength = Files.size(entry);
+            InputStream stream = new ReadStream(Files.newInputStream(entry));
+            input = new InputStreamInterceptor(id, assetLength, stream, listener, notifyInterval);
+            countAccess(id);
+            return input;
+        }
+        finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -131,107 +187,352 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
      * @throws SecurityException if the path cannot be created
      */
     private void reloadZipFile() throws IOException {
+        SupplierIOEvent event = new SupplierIOEvent();
+        event.begin();
+        // Writes waited for the reads, so no read fails here
         if (zipFile != null) zipFile.close();
         Path path = Paths.get(zipFilePath);
-        zipFile = FileSystems.newFileSystem(path, null);
+        zipFile = FileSystems.newFileSystem(path, (ClassLoader) null);
+        readers = 0;
+        generation++;
+        event.end();
+        if (event.shouldCommit()) {
+            event.setOperation(SupplierIOEvent.REOPEN);
+            event.setSupplier(getClass().getSimpleName() + "-" + getPriority());
+            event.setBytes(Files.size(path));
+            event.setOutcome(SupplierIOEvent.HIT);
+            event.commit();
+        }
     }
 
     /**
      * Load index in memory. To be overloaded.
      * @throws IOException can't load index (file)
      */
-    private synchronized void loadIndex() throws IOException {
-        InputStream stream = null;
+    private void loadIndex() throws IOException {
+        lock.lock();
         try {
-            Path index = zipFile.getPath("index");
-            stream = Files.newInputStream(index);
-            knownAssets.load(stream);
+            InputStream stream = null;
+            try {
+                Path index = zipFile.getPath("index");
+                stream = Files.newInputStream(index);
+                knownAssets = AssetIndex.load(stream);
+            }
+            finally {
+                if (stream != null)
+                    stream.close();
+            }
         }
         finally {
-            if (stream != null)
-                stream.close();
+            lock.unlock();
         }
     }
 
     @Override
-    public synchronized String create(Asset obj) {
-        OutputStream stream = null;
+    public String create(Asset obj) {
+        lock.lock();
         try {
-            BufferedImage img = BufferedImage.class.cast(obj.getMain());
+            try {
+                beginWrite();
+            }
+            catch (IOException e) {
+                LOGGER.warn("Create failed", e);
+                return null;
+            }
+            OutputStream stream = null;
             String id = UUID.randomUUID().toString();
             // Set up name
             String name = id;
-            setAssetFile(id, name);
-            Path entry = zipFile.getPath(name);
-            stream = Files.newOutputStream(entry);
-            ImageIO.write(img, obj.getFormat(), stream);
-            return id;
-        }
-        catch (Exception e) {
-            LOGGER.warn("Create failed", e);
-            return null;
+            try {
+                setAssetFile(id, name);
+                Path entry = zipFile.getPath(name);
+                stream = Files.newOutputStream(entry);
+                writeAsset(obj, stream);
+                mipmaps.schedule(this, id, obj);
+                tiles.schedule(this, id, obj);
+                return id;
+            }
+            catch (Exception e) {
+                LOGGER.warn("Create failed", e);
+                discardEntry(id, name, stream);
+                stream = null;
+                return null;
+            }
+            finally {
+                try {
+                    if (stream != null)
+                        stream.close();
+                    reloadZipFile();
+                }
+                catch (IOException e) {
+                    LOGGER.error("Closing stream failed", e);
+                }
+            }
         }
         finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void update(String id, Asset obj) {
+        lock.lock();
+        try {
             try {
-                if (stream != null)
-                    stream.close();
-                reloadZipFile();
+                beginWrite();
             }
             catch (IOException e) {
-                LOGGER.error("Closing stream failed", e);
+                LOGGER.warn("Update failed", e);
+                return;
+            }
+            OutputStream stream = null;
+            String name = getKnownAsset(id);
+            try {
+                if (name != null) {
+                    Files.delete(zipFile.getPath(name)); // prepare for update
+                }
+                else {
+                    name = id;
+                }
+                setAssetFile(id, name);
+                Path entry = zipFile.getPath(name);
+                stream = Files.newOutputStream(entry);
+                writeAsset(obj, stream);
+                mipmaps.schedule(this, id, obj);
+                tiles.schedule(this, id, obj);
+            }
+            catch (Exception e) {
+                LOGGER.warn("Create failed", e);
+                discardEntry(id, name, stream);
+                stream = null;
+            }
+            finally {
+                try {
+                    if (stream != null)
+                        stream.close();
+                    reloadZipFile();
+                }
+                catch (IOException e) {
+                    LOGGER.error("Closing stream failed", e);
+                }
             }
         }
+        finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public synchronized void update(String id, Asset obj) {
-        OutputStream stream = null;
+    public ReadableByteChannel openRead(String id) throws IOException {
+        lock.lock();
         try {
-            BufferedImage img = BufferedImage.class.cast(obj.getMain());
-            String name = getKnownAsset(id);
-            if (name != null) {
-                Files.delete(zipFile.getPath(name)); // prepare for update
+            String name = (id != null ? getKnownAsset(id) : null);
+            if (name == null)
+                return null;
+            ReadableByteChannel channel = new ReadChannel(Files.newByteChannel(zipFile.getPath(name)));
+            countAccess(id);
+            return channel;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The bytes are collected in memory and written into the zip file when
+     * the channel is closed, because the zip file is reloaded after each
+     * write.
+     */
+    @Override
+    public WritableByteChannel openWrite(String id) throws IOException {
+        return new EntryWriteChannel(id);
+    }
+
+    /**
+     * Write an encoded entry. Mirrors update.
+     * @param id asset id
+     * @param bytes encoded asset
+     * @throws IOException if writing fails
+     */
+    private void writeEntry(String id, byte[] bytes) throws IOException {
+        lock.lock();
+        try {
+            beginWrite();
+            try {
+                String name = getKnownAsset(id);
+                if (name != null) {
+                    Files.deleteIfExists(zipFile.getPath(name)); // prepare for update
+                }
+                else {
+                    name = id;
+                }
+                setAssetFile(id, name);
+                Files.write(zipFile.getPath(name), bytes);
             }
-            else {
-                name = id;
+            finally {
+                reloadZipFile();
             }
-            setAssetFile(id, name);
-            Path entry = zipFile.getPath(name);
-            stream = Files.newOutputStream(entry);
-            ImageIO.write(img, obj.getFormat(), stream);
-        }
-        catch (Exception e) {
-            LOGGER.warn("Create failed", e);
         }
         finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String id) {
+        lock.lock();
+        try {
+            if (id == null) return false;
             try {
-                if (stream != null)
-                    stream.close();
+                beginWrite();
+                String name = getKnownAsset(id);
+                if (name == null)
+                    return false;
+                setAssetFile(id, null);
+                accesses.remove(id);
+                Path entry = zipFile.getPath(name);
+                Files.delete(entry);
                 reloadZipFile();
+                MipmapBuilder.removeLevels(this, id);
+                TileBuilder.removeTiles(this, id);
+                return true;
             }
-            catch (IOException e) {
-                LOGGER.error("Closing stream failed", e);
+            catch (Exception e) {
+                LOGGER.error("Cannot remove " + id, e);
             }
+            return false;
+        }
+        finally {
+            lock.unlock();
         }
     }
 
     @Override
-    public synchronized boolean remove(String id) {
-        if (id == null) return false;
+    public void importAll(Map<String, File> entries) throws IOException {
+        lock.lock();
         try {
-            String name = getKnownAsset(id);
-            if (name == null)
-                return false;
-            setAssetFile(id, null);
-            Path entry = zipFile.getPath(name);
-            Files.delete(entry);
-            reloadZipFile();
-            return true;
+            beginWrite();
+            Map<String, String> imported = new HashMap<String, String>();
+            try {
+                for (Map.Entry<String, File> entry : entries.entrySet()) {
+                    String id = entry.getKey();
+                    String name = getKnownAsset(id);
+                    if (name == null)
+                        name = id;
+                    Files.copy(entry.getValue().toPath(), zipFile.getPath(name), StandardCopyOption.REPLACE_EXISTING);
+                    imported.put(id, name);
+                }
+            }
+            finally {
+                LOGGER.info("writing {} imported assets", entries.size());
+                knownAssets = knownAssets.with(imported);
+                storeIndex();
+                reloadZipFile();
+            }
         }
-        catch (Exception e) {
-            LOGGER.error("Cannot remove " + id, e);
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) throws IOException {
+        lock.lock();
+        try {
+            beginWrite();
+            Map<String, String> removed = new HashMap<String, String>();
+            try {
+                for (String id : ids) {
+                    String name = getKnownAsset(id);
+                    if (name == null)
+                        continue;
+                    removed.put(id, null);
+                    accesses.remove(id);
+                    Files.deleteIfExists(zipFile.getPath(name));
+                }
+            }
+            finally {
+                LOGGER.info("removing {} assets", removed.size());
+                knownAssets = knownAssets.with(removed);
+                storeIndex();
+                reloadZipFile();
+            }
+            for (String id : removed.keySet()) {
+                MipmapBuilder.removeLevels(this, id);
+                TileBuilder.removeTiles(this, id);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rewrite the zip file without orphans and in the given order, then
+     * switch to it. Reads started before continue on the old file, which is
+     * closed when the last of them is. Writes meanwhile void the rewrite; it
+     * is repeated, and the last attempt holds writes off. Switching relies on
+     * replacing an open file, which not all platforms allow.
+     * @param order order of the assets
+     * @return statistics of the compaction
+     * @throws IOException if rewriting or switching fails; the supplier
+     *   continues with the old file then
+     */
+    public ZipCompactor.Result compact(ZipCompactor.Order order) throws IOException {
+        Path path = Paths.get(zipFilePath);
+        Path target = Paths.get(zipFilePath + ".compact");
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : accesses.entrySet())
+            counts.put(entry.getKey(), entry.getValue().get());
+        try {
+            for (int attempt = 1; attempt < COMPACT_ATTEMPTS; attempt++) {
+                long seen;
+                AssetIndex index;
+                lock.lock();
+                try {
+                    seen = generation;
+                    index = knownAssets;
+                }
+                finally {
+                    lock.unlock();
+                }
+                ZipCompactor.Result result = ZipCompactor.compact(path, target, index, order, counts);
+                lock.lock();
+                try {
+                    if (generation == seen) {
+                        switchTo(path, target);
+                        return result;
+                    }
+                }
+                finally {
+                    lock.unlock();
+                }
+                LOGGER.debug("Written during compaction of {}, compacting again", zipFilePath);
+            }
+            lock.lock();
+            try {
+                ZipCompactor.Result result = ZipCompactor.compact(path, target, knownAssets, order, counts);
+                switchTo(path, target);
+                return result;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    /** Getter, zip files replaced by a compaction but still read */
+    public int getRetired() {
+        lock.lock();
+        try {
+            return retired.size();
+        }
+        finally {
+            lock.unlock();
         }
-        return false;
     }
 
     @Override
@@ -245,7 +546,7 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
      * @return asset name associate to id
      */
     protected String getKnownAsset(String id) {
-        return knownAssets.getProperty(id);
+        return knownAssets.get(id);
     }
 
     /**
@@ -256,20 +557,243 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
      * @throws IOException if stream can't be closed
      */
     private void setAssetFile(String id, String name) throws IOException {
-        OutputStream stream = null;
         try {
             setKnownAsset(id, name);
-            LOGGER.info("writing {} as {}", id, name);
-            Path entry = zipFile.getPath("index");
-            Files.delete(entry);
-            stream = Files.newOutputStream(entry);
-            knownAssets.store(stream, "Encoded as java properties");
+            LOGGER.debug("writing {} as {}", id, name);
+            storeIndex();
         }
         catch (Exception e) {
             LOGGER.error("Store failed for " + id, e);
         }
+    }
+
+    /**
+     * Remove an entry whose writing failed, so that the index does not
+     * reference an empty or partial entry.
+     * @param id asset id
+     * @param name entry name or null
+     * @param stream stream the entry was written with or null
+     */
+    private void discardEntry(String id, String name, OutputStream stream) {
+        try {
+            if (stream != null)
+                stream.close();
+            setAssetFile(id, null);
+            if (name != null)
+                Files.deleteIfExists(zipFile.getPath(name));
+        }
+        catch (IOException e) {
+            LOGGER.error("Cannot discard " + id, e);
+        }
+    }
+
+    /**
+     * Write the index entry. It becomes persistent with the next reload.
+     * @throws IOException if the index cannot be written
+     */
+    private void storeIndex() throws IOException {
+        lock.lock();
+        try {
+            Path entry = zipFile.getPath("index");
+            Files.deleteIfExists(entry);
+            OutputStream stream = Files.newOutputStream(entry);
+            try {
+                knownAssets.store(stream, "Encoded as java properties");
+            }
+            finally {
+                stream.close();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Prepare a write. Closing a written zip file rewrites it and fails all
+     * reads still open on it, so the write waits until they ended. Only a
+     * compaction replaces the file while it is read. Call with the lock
+     * held, which is released while waiting.
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private void beginWrite() throws IOException {
+        try {
+            while (readers > 0)
+                drained.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for reads of " + zipFilePath);
+        }
+    }
+
+    /**
+     * Replace the zip file by its compacted copy and reopen it, retiring the
+     * old one while it is read. Call with the lock held.
+     */
+    private void switchTo(Path path, Path compacted) throws IOException {
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileSystem old = zipFile;
+        int users = readers;
+        // Unchanged since the last reload, so closing it later writes nothing
+        zipFile = null;
+        reloadZipFile();
+        if (users > 0)
+            retired.put(old, users);
+        else
+            old.close();
+    }
+
+    /**
+     * Count a read of the current zip file and of the asset. Call with the
+     * lock held.
+     */
+    private void countAccess(String id) {
+        readers++;
+        AtomicLong count = accesses.get(id);
+        if (count == null) {
+            AtomicLong created = accesses.putIfAbsent(id, count = new AtomicLong());
+            if (created != null)
+                count = created;
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * End a read of a zip file, closing it if it is retired and this was the
+     * last read.
+     * @param snapshot zip file read
+     */
+    private void release(FileSystem snapshot) {
+        lock.lock();
+        try {
+            if (snapshot == zipFile) {
+                if (--readers == 0)
+                    drained.signalAll();
+                return;
+            }
+            Integer users = retired.get(snapshot);
+            if (users == null)
+                return;
+            if (users > 1) {
+                retired.put(snapshot, users - 1);
+                return;
+            }
+            retired.remove(snapshot);
+            snapshot.close();
+        }
+        catch (IOException e) {
+            LOGGER.error("Closing retired zip file failed", e);
+        }
         finally {
-            if (stream != null) stream.close();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stream of an entry, ending the read of its zip file on close.
+     * @author username
+     */
+    private final class ReadStream extends FilterInputStream {
+        /** Zip file read */
+        private final FileSystem snapshot = zipFile;
+        /** Whether the read ended */
+        private boolean released;
+        /** Standard constructor */
+        private ReadStream(InputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                if (!released)
+                    release(snapshot);
+                released = true;
+            }
+        }
+    }
+
+    /**
+     * Channel of an entry, ending the read of its zip file on close.
+     * @author username
+     */
+    private final class ReadChannel implements ReadableByteChannel {
+        /** Zip file read */
+        private final FileSystem snapshot = zipFile;
+        /** Entry channel */
+        private final ReadableByteChannel channel;
+        /** Whether the read ended */
+        private boolean released;
+        /** Standard constructor */
+        private ReadChannel(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            }
+            finally {
+                if (!released)
+                    release(snapshot);
+                released = true;
+            }
+        }
+    }
+
+    /**
+     * Channel collecting an entry to be written on close.
+     * @author username
+     */
+    private final class EntryWriteChannel implements AbandonableChannel {
+        /** Asset id */
+        private final String id;
+        /** Collected bytes */
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        /** Channel onto the buffer */
+        private final WritableByteChannel channel = Channels.newChannel(buffer);
+        /** Standard constructor */
+        private EntryWriteChannel(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!channel.isOpen())
+                return;
+            channel.close();
+            writeEntry(id, buffer.toByteArray());
+        }
+
+        @Override
+        public void abandon() throws IOException {
+            // Nothing written yet
+            channel.close();
         }
     }
 
@@ -280,9 +804,6 @@ public class ZipFileAssetSupplier extends AbstractURIAssetSupplier {
      * @param name asset to associate with the id
      */
     private void setKnownAsset(String id, String name) {
-        if (name == null)
-            knownAssets.remove(id);
-        else
-            knownAssets.setProperty(id, name);
+        knownAssets = knownAssets.with(id, name);
     }
 }
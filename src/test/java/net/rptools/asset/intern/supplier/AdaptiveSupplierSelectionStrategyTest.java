@@ -0,0 +1,112 @@
+package net.rptools.asset.intern.supplier;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.AssetImpl;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdaptiveSupplierSelectionStrategyTest {
+    private List<AssetSupplier> assetSuppliers;
+    private AdaptiveSupplierSelectionStrategy testObject;
+
+    @Before
+    public void setup() {
+        assetSuppliers = new ArrayList<AssetSupplier>();
+        Properties properties = new Properties();
+        properties.setProperty("AdaptiveSupplierSelectionStrategy.alpha", "0.2");
+        properties.setProperty("AdaptiveSupplierSelectionStrategy.maxErrorRate", "0.5");
+        properties.setProperty("AdaptiveSupplierSelectionStrategy.probeInterval", "60000");
+        testObject = new AdaptiveSupplierSelectionStrategy(properties);
+    }
+
+    @Test
+    public void testRoutesToFastest() {
+        AtomicInteger slowReads = new AtomicInteger();
+        AtomicInteger fastReads = new AtomicInteger();
+        // The file supplier sits on a slow mount, the zip holds the same ids
+        AssetSupplier slow = createSupplier(FileAssetSupplier.class, 40, 20, new AssetImpl("slow"), slowReads);
+        AssetSupplier fast = createSupplier(ZipFileAssetSupplier.class, 30, 1, new AssetImpl("fast"), fastReads);
+        replay(slow, fast);
+        assetSuppliers.add(slow);
+        assetSuppliers.add(fast);
+
+        assertSame(slow, new DefaultSupplierSelectionStrategy().getSupplier(new SupplierRouting(assetSuppliers), "1", AssetSupplier.class));
+        for (int i = 0; i < 20; i++)
+            testObject.getAsset(new SupplierRouting(assetSuppliers), "1", null, false);
+        // Each one is sampled once, then the zip wins
+        assertEquals(1, slowReads.get());
+        assertEquals(19, fastReads.get());
+        assertTrue(testObject.getLatency(slow) > testObject.getLatency(fast));
+        assertEquals("fast", testObject.getAsset(new SupplierRouting(assetSuppliers), "1", null, false).getMain());
+    }
+
+    @Test
+    public void testAvoidsUnhealthy() {
+        AtomicInteger slowReads = new AtomicInteger();
+        AtomicInteger failingReads = new AtomicInteger();
+        AssetSupplier slow = createSupplier(FileAssetSupplier.class, 40, 10, new AssetImpl("slow"), slowReads);
+        AssetSupplier failing = createSupplier(ZipFileAssetSupplier.class, 30, 0, new AssetImpl(null), failingReads);
+        replay(slow, failing);
+        assetSuppliers.add(slow);
+        assetSuppliers.add(failing);
+
+        for (int i = 0; i < 10; i++)
+            testObject.getAsset(new SupplierRouting(assetSuppliers), "1", null, false);
+        assertEquals(1, failingReads.get());
+        assertEquals(9, slowReads.get());
+        assertEquals(1.0, testObject.getErrorRate(failing), 0.0);
+        assertEquals(0.0, testObject.getErrorRate(slow), 0.0);
+    }
+
+    @Test
+    public void testCachesFirst() {
+        AssetSupplier memCache = createMock("MemCache", MemCacheAssetSupplier.class);
+        AssetSupplier file = createMock("File", FileAssetSupplier.class);
+        Asset ret = new AssetImpl(null);
+        expect(memCache.getPriority()).andReturn(100).anyTimes();
+        expect(file.getPriority()).andReturn(40).anyTimes();
+        expect(memCache.has("1")).andReturn(true);
+        expect(memCache.get("1", null)).andReturn(ret);
+        expect(memCache.has("2")).andReturn(false);
+        expect(file.has("2")).andReturn(false);
+        replay(memCache, file);
+        assetSuppliers.add(memCache);
+        assetSuppliers.add(file);
+
+        assertSame(ret, testObject.getAsset(new SupplierRouting(assetSuppliers), "1", null, false));
+        assertNull(testObject.getAsset(new SupplierRouting(assetSuppliers), "2", null, false));
+        verify(memCache, file);
+    }
+
+    /**
+     * Supplier having every id, answering after a delay.
+     */
+    private static AssetSupplier createSupplier(Class<? extends AssetSupplier> clazz, int priority, final long millis,
+            final Asset result, final AtomicInteger reads) {
+        AssetSupplier supplier = createMock(clazz.getSimpleName(), clazz);
+        expect(supplier.getPriority()).andReturn(priority).anyTimes();
+        expect(supplier.has(isA(String.class))).andReturn(true).anyTimes();
+        expect(supplier.get(isA(String.class), (AssetListener) isNull())).andAnswer(new IAnswer<Asset>() {
+            @Override
+            public Asset answer() throws Throwable {
+                Thread.sleep(millis);
+                reads.incrementAndGet();
+                return result;
+            }
+        }).anyTimes();
+        return supplier;
+    }
+}
@@ -0,0 +1,86 @@
+package net.rptools.asset.intern.supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class AssetIndexTest {
+    @Test
+    public void testLookup() {
+        Map<String, String> entries = new HashMap<String, String>();
+        for (int i = 0; i < 1000; i++)
+            entries.put("id" + i, "file" + i + ".png");
+        AssetIndex testObject = AssetIndex.of(entries);
+        assertEquals(1000, testObject.size());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(testObject.contains("id" + i));
+            assertEquals("file" + i + ".png", testObject.get("id" + i));
+        }
+        assertFalse(testObject.contains("id1000"));
+        assertFalse(testObject.contains(null));
+        assertNull(testObject.get("id"));
+        for (int i = 1; i < testObject.size(); i++)
+            assertTrue(testObject.getId(i - 1).compareTo(testObject.getId(i)) < 0);
+        assertFalse(AssetIndex.EMPTY.contains("id0"));
+    }
+
+    @Test
+    public void testWith() {
+        AssetIndex original = AssetIndex.EMPTY.with("b", "2").with("a", "1").with("c", "3");
+        AssetIndex testObject = original.with("b", "two").with("a", null).with("d", "4");
+        // Copy on write
+        assertEquals("2", original.get("b"));
+        assertEquals("1", original.get("a"));
+        assertEquals(3, original.size());
+
+        assertEquals("two", testObject.get("b"));
+        assertNull(testObject.get("a"));
+        assertEquals("4", testObject.get("d"));
+        assertEquals(3, testObject.size());
+        assertEquals("b", testObject.getId(0));
+        assertEquals("d", testObject.getId(2));
+        assertEquals(0, testObject.with("x", null).with("b", null).with("c", null).with("d", null).size());
+
+        Map<String, String> changes = new HashMap<String, String>();
+        changes.put("c", null);
+        changes.put("e", "5");
+        changes.put("0", "0");
+        testObject = testObject.with(changes);
+        assertEquals("0", testObject.getId(0));
+        assertEquals("e", testObject.getId(testObject.size() - 1));
+        assertFalse(testObject.contains("c"));
+    }
+
+    @Test
+    public void testStoreLoad() throws Exception {
+        Map<String, String> entries = new HashMap<String, String>();
+        entries.put("plain", "plain.png");
+        entries.put("with space", " leading space.png");
+        entries.put("a=b:c#d!e\\f", "x=y.png");
+        entries.put("tab\tline\nend", "umlaut \u00e4 and \u20ac.png");
+        AssetIndex testObject = AssetIndex.of(entries);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        testObject.store(output, "Encoded as java properties");
+
+        // Readable as properties
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(entries.size(), properties.size());
+        for (Map.Entry<String, String> entry : entries.entrySet())
+            assertEquals(entry.getValue(), properties.getProperty(entry.getKey()));
+
+        AssetIndex loaded = AssetIndex.load(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(entries.size(), loaded.size());
+        for (Map.Entry<String, String> entry : entries.entrySet())
+            assertEquals(entry.getValue(), loaded.get(entry.getKey()));
+    }
+}
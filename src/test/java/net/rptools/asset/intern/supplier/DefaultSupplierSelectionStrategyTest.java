@@ -94,6 +94,29 @@ public class DefaultSupplierSelectionStrategyTest {
         verify(supplier1, supplier2, supplier3);
     }
 
+    @Test
+    public void testReadFillsCachesBefore() {
+        AssetSupplier supplier1 = createMock("Supplier1", MemCacheAssetSupplier.class);
+        AssetSupplier supplier2 = createMock("Supplier2", DiskCacheAssetSupplier.class);
+        AssetSupplier supplier3 = createMock("Supplier3", DiskCacheAssetSupplier.class);
+        AssetImpl ret = new AssetImpl(true);
+        expect(supplier1.getPriority()).andReturn(1).anyTimes();
+        expect(supplier2.getPriority()).andReturn(3).anyTimes();
+        expect(supplier3.getPriority()).andReturn(2).anyTimes();
+        expect(supplier1.has("7")).andReturn(false).times(2);
+        expect(supplier2.has("7")).andReturn(true);
+        expect(supplier2.get("7", null)).andReturn(ret);
+        supplier1.update("7", ret);
+
+        replay(supplier1, supplier2, supplier3);
+        assetSuppliers.add(supplier1);
+        assetSuppliers.add(supplier2);
+        assetSuppliers.add(supplier3);
+        Asset test = DefaultSupplierSelectionStrategy.getAssetByStrategy(assetSuppliers , "7", null, true);
+        assertEquals(test, ret);
+        verify(supplier1, supplier2, supplier3);
+    }
+
     @Test
     public void testWriteTypePriority() throws InterruptedException {
         AssetSupplier supplier1 = createMock("Supplier1", HttpAssetSupplier.class);
@@ -0,0 +1,166 @@
+package net.rptools.asset.intern.supplier;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.RequestContext;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HedgingSupplierSelectionStrategyTest {
+    private List<AssetSupplier> assetSuppliers;
+    private Properties properties;
+
+    @Before
+    public void setup() {
+        assetSuppliers = new ArrayList<AssetSupplier>();
+        properties = new Properties();
+        properties.setProperty("HedgingSupplierSelectionStrategy.budget", "1");
+        properties.setProperty("HedgingSupplierSelectionStrategy.percentile", "95");
+        properties.setProperty("HedgingSupplierSelectionStrategy.minDelay", "10");
+        properties.setProperty("HedgingSupplierSelectionStrategy.initialDelay", "100");
+        properties.setProperty("HedgingSupplierSelectionStrategy.samples", "16");
+    }
+
+    @Test
+    public void testHedgeStalled() throws InterruptedException {
+        final CountDownLatch closed = new CountDownLatch(1);
+        AssetSupplier stalled = createSupplier(FileAssetSupplier.class, 40, 5000, new AssetImpl("stalled"), closed);
+        AssetSupplier backup = createSupplier(ZipFileAssetSupplier.class, 30, 5, new AssetImpl("backup"), null);
+        replay(stalled, backup);
+        assetSuppliers.add(stalled);
+        assetSuppliers.add(backup);
+        HedgingSupplierSelectionStrategy testObject = new HedgingSupplierSelectionStrategy(properties,
+            new DefaultSupplierSelectionStrategy());
+
+        final AtomicInteger notifications = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        Asset result = testObject.getAsset(new SupplierRouting(assetSuppliers), "1", new AssetListener() {
+            @Override
+            public void notify(String id, Asset obj) {
+                assertEquals("backup", obj.getMain());
+                notifications.incrementAndGet();
+            }
+            @Override
+            public void notifyPartial(String id, double completed) throws TimeoutException {
+            }
+        }, false);
+        assertEquals("backup", result.getMain());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, notifications.get());
+        assertEquals(1, testObject.getHedges());
+        // The loser is cancelled
+        assertTrue(closed.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNoHedgeWhileReading() {
+        AssetSupplier reading = createMock("Reading", FileAssetSupplier.class);
+        expect(reading.getPriority()).andReturn(40).anyTimes();
+        expect(reading.has(isA(String.class))).andReturn(true).anyTimes();
+        expect(reading.get(isA(String.class), (AssetListener) anyObject())).andAnswer(new IAnswer<Asset>() {
+            @Override
+            public Asset answer() throws Throwable {
+                RequestContext.get().countRead(100);
+                Thread.sleep(150);
+                return new AssetImpl("reading");
+            }
+        });
+        AssetSupplier backup = createMock("Backup", ZipFileAssetSupplier.class);
+        expect(backup.getPriority()).andReturn(30).anyTimes();
+        expect(backup.has(isA(String.class))).andReturn(true).anyTimes();
+        replay(reading, backup);
+        assetSuppliers.add(reading);
+        assetSuppliers.add(backup);
+        HedgingSupplierSelectionStrategy testObject = new HedgingSupplierSelectionStrategy(properties,
+            new DefaultSupplierSelectionStrategy());
+
+        // Data arrived before the deadline, so the read gets a second one
+        assertEquals("reading", testObject.getAsset(new SupplierRouting(assetSuppliers), "1", null, false).getMain());
+        assertEquals(0, testObject.getHedges());
+    }
+
+    @Test
+    public void testNoHedgeWithinDeadline() {
+        AssetSupplier fast = createSupplier(FileAssetSupplier.class, 40, 5, new AssetImpl("fast"), null);
+        AssetSupplier backup = createMock("Backup", ZipFileAssetSupplier.class);
+        expect(backup.getPriority()).andReturn(30).anyTimes();
+        replay(fast, backup);
+        assetSuppliers.add(fast);
+        assetSuppliers.add(backup);
+        HedgingSupplierSelectionStrategy testObject = new HedgingSupplierSelectionStrategy(properties,
+            new DefaultSupplierSelectionStrategy());
+
+        for (int i = 0; i < 20; i++)
+            assertEquals("fast", testObject.getAsset(new SupplierRouting(assetSuppliers), "1", null, false).getMain());
+        assertEquals(0, testObject.getHedges());
+        assertEquals(20, testObject.getReads());
+        // Enough samples to replace the initial delay
+        assertEquals(10, testObject.getDelay(fast));
+        verify(backup);
+    }
+
+    @Test
+    public void testBudget() {
+        properties.setProperty("HedgingSupplierSelectionStrategy.budget", "0.25");
+        AssetSupplier slow = createSupplier(FileAssetSupplier.class, 40, 200, new AssetImpl("slow"), null);
+        AssetSupplier backup = createSupplier(ZipFileAssetSupplier.class, 30, 5, new AssetImpl("backup"), null);
+        replay(slow, backup);
+        assetSuppliers.add(slow);
+        assetSuppliers.add(backup);
+        HedgingSupplierSelectionStrategy testObject = new HedgingSupplierSelectionStrategy(properties,
+            new DefaultSupplierSelectionStrategy());
+
+        for (int i = 0; i < 8; i++)
+            testObject.getAsset(new SupplierRouting(assetSuppliers), "1", null, false);
+        assertEquals(2, testObject.getHedges());
+    }
+
+    /**
+     * Supplier having every id, answering after a delay. If given, the latch
+     * counts down when the stream of the supplier is closed.
+     */
+    private static AssetSupplier createSupplier(Class<? extends AssetSupplier> clazz, int priority, final long millis,
+            final Asset result, final CountDownLatch closed) {
+        AssetSupplier supplier = createMock(clazz.getSimpleName(), clazz);
+        expect(supplier.getPriority()).andReturn(priority).anyTimes();
+        expect(supplier.has(isA(String.class))).andReturn(true).anyTimes();
+        expect(supplier.get(isA(String.class), (AssetListener) anyObject())).andAnswer(new IAnswer<Asset>() {
+            @Override
+            public Asset answer() throws Throwable {
+                final CountDownLatch aborted = new CountDownLatch(1);
+                Closeable stream = new Closeable() {
+                    @Override
+                    public void close() {
+                        aborted.countDown();
+                    }
+                };
+                try {
+                    if (RequestContext.onAbort(stream) && !aborted.await(millis, TimeUnit.MILLISECONDS))
+                        return result;
+                    if (closed != null)
+                        closed.countDown();
+                    return new AssetImpl(null);
+                }
+                finally {
+                    RequestContext.remove(stream);
+                }
+            }
+        }).anyTimes();
+        return supplier;
+    }
+}
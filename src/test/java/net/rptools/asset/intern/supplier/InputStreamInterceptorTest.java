@@ -0,0 +1,69 @@
+package net.rptools.asset.intern.supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetRequest;
+import net.rptools.asset.intern.RequestContext;
+
+import org.junit.Test;
+
+public class InputStreamInterceptorTest {
+    @Test
+    public void testCloseStopsNotifying() throws Exception {
+        final AtomicInteger partials = new AtomicInteger();
+        AssetListener listener = new AssetListener() {
+            @Override
+            public void notify(String id, Asset obj) {
+            }
+            @Override
+            public void notifyPartial(String id, double completed) {
+                partials.incrementAndGet();
+            }
+        };
+        // A read failing before the end
+        InputStream failing = new ByteArrayInputStream(new byte[10]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                throw new IllegalStateException("failed");
+            }
+        };
+        InputStreamInterceptor testObject = new InputStreamInterceptor("id", 10, failing, listener, 10);
+        try {
+            testObject.read(new byte[10], 0, 10);
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        testObject.close();
+        Thread.sleep(50);
+        int count = partials.get();
+        Thread.sleep(100);
+        assertEquals(count, partials.get());
+        assertTrue(count < 10);
+        assertEquals(-1, testObject.read(new byte[10], 0, 10));
+    }
+
+    @Test
+    public void testCountsBytes() throws Exception {
+        AssetRequest request = new AssetRequest();
+        RequestContext.Scope scope = RequestContext.enter(request);
+        try {
+            InputStreamInterceptor testObject = new InputStreamInterceptor("id", 10, new ByteArrayInputStream(new byte[10]), null, 10);
+            testObject.read();
+            testObject.read(new byte[10], 0, 10);
+            assertEquals(-1, testObject.read());
+            testObject.close();
+        }
+        finally {
+            scope.exit();
+        }
+        assertEquals(10, request.getBytesRead());
+    }
+}
@@ -0,0 +1,47 @@
+package net.rptools.asset.intern.supplier;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import net.rptools.asset.AssetSupplier;
+
+import org.junit.Test;
+
+public class SupplierRoutingTest {
+    @Test
+    public void testOrders() {
+        AssetSupplier http = createSupplier(HttpAssetSupplier.class, 20);
+        AssetSupplier zip = createSupplier(ZipFileAssetSupplier.class, 45);
+        AssetSupplier file1 = createSupplier(FileAssetSupplier.class, 40);
+        AssetSupplier file2 = createSupplier(FileAssetSupplier.class, 41);
+        AssetSupplier disk = createSupplier(DiskCacheAssetSupplier.class, 50);
+        AssetSupplier mem = createSupplier(MemCacheAssetSupplier.class, 100);
+        AssetSupplier other = createSupplier(AssetSupplier.class, 10);
+        replay(http, zip, file1, file2, disk, mem, other);
+
+        SupplierRouting testObject = new SupplierRouting(Arrays.asList(http, zip, file1, other, disk, mem));
+        testObject = testObject.add(file2);
+        assertEquals(Arrays.asList(mem, disk, zip, file2, file1, http, other), testObject.getSuppliers());
+        assertEquals(Arrays.asList(mem, disk, file2, file1, zip, http), testObject.getReadOrder());
+        assertEquals(Arrays.asList(mem, disk), testObject.getCaches());
+        assertEquals(Arrays.asList(zip, file2, file1, http, other), testObject.getSources());
+        assertEquals(Arrays.asList(file2, file1), testObject.getWriteTargets());
+        assertEquals(Arrays.asList(zip, file1, http, other), testObject.getAlternatives(file2).getSources());
+
+        // Snapshots are immutable
+        SupplierRouting removed = testObject.remove(file2);
+        assertEquals(Arrays.asList(file1), removed.getWriteTargets());
+        assertEquals(Arrays.asList(file2, file1), testObject.getWriteTargets());
+        assertSame(removed, removed.remove(file2));
+        assertSame(testObject, testObject.add(file2));
+    }
+
+    private static AssetSupplier createSupplier(Class<? extends AssetSupplier> clazz, int priority) {
+        AssetSupplier supplier = createMock(clazz.getSimpleName() + priority, clazz);
+        expect(supplier.getPriority()).andReturn(priority).anyTimes();
+        return supplier;
+    }
+}
@@ -0,0 +1,217 @@
+package net.rptools.asset.intern.supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import net.rptools.asset.intern.AssetManagerImpl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipCompactorTest {
+    private final static String PREFIX = ".maptool/compact/pack.zip";
+
+    private File pack;
+
+    private Map<String, byte[]> contents;
+
+    @Before
+    public void setUp() throws Exception {
+        pack = new File(System.getProperty("user.dir"), PREFIX);
+        pack.getParentFile().mkdirs();
+        Random random = new Random(4711);
+        contents = new HashMap<String, byte[]>();
+        // Compressible, incompressible, shared by two ids and unreferenced
+        contents.put("a.png", new byte[20000]);
+        contents.put("b.png", new byte[20000]);
+        contents.put("shared.png", new byte[5000]);
+        contents.put("orphan.png", new byte[10000]);
+        random.nextBytes(contents.get("b.png"));
+        random.nextBytes(contents.get("shared.png"));
+        random.nextBytes(contents.get("orphan.png"));
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(pack));
+        try {
+            output.putNextEntry(new ZipEntry("index"));
+            output.write("a=a.png\nb=b.png\nc=shared.png\nd=shared.png\n".getBytes("ISO-8859-1"));
+            output.closeEntry();
+            for (String name : Arrays.asList("orphan.png", "shared.png", "b.png", "a.png")) {
+                output.putNextEntry(new ZipEntry(name));
+                output.write(contents.get(name));
+                output.closeEntry();
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : pack.getParentFile().listFiles())
+            file.delete();
+    }
+
+    @Test
+    public void testCompactById() throws Exception {
+        Path target = new File(pack.getParentFile(), "target.zip").toPath();
+        ZipCompactor.Result result = ZipCompactor.compact(pack.toPath(), target, loadIndex(), ZipCompactor.Order.ID,
+            Collections.<String, Long>emptyMap());
+        assertEquals(3, result.getEntries());
+        assertEquals(1, result.getOrphans());
+        assertEquals(0, result.getMissing());
+        // Random bytes do not deflate
+        assertEquals(2, result.getStored());
+        assertEquals(Files.size(target), result.getBytesAfter());
+        assertTrue(result.getReclaimed() > 0);
+        assertEquals(Arrays.asList("index", "a.png", "b.png", "shared.png"), readEntries(target));
+        assertTrue(ZipCompactor.timeReads(target, result.getNames()) > 0);
+    }
+
+    @Test
+    public void testCompactByFrequency() throws Exception {
+        Path target = new File(pack.getParentFile(), "target.zip").toPath();
+        Map<String, Long> accesses = new HashMap<String, Long>();
+        accesses.put("b", 3L);
+        accesses.put("c", 2L);
+        accesses.put("d", 2L);
+        ZipCompactor.Result result = ZipCompactor.compact(pack.toPath(), target, loadIndex(), ZipCompactor.Order.FREQUENCY, accesses);
+        // Accesses of ids sharing an entry add up
+        assertEquals(Arrays.asList("shared.png", "b.png", "a.png"), result.getNames());
+        assertEquals(Arrays.asList("index", "shared.png", "b.png", "a.png"), readEntries(target));
+    }
+
+    @Test
+    public void testOnline() throws Exception {
+        ZipFileAssetSupplier testObject = new ZipFileAssetSupplier(AssetManagerImpl.getTotalProperties(null), PREFIX);
+        for (int i = 0; i < 3; i++) {
+            ReadableByteChannel channel = testObject.openRead("b");
+            read(channel, Integer.MAX_VALUE);
+            channel.close();
+        }
+        ReadableByteChannel reading = testObject.openRead("a");
+        ByteArrayOutputStream before = new ByteArrayOutputStream();
+        before.write(read(reading, 100));
+
+        ZipCompactor.Result result = testObject.compact(ZipCompactor.Order.FREQUENCY);
+        assertEquals(1, result.getOrphans());
+        assertEquals(Arrays.asList("index", "b.png", "a.png", "shared.png"), readEntries(pack.toPath()));
+        assertEquals(1, testObject.getRetired());
+
+        // The read started before continues on the old file
+        before.write(read(reading, Integer.MAX_VALUE));
+        assertArrayEquals(contents.get("a.png"), before.toByteArray());
+        assertEquals(1, testObject.getRetired());
+        reading.close();
+        assertEquals(0, testObject.getRetired());
+
+        ReadableByteChannel channel = testObject.openRead("d");
+        assertNotNull(channel);
+        assertArrayEquals(contents.get("shared.png"), read(channel, Integer.MAX_VALUE));
+        channel.close();
+        assertTrue(testObject.has("a") && testObject.has("b") && testObject.has("c"));
+    }
+
+    @Test
+    public void testReadDuringWrite() throws Exception {
+        ZipFileAssetSupplier testObject = new ZipFileAssetSupplier(AssetManagerImpl.getTotalProperties(null), PREFIX);
+        ReadableByteChannel reading = testObject.openRead("a");
+        ByteArrayOutputStream before = new ByteArrayOutputStream();
+        before.write(read(reading, 100));
+
+        final WritableByteChannel writing = testObject.openWrite("e");
+        writing.write(ByteBuffer.wrap(contents.get("b.png")));
+        final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writing.close();
+                }
+                catch (IOException e) {
+                    failure.set(e);
+                }
+            }
+        });
+        writer.start();
+        // The write waits for the read, which continues undisturbed
+        writer.join(200);
+        assertTrue(writer.isAlive());
+        before.write(read(reading, Integer.MAX_VALUE));
+        assertArrayEquals(contents.get("a.png"), before.toByteArray());
+        reading.close();
+        writer.join(10000);
+        assertFalse(writer.isAlive());
+        assertEquals(null, failure.get());
+        assertEquals(0, testObject.getRetired());
+
+        ReadableByteChannel channel = testObject.openRead("e");
+        assertArrayEquals(contents.get("b.png"), read(channel, Integer.MAX_VALUE));
+        channel.close();
+    }
+
+    private AssetIndex loadIndex() throws IOException {
+        ZipFile zip = new ZipFile(pack);
+        try {
+            InputStream stream = zip.getInputStream(zip.getEntry("index"));
+            try {
+                return AssetIndex.load(stream);
+            }
+            finally {
+                stream.close();
+            }
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    private static List<String> readEntries(Path zip) throws IOException {
+        List<String> result = new ArrayList<String>();
+        ZipInputStream input = new ZipInputStream(Files.newInputStream(zip));
+        try {
+            for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry())
+                result.add(entry.getName());
+        }
+        finally {
+            input.close();
+        }
+        return result;
+    }
+
+    private static byte[] read(ReadableByteChannel channel, int limit) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(limit, 4096));
+        while (output.size() < limit && channel.read(buffer) != -1) {
+            output.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        return output.toByteArray();
+    }
+}
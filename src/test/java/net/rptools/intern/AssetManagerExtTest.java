@@ -7,6 +7,7 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.zip.ZipFile;
@@ -73,6 +74,45 @@ public class AssetManagerExtTest extends TestConstants {
         testCopyUpdate(supplier2);
     }
 
+    @Test
+    public void testRawCopyFile() throws Exception {
+        fileSetup(TEST_DIR);
+        new PrintStream(new FileOutputStream(USER_DIR + TEST_DIR2 + "index")).close(); // empty
+        FileAssetSupplier source = new FileAssetSupplier(AssetManagerImpl.getTotalProperties(null), USER_DIR + TEST_DIR);
+        FileAssetSupplier destination = new FileAssetSupplier(AssetManagerImpl.getTotalProperties(null), USER_DIR + TEST_DIR2);
+        source.setPriority(41); // not to collide with left-overs of other tests
+        destination.setPriority(42);
+        AssetListener listener = createMock("Listener", AssetListener.class);
+        final Semaphore copied = new Semaphore(0);
+        listener.notify(anyObject(String.class), anyObject(Asset.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() {
+                copied.release();
+                return null;
+            }
+        }).times(2);
+        replay(listener);
+
+        testObject.registerAssetSupplier(source);
+        try {
+            // The second copy must not overwrite, but create another asset
+            testObject.copyAssets(new String[] { MY_ID }, destination, listener, false);
+            assertThat(copied.tryAcquire(5000, TimeUnit.MILLISECONDS), is(true));
+            testObject.copyAssets(new String[] { MY_ID }, destination, listener, false);
+            assertThat(copied.tryAcquire(5000, TimeUnit.MILLISECONDS), is(true));
+        }
+        finally {
+            testObject.deregisterAssetSupplier(source);
+        }
+        assertThat(destination.has(MY_ID), is(true));
+        EncodedAssetImpl original = (EncodedAssetImpl) source.get(MY_ID, null);
+        EncodedAssetImpl copy = (EncodedAssetImpl) destination.get(MY_ID, null);
+        assertThat(copy.getBytes(), is(equalTo(original.getBytes())));
+        assertThat(new File(USER_DIR + TEST_DIR2).list().length, equalTo(3)); // index + 2 assets
+        verify(listener);
+    }
+
     private void testCopy(AssetSupplier testSupplier) throws Exception {
         // Objects and files
         BufferedImage example = fileSetup(TEST_DIR);
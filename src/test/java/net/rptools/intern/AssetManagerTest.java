@@ -18,10 +18,22 @@ import static org.easymock.EasyMock.*;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
 
 import net.rptools.asset.*;
 import net.rptools.asset.intern.*;
+import net.rptools.asset.intern.supplier.ChangingAssetSupplier;
 import net.rptools.asset.intern.supplier.FileAssetSupplier;
 
 import org.easymock.IAnswer;
@@ -45,6 +57,11 @@ public class AssetManagerTest {
         mock2 = createMock("Mock2", FileAssetSupplier.class);
         expect(mock1.getPriority()).andReturn(1).anyTimes();
         expect(mock2.getPriority()).andReturn(2).anyTimes();
+        // The manager listens to changes of file suppliers
+        mock1.setChangeListener(anyObject(ChangingAssetSupplier.ChangeListener.class));
+        expectLastCall().anyTimes();
+        mock2.setChangeListener(anyObject(ChangingAssetSupplier.ChangeListener.class));
+        expectLastCall().anyTimes();
     }
     
     @After
@@ -150,4 +167,133 @@ public class AssetManagerTest {
         Thread.sleep(200); // Fake
         verify(mock1, mock2, mockListener);
     }
+
+    @Test
+    public void testGetAssetAsyncCancelled() throws InterruptedException {
+        final String id = UUID.randomUUID().toString();
+        final CountDownLatch closed = new CountDownLatch(1);
+        expect(mock1.has(id)).andReturn(true);
+        expect(mock1.get(eq(id), (AssetListener) anyObject())).andAnswer(stall(id, closed));
+        expect(mock2.has(id)).andReturn(false).anyTimes();
+        replay(mock1, mock2);
+        testObject.registerAssetSupplier(mock1);
+        testObject.registerAssetSupplier(mock2);
+
+        final List<Asset> notified = Collections.synchronizedList(new ArrayList<Asset>());
+        final CountDownLatch done = new CountDownLatch(1);
+        AssetRequest request = new AssetRequest();
+        testObject.getAssetAsync(id, new AssetListener() {
+            @Override
+            public void notify(String id, Asset obj) {
+                notified.add(obj);
+                done.countDown();
+            }
+            @Override
+            public void notifyPartial(String id, double completed) {
+            }
+        }, true, request);
+        Thread.sleep(100);
+        request.cancel();
+        assertThat(closed.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(done.await(1, TimeUnit.SECONDS), is(true));
+        Thread.sleep(100);
+        assertThat(notified, contains((Asset) null));
+        verify(mock1, mock2);
+
+        // Already cancelled: the supplier is not asked at all
+        final CountDownLatch again = new CountDownLatch(1);
+        testObject.getAssetAsync(id, new AssetListener() {
+            @Override
+            public void notify(String id, Asset obj) {
+                assertThat(obj, is(nullValue()));
+                again.countDown();
+            }
+            @Override
+            public void notifyPartial(String id, double completed) {
+            }
+        }, true, request);
+        assertThat(again.await(1, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testGetAssetDeadline() throws InterruptedException {
+        String id = UUID.randomUUID().toString();
+        CountDownLatch closed = new CountDownLatch(1);
+        expect(mock1.has(id)).andReturn(true);
+        expect(mock1.get(eq(id), (AssetListener) isNull())).andAnswer(stall(id, closed));
+        expect(mock2.has(id)).andReturn(false).anyTimes();
+        replay(mock1, mock2);
+        testObject.registerAssetSupplier(mock1);
+        testObject.registerAssetSupplier(mock2);
+
+        long start = System.currentTimeMillis();
+        AssetRequest request = new AssetRequest(100);
+        assertThat(testObject.getAsset(id, true, request), is(nullValue()));
+        assertThat(System.currentTimeMillis() - start, is(lessThan(2000L)));
+        assertThat(request.isExpired(), is(true));
+        assertThat(request.isCancelled(), is(false));
+        assertThat(closed.getCount(), is(0L));
+        // Aborting does not interrupt
+        assertThat(Thread.currentThread().isInterrupted(), is(false));
+        verify(mock1, mock2);
+    }
+
+    /**
+     * Supplier answer that stalls until its stream is closed, then notifies
+     * the listener as suppliers do.
+     */
+    private static IAnswer<Asset> stall(final String id, final CountDownLatch closed) {
+        return new IAnswer<Asset>() {
+            @Override
+            public Asset answer() throws Throwable {
+                Asset result = new AssetImpl(Math.PI);
+                final CountDownLatch aborted = new CountDownLatch(1);
+                Closeable stream = new Closeable() {
+                    @Override
+                    public void close() {
+                        aborted.countDown();
+                    }
+                };
+                if (!RequestContext.onAbort(stream) || aborted.await(5, TimeUnit.SECONDS)) {
+                    closed.countDown();
+                    result = new AssetImpl(null);
+                }
+                RequestContext.remove(stream);
+                AssetListener listener = (AssetListener) getCurrentArguments()[1];
+                if (listener != null)
+                    listener.notify(id, result);
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testGetReducedAsset() throws Exception {
+        BufferedImage img = new BufferedImage(100, 80, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(99, 79, 0xffffff);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", png);
+
+        String id = UUID.randomUUID().toString();
+        expect(mock1.has(id)).andReturn(true);
+        expect(mock1.get(id, null)).andReturn(new EncodedAssetImpl(png.toByteArray(), "png"));
+        expect(mock2.has(id)).andReturn(false);
+        replay(mock1, mock2);
+
+        testObject.registerAssetSupplier(mock1);
+        testObject.registerAssetSupplier(mock2);
+
+        // Subsampled by 8 in both directions
+        BufferedImage thumbnail = (BufferedImage) testObject.getAsset(id, ReadOptions.thumbnail(10, 10), true).getMain();
+        assertThat(thumbnail.getWidth(), is(13));
+        assertThat(thumbnail.getHeight(), is(10));
+        // Now from the memory cache
+        assertThat(testObject.getAsset(id, ReadOptions.thumbnail(10, 10), true).getMain(), is(sameInstance((Object) thumbnail)));
+
+        BufferedImage region = (BufferedImage) testObject.getAsset(id, ReadOptions.region(new Rectangle(90, 70, 20, 20)), true).getMain();
+        assertThat(region.getWidth(), is(10));
+        assertThat(region.getHeight(), is(10));
+        assertThat(region.getRGB(9, 9), is(0xffffffff));
+        verify(mock1, mock2);
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.BulkImporter;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+import net.rptools.asset.intern.supplier.ZipFileAssetSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkImporterTest extends TestConstants {
+    private final static String TREE = USER_DIR + TEST_DIR2 + "tree" + SEP;
+
+    private Properties properties;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        properties = AssetManagerImpl.getTotalProperties(null);
+        new File(TREE + "sub").mkdirs();
+        BufferedImage img = ImageIO.read(BulkImporterTest.class.getClassLoader().getResourceAsStream(TEST_IMAGE));
+        ImageIO.write(img, "png", new File(TREE + "a.png"));
+        ImageIO.write(img, "png", new File(TREE + "sub" + SEP + "same.png")); // same content
+        ImageIO.write(new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB), "jpeg", new File(TREE + "sub" + SEP + "b.jpg"));
+        PrintStream text = new PrintStream(new FileOutputStream(TREE + "readme.txt"));
+        text.println("no image");
+        text.close();
+        new PrintStream(new FileOutputStream(USER_DIR + TEST_DIR + "index")).close(); // empty
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(new File(USER_DIR + TEST_DIR2));
+        for (File rm : new File(USER_DIR + TEST_DIR).listFiles())
+            rm.delete();
+    }
+
+    @Test
+    public void testImportResumeFile() throws Exception {
+        FileAssetSupplier target = new FileAssetSupplier(properties, USER_DIR + TEST_DIR);
+        BulkImporter.Result result = new BulkImporter(properties).importTree(new File(TREE), target);
+        assertThat(result.getScanned(), is(4));
+        assertThat(result.getImported(), is(2));
+        assertThat(result.getSkipped(), is(1));
+        assertThat(result.getInvalid(), is(1));
+        assertThat(result.getIds().get("a.png"), is(equalTo(result.getIds().get("sub" + SEP + "same.png"))));
+        String id = result.getIds().get("sub" + SEP + "b.jpg");
+        assertThat(target.has(id), is(true));
+        assertThat(target.get(id, null).getFormat(), is("jpeg"));
+
+        // The index has been committed, so a new supplier sees the assets
+        // and a second run imports nothing
+        target = new FileAssetSupplier(properties, USER_DIR + TEST_DIR);
+        result = new BulkImporter(properties).importTree(new File(TREE), target);
+        assertThat(result.getImported(), is(0));
+        assertThat(result.getSkipped(), is(3));
+    }
+
+    @Test
+    public void testImportZip() throws Exception {
+        InputStream source = BulkImporterTest.class.getClassLoader().getResourceAsStream("test.zip");
+        OutputStream destination = new FileOutputStream(new File(TEST_ZIP_FULL));
+        for (int b = source.read(); b != -1; b = source.read())
+            destination.write(b);
+        destination.close();
+        ZipFileAssetSupplier target = new ZipFileAssetSupplier(properties, TEST_ZIP);
+        BulkImporter.Result result = new BulkImporter(properties).importTree(new File(TREE), target);
+        assertThat(result.getImported(), is(2));
+        for (String id : result.getIds().values())
+            assertThat(target.has(id), is(true));
+        assertThat(target.has(MY_ID), is(true));
+        assertThat(target.get(result.getIds().get("a.png"), null).getMain(), is(notNullValue()));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        if (!file.getAbsolutePath().equals(new File(USER_DIR + TEST_DIR2).getAbsolutePath()))
+            file.delete();
+    }
+}
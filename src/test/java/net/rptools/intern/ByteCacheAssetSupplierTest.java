@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.supplier.ByteCacheAssetSupplier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ByteCacheAssetSupplierTest {
+    private ByteCacheAssetSupplier testObject;
+
+    private EncodedAssetImpl encoded;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties override = new Properties();
+        override.setProperty(ByteCacheAssetSupplier.class.getSimpleName() + ".megabytes", "1");
+        testObject = new ByteCacheAssetSupplier(AssetManagerImpl.getTotalProperties(override));
+        BufferedImage img = new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(19, 9, 0xff123456);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", output);
+        encoded = new EncodedAssetImpl(output.toByteArray(), "png");
+    }
+
+    @Test
+    public void testHit() {
+        testObject.update("1234", encoded);
+        assertThat(testObject.has("1234"), is(true));
+        assertThat(testObject.getUsed(), is((long) encoded.getBytes().length));
+        Asset hit = testObject.get("1234", null);
+        assertThat(hit, is(instanceOf(EncodedAssetImpl.class)));
+        assertThat(hit, is(not(sameInstance((Asset) encoded))));
+        assertThat(((EncodedAssetImpl) hit).isDecoded(), is(false));
+        assertThat(hit, is(equalTo((Asset) encoded)));
+        assertThat(((BufferedImage) hit.getMain()).getRGB(19, 9), is(0xff123456));
+        assertThat(testObject.get("1234", null), is(not(sameInstance(hit))));
+        assertThat(encoded.isDecoded(), is(false));
+    }
+
+    @Test
+    public void testNotCached() {
+        testObject.update("1234", new AssetImpl(new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB)));
+        assertThat(testObject.has("1234"), is(false));
+        encoded.setFormat("jpeg"); // would have to be encoded again
+        testObject.update("1234", encoded);
+        assertThat(testObject.has("1234"), is(false));
+        assertThat(testObject.canCreate(BufferedImage.class), is(false));
+    }
+
+    @Test
+    public void testEviction() {
+        byte[] bytes = new byte[400 * 1024];
+        for (String id : new String[] { "a", "b" })
+            testObject.update(id, new EncodedAssetImpl(bytes, "png"));
+        testObject.get("a", null); // a is used more recently than b
+        testObject.update("c", new EncodedAssetImpl(bytes, "png"));
+        assertThat(testObject.has("a"), is(true));
+        assertThat(testObject.has("b"), is(false));
+        assertThat(testObject.has("c"), is(true));
+        assertThat(testObject.getUsed(), is(2 * 400 * 1024L));
+
+        testObject.update("a~mip1", encoded);
+        testObject.removeVariants("a");
+        assertThat(testObject.has("a~mip1"), is(false));
+        assertThat(testObject.remove("a"), is(true));
+        assertThat(testObject.remove("a"), is(false));
+        testObject.clear();
+        assertThat(testObject.getUsed(), is(0L));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.supplier.DiskCacheAssetSupplier;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EncodedAssetImplTest extends TestConstants {
+    private byte[] png;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        InputStream input = EncodedAssetImplTest.class.getClassLoader().getResourceAsStream(TEST_IMAGE);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int b = input.read(); b != -1; b = input.read())
+            output.write(b);
+        input.close();
+        png = output.toByteArray();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File dir = new File(USER_DIR + TEST_DIR);
+        for (File rm : dir.listFiles())
+            rm.delete();
+    }
+
+    @Test
+    public void testLazyDecode() {
+        EncodedAssetImpl asset = new EncodedAssetImpl(png, "png");
+        assertThat(asset.isDecoded(), is(false));
+        assertThat(asset.getType(), is(equalTo((Object) BufferedImage.class)));
+        assertThat(asset.isDecoded(), is(false));
+        Object main = asset.getMain();
+        assertThat(main, is(instanceOf(BufferedImage.class)));
+        assertThat(asset.isDecoded(), is(true));
+        assertThat(asset.getMain(), is(sameInstance(main)));
+    }
+
+    @Test
+    public void testCorrupt() {
+        EncodedAssetImpl asset = new EncodedAssetImpl(new byte[] { 1, 2, 3 }, "png");
+        assertThat(asset.getMain(), is(nullValue()));
+        assertThat(asset.isDecoded(), is(true));
+    }
+
+    @Test
+    public void testReadCopyWithoutDecode() throws Exception {
+        FileOutputStream image = new FileOutputStream(USER_DIR + TEST_DIR + TEST_IMAGE);
+        image.write(png);
+        image.close();
+        PrintStream index = new PrintStream(new FileOutputStream(USER_DIR + TEST_DIR + "index"));
+        index.println(MY_ID + "=" + TEST_IMAGE);
+        index.close();
+        FileAssetSupplier supplier = new FileAssetSupplier(AssetManagerImpl.getTotalProperties(null), USER_DIR + TEST_DIR);
+
+        Asset asset = supplier.get(MY_ID, null);
+        assertThat(asset, is(instanceOf(EncodedAssetImpl.class)));
+        assertThat(asset.getFormat(), is("png"));
+        DiskCacheAssetSupplier cache = new DiskCacheAssetSupplier(AssetManagerImpl.getTotalProperties(null));
+        cache.update(MY_ID, asset);
+        String id = supplier.create(asset);
+        assertThat(((EncodedAssetImpl) asset).isDecoded(), is(false));
+
+        EncodedAssetImpl copy = (EncodedAssetImpl) supplier.get(id, null);
+        assertThat(copy.getBytes(), is(equalTo(png)));
+        assertThat(copy, is(equalTo(asset)));
+        assertThat(cache.remove(MY_ID), is(true));
+    }
+}
@@ -20,7 +20,15 @@ import static org.junit.Assert.assertThat;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -28,8 +36,11 @@ import javax.imageio.ImageIO;
 
 import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetSupplier;
 import net.rptools.asset.intern.AssetImpl;
 import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.AbandonableChannel;
+import net.rptools.asset.intern.supplier.ChangingAssetSupplier;
 import net.rptools.asset.intern.supplier.FileAssetSupplier;
 
 import org.junit.*;
@@ -87,6 +98,55 @@ public class FileAssetSupplierTest extends TestConstants {
         verifyIndexEmpty();
     }
 
+    @Test
+    public void testUpdateUnwritable() throws IOException {
+        // No writer takes alpha to jpeg
+        AssetImpl asset = new AssetImpl(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB_PRE));
+        asset.setFormat("jpeg");
+        testObject.update("unwritable", asset);
+        assertThat(testObject.has("unwritable"), is(false));
+        assertThat(new File(USER_DIR + TEST_DIR + "unwritable").exists(), is(false));
+        assertThat(testObject.create(asset), is(nullValue()));
+        verifyIndexEmpty();
+    }
+
+    @Test
+    public void testJpegRoundTrip() throws IOException {
+        AssetImpl asset = new AssetImpl(new BufferedImage(8, 6, BufferedImage.TYPE_INT_RGB));
+        asset.setFormat("jpeg");
+        testObject.update("jpeg", asset);
+        // Decoded and written again, as derived images are
+        Asset read = testObject.get("jpeg", null);
+        AssetImpl copy = new AssetImpl(read.getMain());
+        copy.setFormat("jpeg");
+        testObject.update("copy", copy);
+        assertThat(new File(USER_DIR + TEST_DIR + "copy").length(), is(greaterThan(0L)));
+        BufferedImage saved = (BufferedImage) testObject.get("copy", null).getMain();
+        assertThat(saved.getWidth(), is(8));
+        assertThat(saved.getHeight(), is(6));
+    }
+
+    @Test
+    public void testOpenWrite() throws IOException {
+        byte[] bytes = Files.readAllBytes(example.toPath());
+        WritableByteChannel channel = testObject.openWrite("written");
+        channel.write(ByteBuffer.wrap(bytes, 0, 100));
+        // Indexed only once complete
+        assertThat(testObject.has("written"), is(false));
+        ((AbandonableChannel) channel).abandon();
+        assertThat(testObject.has("written"), is(false));
+        assertThat(new File(USER_DIR + TEST_DIR + "written").exists(), is(false));
+        assertThat(new File(USER_DIR + TEST_DIR).list(), is(arrayContainingInAnyOrder("index", TEST_IMAGE)));
+
+        channel = testObject.openWrite("written");
+        channel.write(ByteBuffer.wrap(bytes));
+        channel.close();
+        assertThat(testObject.has("written"), is(true));
+        assertThat(Files.readAllBytes(new File(USER_DIR + TEST_DIR + "written").toPath()), is(bytes));
+        assertThat(testObject.remove("written"), is(true));
+        verifyIndexEmpty();
+    }
+
     @Test
     public void testCreateDuplicateDelete() throws IOException {
         BufferedImage asset = ImageIO.read(example);
@@ -122,6 +182,61 @@ public class FileAssetSupplierTest extends TestConstants {
         });
         assertThat(latch.await(1, TimeUnit.SECONDS), is(true));
     }
+
+    @Test
+    public void testWatch() throws Exception {
+        Properties properties = AssetManagerImpl.getTotalProperties(null);
+        properties.setProperty(FileAssetSupplier.class.getSimpleName() + ".watch", "true");
+        properties.setProperty(FileAssetSupplier.class.getSimpleName() + ".debounce", "50");
+        FileAssetSupplier watched = new FileAssetSupplier(properties, USER_DIR + TEST_DIR);
+        final BlockingQueue<Collection<String>> changes = new LinkedBlockingQueue<Collection<String>>();
+        watched.setChangeListener(new ChangingAssetSupplier.ChangeListener() {
+            @Override
+            public void changed(AssetSupplier supplier, Collection<String> ids) {
+                changes.add(ids);
+            }
+        });
+        try {
+            // New file
+            File dropped = new File(USER_DIR + TEST_DIR + "dropped.png");
+            Files.copy(example.toPath(), dropped.toPath());
+            awaitHas(watched, "dropped.png", true);
+            assertThat(watched.get("dropped.png", null).getMain(), is(notNullValue()));
+
+            // Modified file
+            Files.copy(dropped.toPath(), example.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            assertThat(changes.poll(5, TimeUnit.SECONDS), contains("1234"));
+
+            // Deleted file
+            assertThat(dropped.delete(), is(true));
+            awaitHas(watched, "dropped.png", false);
+            assertThat(changes.poll(5, TimeUnit.SECONDS), contains("dropped.png"));
+
+            // Own writes are no changes
+            watched.update("1234", new AssetImpl(ImageIO.read(example)));
+            assertThat(changes.poll(500, TimeUnit.MILLISECONDS), is(nullValue()));
+
+            // Replaced index
+            File index = new File(USER_DIR + TEST_DIR + "index.new");
+            PrintStream output = new PrintStream(new FileOutputStream(index));
+            output.println("5678=" + TEST_IMAGE);
+            output.close();
+            Files.move(index.toPath(), new File(USER_DIR + TEST_DIR + "index").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            awaitHas(watched, "5678", true);
+            assertThat(watched.has("1234"), is(false));
+            assertThat(changes.poll(5, TimeUnit.SECONDS), contains("1234"));
+        }
+        finally {
+            watched.close();
+        }
+    }
+
+    private static void awaitHas(FileAssetSupplier supplier, String id, boolean expected) throws InterruptedException {
+        for (int i = 0; i < 100 && supplier.has(id) != expected; i++)
+            Thread.sleep(50);
+        assertThat(supplier.has(id), is(expected));
+    }
+
     // Further method tests are identical to Http and handled there.
 
     private static void verifyIndexEmpty() {
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.easymock.EasyMock.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetManager;
+import net.rptools.asset.AssetManagerFactory;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.ImageDecoder;
+import net.rptools.asset.intern.supplier.ChangingAssetSupplier;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+public class FlightRecorderTest {
+    private final static String ID = "jfr-test";
+
+    @Test
+    public void testLoadEvents() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 3, BufferedImage.TYPE_INT_ARGB), "png", png);
+        final Asset encoded = new EncodedAssetImpl(png.toByteArray(), "png");
+
+        AssetManager testObject = AssetManagerFactory.getInstance(null);
+        FileAssetSupplier supplier = createMock(FileAssetSupplier.class);
+        expect(supplier.getPriority()).andReturn(45).anyTimes();
+        expect(supplier.has(ID)).andReturn(true).anyTimes();
+        supplier.setChangeListener(anyObject(ChangingAssetSupplier.ChangeListener.class));
+        expectLastCall().anyTimes();
+        expect(supplier.get(eq(ID), anyObject(AssetListener.class))).andAnswer(new IAnswer<Asset>() {
+            @Override
+            public Asset answer() throws Throwable {
+                ((AssetListener) getCurrentArguments()[1]).notify(ID, encoded);
+                return encoded;
+            }
+        });
+        replay(supplier);
+        testObject.registerAssetSupplier(supplier);
+
+        Recording recording = new Recording();
+        Path file = Files.createTempFile("asset", ".jfr");
+        try {
+            for (String name : new String[] { "Lookup", "SupplierSelected", "SupplierIO", "Decode", "ListenerCallback" })
+                recording.enable("net.rptools.asset." + name).withThreshold(Duration.ZERO);
+            recording.start();
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            testObject.getAssetAsync(ID, new AssetListener() {
+                @Override
+                public void notify(String id, Asset obj) {
+                    latch.countDown();
+                }
+                @Override
+                public void notifyPartial(String id, double completed) throws TimeoutException {
+                }
+            }, false);
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+            ImageDecoder.decode(png.toByteArray());
+
+            recording.stop();
+            recording.dump(file);
+            Map<String, RecordedEvent> events = new HashMap<String, RecordedEvent>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String name = event.getEventType().getName();
+                if (name.startsWith("net.rptools.asset.") && (ID.equals(event.getString("id")) || name.endsWith("Decode")))
+                    events.put(name, event);
+            }
+
+            RecordedEvent lookup = events.get("net.rptools.asset.Lookup");
+            assertThat(lookup, is(notNullValue()));
+            assertThat(lookup.getString("outcome"), is("hit"));
+            assertThat(lookup.getLong("bytes"), is((long) png.size()));
+            RecordedEvent selected = events.get("net.rptools.asset.SupplierSelected");
+            assertThat(selected.getString("supplier"), containsString("-45"));
+            RecordedEvent io = events.get("net.rptools.asset.SupplierIO");
+            assertThat(io.getString("operation"), is("get"));
+            assertThat(io.getLong("bytes"), is((long) png.size()));
+            assertThat(events.get("net.rptools.asset.ListenerCallback"), is(notNullValue()));
+            RecordedEvent decode = events.get("net.rptools.asset.Decode");
+            assertThat(decode.getString("format"), is("png"));
+            assertThat(decode.getInt("width"), is(4));
+        }
+        finally {
+            recording.close();
+            Files.delete(file);
+            testObject.deregisterAssetSupplier(supplier);
+        }
+        verify(supplier);
+    }
+}
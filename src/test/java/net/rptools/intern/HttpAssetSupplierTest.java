@@ -21,14 +21,22 @@ import static org.junit.Assert.assertThat;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
 
+import net.rptools.asset.Asset;
 import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetRequest;
+import net.rptools.asset.ProgressiveAssetListener;
 import net.rptools.asset.intern.AssetImpl;
 import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.RequestContext;
 import net.rptools.asset.intern.supplier.HttpAssetSupplier;
 
 import org.junit.After;
@@ -91,6 +99,56 @@ public class HttpAssetSupplierTest extends TestConstants {
         verify(listener);
     }
 
+    @Test
+    public void testGetDeadline() {
+        // The test server needs more than half a second for the image
+        AssetRequest request = new AssetRequest(100);
+        long start = System.currentTimeMillis();
+        RequestContext.Scope scope = RequestContext.enter(request);
+        Asset result;
+        try {
+            result = testObject.get(MY_ID, null);
+        }
+        finally {
+            scope.exit();
+        }
+        assertThat(result.getMain(), is(nullValue()));
+        assertThat(System.currentTimeMillis() - start, is(lessThan(500L)));
+    }
+
+    @Test
+    public void testGetProgressive() throws IOException {
+        // The test server sends the image slowly, so rows arrive over time
+        BufferedImage img = ImageIO.read(ZipFileAssetSupplierTest.class.getClassLoader().getResourceAsStream(TEST_IMAGE));
+        final List<BufferedImage> snapshots = Collections.synchronizedList(new ArrayList<BufferedImage>());
+        final Asset[] notified = new Asset[1];
+        ProgressiveAssetListener listener = new ProgressiveAssetListener() {
+            @Override
+            public void notifyImage(String id, BufferedImage image) {
+                snapshots.add(image);
+            }
+
+            @Override
+            public void notify(String id, Asset obj) {
+                notified[0] = obj;
+            }
+
+            @Override
+            public void notifyPartial(String id, double completed) {
+            }
+        };
+        Asset asset = testObject.get(MY_ID, listener);
+
+        assertThat(asset, is(instanceOf(EncodedAssetImpl.class)));
+        assertThat(((EncodedAssetImpl) asset).isDecoded(), is(true));
+        assertThat(((EncodedAssetImpl) asset).getEncodedFormat(), is("png"));
+        assertThat(((BufferedImage) asset.getMain()).getHeight(), is(img.getHeight()));
+        assertThat(notified[0], is(sameInstance(asset)));
+        assertThat(snapshots, is(not(empty())));
+        assertThat(snapshots.get(0).getWidth(), is(img.getWidth()));
+        assertThat(snapshots.get(0), is(not(sameInstance(asset.getMain()))));
+    }
+
     @Test
     public void testGetAsyncAbort() throws TimeoutException, IOException {
         AssetListener listener = createMock("Listener", AssetListener.class);
@@ -0,0 +1,199 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.AssetIndex;
+import net.rptools.asset.intern.supplier.ChangingAssetSupplier;
+import net.rptools.asset.intern.supplier.HttpAssetSupplier;
+import net.rptools.asset.intern.supplier.IndexPublisher;
+
+import org.eclipse.jetty.server.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpIndexSyncTest extends TestConstants {
+    private final static String PUBLISHED = ".maptool" + SEP + "published" + SEP;
+
+    private final static String CACHE = ".maptool" + SEP + "indexcache" + SEP;
+
+    private File directory;
+
+    private Server server;
+
+    private String url;
+
+    private Map<String, String> entries;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        directory = new File(USER_DIR + PUBLISHED);
+        directory.mkdirs();
+        entries = new HashMap<String, String>();
+        for (int i = 0; i < 1000; i++)
+            entries.put("id" + i, "file" + i + ".png");
+        IndexPublisher.publish(directory, AssetIndex.of(entries), 10);
+        server = HttpTestServer.startShaped(0, directory, new HttpTestServer.Shaping(0, 0, 0, 0));
+        url = "http://localhost:" + HttpTestServer.getPort(server) + "/";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null)
+            server.stop();
+        for (String path : new String[] { PUBLISHED + "index.delta", PUBLISHED, CACHE }) {
+            File dir = new File(USER_DIR + path);
+            if (dir.exists())
+                for (File rm : dir.listFiles())
+                    rm.delete();
+        }
+    }
+
+    @Test
+    public void testPublish() throws Exception {
+        assertThat(read(IndexPublisher.VERSION), is("1"));
+        // Unchanged index, no new version
+        assertThat(IndexPublisher.publish(directory, AssetIndex.of(entries), 10), is(1L));
+
+        entries.put("id0", "changed.png");
+        entries.remove("id1");
+        entries.put("new", "new.png");
+        assertThat(IndexPublisher.publish(directory, AssetIndex.of(entries), 10), is(2L));
+        assertThat(read(IndexPublisher.VERSION), is("2"));
+        Properties delta = new Properties();
+        InputStream stream = new FileInputStream(new File(directory, IndexPublisher.DELTAS + SEP + "2"));
+        try {
+            delta.load(stream);
+        }
+        finally {
+            stream.close();
+        }
+        assertThat(delta.size(), is(3));
+        assertThat(delta.getProperty("id0"), is("changed.png"));
+        assertThat(delta.getProperty("id1"), is(""));
+        assertThat(delta.getProperty("new"), is("new.png"));
+
+        // Only the latest deltas are kept
+        for (int i = 0; i < 3; i++) {
+            entries.put("more" + i, "more.png");
+            IndexPublisher.publish(directory, AssetIndex.of(entries), 2);
+        }
+        assertThat(new File(directory, IndexPublisher.DELTAS).list(), is(arrayContainingInAnyOrder("4", "5")));
+    }
+
+    @Test
+    public void testDeltas() throws Exception {
+        HttpAssetSupplier testObject = new HttpAssetSupplier(AssetManagerImpl.getTotalProperties(null), url);
+        assertThat(testObject.getIndexVersion(), is(1L));
+        assertThat(testObject.has("id999"), is(true));
+        final BlockingQueue<Collection<String>> changes = new LinkedBlockingQueue<Collection<String>>();
+        testObject.setChangeListener(new ChangingAssetSupplier.ChangeListener() {
+            @Override
+            public void changed(AssetSupplier supplier, Collection<String> ids) {
+                changes.add(ids);
+            }
+        });
+        assertThat(testObject.synchronizeIndex(), is(0));
+
+        entries.put("id0", "changed.png");
+        IndexPublisher.publish(directory, AssetIndex.of(entries), 10);
+        entries.remove("id1");
+        entries.put("new", "new.png");
+        IndexPublisher.publish(directory, AssetIndex.of(entries), 10);
+        // Without the full index, only deltas can bring it up to date
+        File index = new File(directory, IndexPublisher.INDEX);
+        File moved = new File(directory, "index.moved");
+        assertThat(index.renameTo(moved), is(true));
+
+        assertThat(testObject.synchronizeIndex(), is(3));
+        assertThat(testObject.getIndexVersion(), is(3L));
+        assertThat(testObject.has("id1"), is(false));
+        assertThat(testObject.has("new"), is(true));
+        assertThat(changes.poll(), containsInAnyOrder("id0", "id1", "new"));
+        assertThat(moved.renameTo(index), is(true));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        new HttpAssetSupplier(AssetManagerImpl.getTotalProperties(null), url);
+        server.stop();
+
+        // Server down, the cached index is used
+        HttpAssetSupplier testObject = new HttpAssetSupplier(AssetManagerImpl.getTotalProperties(null), url);
+        assertThat(testObject.getIndexVersion(), is(1L));
+        assertThat(testObject.has("id999"), is(true));
+
+        // Deltas gone, the full index is fetched
+        for (int i = 0; i < 3; i++) {
+            entries.put("more" + i, "more.png");
+            IndexPublisher.publish(directory, AssetIndex.of(entries), 1);
+        }
+        server = HttpTestServer.startShaped(Integer.parseInt(url.replaceAll(".*:([0-9]+)/", "$1")), directory,
+            new HttpTestServer.Shaping(0, 0, 0, 0));
+        assertThat(testObject.synchronizeIndex(), is(3));
+        assertThat(testObject.getIndexVersion(), is(4L));
+        assertThat(testObject.has("more2"), is(true));
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        Properties properties = AssetManagerImpl.getTotalProperties(null);
+        properties.setProperty(HttpAssetSupplier.class.getSimpleName() + ".refresh", "1");
+        HttpAssetSupplier testObject = new HttpAssetSupplier(properties, url);
+        try {
+            entries.put("new", "new.png");
+            IndexPublisher.publish(directory, AssetIndex.of(entries), 10);
+            for (int i = 0; i < 100 && !testObject.has("new"); i++)
+                Thread.sleep(50);
+            assertThat(testObject.has("new"), is(true));
+            assertThat(testObject.getIndexVersion(), is(2L));
+        }
+        finally {
+            testObject.close();
+        }
+    }
+
+    @Test
+    public void testUnversioned() throws Exception {
+        new File(directory, IndexPublisher.VERSION).delete();
+        HttpAssetSupplier testObject = new HttpAssetSupplier(AssetManagerImpl.getTotalProperties(null), url);
+        assertThat(testObject.getIndexVersion(), is(-1L));
+        assertThat(testObject.has("id999"), is(true));
+        assertThat(new File(USER_DIR + CACHE).list(), is(emptyArray()));
+    }
+
+    private String read(String name) throws Exception {
+        return new String(Files.readAllBytes(new File(directory, name).toPath()), StandardCharsets.ISO_8859_1).trim();
+    }
+}
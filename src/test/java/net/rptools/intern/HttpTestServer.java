@@ -2,8 +2,11 @@ package net.rptools.intern;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.imageio.ImageIO;
 import javax.servlet.ServletException;
@@ -12,6 +15,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 public class HttpTestServer {
@@ -33,6 +37,44 @@ public class HttpTestServer {
             server.stop();
     }
 
+    /**
+     * Start a separate server for the files of a directory, shaping its
+     * responses. The index is never failed, so suppliers can start.
+     * @param port port to listen on; 0 for any
+     */
+    public static Server startShaped(int port, File directory, Shaping shaping) throws Exception {
+        Server shaped = new Server(port);
+        shaped.setHandler(new ShapingHandler(directory, shaping));
+        shaped.start();
+        return shaped;
+    }
+
+    public static int getPort(Server server) {
+        return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    /**
+     * Response shaping: latency before the headers plus a uniform jitter
+     * (millis), a bandwidth cap (bytes per second; 0 for none) and the
+     * ratio of requests answered with 503.
+     */
+    public static class Shaping {
+        private final long latency;
+        private final long jitter;
+        private final long bandwidth;
+        private final double errorRate;
+        public Shaping(long latency, long jitter, long bandwidth, double errorRate) {
+            this.latency = latency;
+            this.jitter = jitter;
+            this.bandwidth = bandwidth;
+            this.errorRate = errorRate;
+        }
+        @Override
+        public String toString() {
+            return "latency=" + latency + "ms jitter=" + jitter + "ms bandwidth=" + bandwidth + "B/s errorRate=" + errorRate;
+        }
+    }
+
     private static class TestHandler extends AbstractHandler {
         public void handle(String target, Request baseRequest,HttpServletRequest request,HttpServletResponse response) throws IOException, ServletException {
             if (request.getRequestURL().toString().equals("http://localhost:8080/index")) {
@@ -54,6 +96,59 @@ public class HttpTestServer {
             }
         }
     }
+    private static class ShapingHandler extends AbstractHandler {
+        private final File directory;
+        private final Shaping shaping;
+        private ShapingHandler(File directory, Shaping shaping) {
+            this.directory = directory;
+            this.shaping = shaping;
+        }
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+            baseRequest.setHandled(true);
+            File file = new File(directory, target.substring(1));
+            if (!file.isFile()) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            sleep(shaping.latency + (shaping.jitter > 0 ? random.nextLong(shaping.jitter + 1) : 0));
+            if (!target.equals("/index") && random.nextDouble() < shaping.errorRate) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+            response.setContentType(target.equals("/index") ? "text/plain" : "image/png");
+            response.setContentLengthLong(file.length());
+            response.setStatus(HttpServletResponse.SC_OK);
+            OutputStream output = response.getOutputStream();
+            InputStream input = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[4096];
+                long start = System.nanoTime();
+                long written = 0;
+                for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
+                    output.write(buffer, 0, length);
+                    written += length;
+                    if (shaping.bandwidth > 0) {
+                        output.flush();
+                        sleep(written * 1000 / shaping.bandwidth - (System.nanoTime() - start) / 1000000);
+                    }
+                }
+            }
+            finally {
+                input.close();
+            }
+        }
+        private static void sleep(long millis) {
+            if (millis <= 0)
+                return;
+            try {
+                Thread.sleep(millis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
     private static class SlowOutputStream extends OutputStream {
         private OutputStream os;
         private int sleeper = 0;
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import net.rptools.asset.ReadOptions;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.ImageDecoder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageDecoderTest {
+    private byte[] png;
+
+    @Before
+    public void setUp() throws Exception {
+        BufferedImage img = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+        img.setRGB(39, 29, 0xff102030);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", output);
+        png = output.toByteArray();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ImageDecoder.configure(AssetManagerImpl.getTotalProperties(null));
+    }
+
+    @Test
+    public void testPixelType() throws IOException {
+        configure("none");
+        assertThat(ImageDecoder.getPixelType(), is(BufferedImage.TYPE_CUSTOM));
+        assertThat(ImageDecoder.decode(png).getType(), is(BufferedImage.TYPE_3BYTE_BGR));
+
+        configure("INT_ARGB_PRE");
+        assertThat(ImageDecoder.getPixelType(), is(BufferedImage.TYPE_INT_ARGB_PRE));
+        // Opaque images stay opaque
+        BufferedImage img = ImageDecoder.decode(png, "png", null);
+        assertThat(img.getType(), is(BufferedImage.TYPE_INT_RGB));
+        assertThat(img.getRGB(39, 29), is(0xff102030));
+        BufferedImage reduced = ImageDecoder.decode(png, ReadOptions.thumbnail(20, 15));
+        assertThat(reduced.getType(), is(BufferedImage.TYPE_INT_RGB));
+        assertThat(reduced.getWidth(), is(20));
+        BufferedImage translucent = new BufferedImage(4, 4, BufferedImage.TYPE_4BYTE_ABGR);
+        assertThat(ImageDecoder.toPixelType(translucent).getType(), is(BufferedImage.TYPE_INT_ARGB_PRE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPixelType() throws IOException {
+        configure("INT_ARGB_SOMETHING");
+    }
+
+    @Test
+    public void testReaderReuse() throws IOException {
+        // The same reader serves consecutive decodes of this thread
+        for (int i = 0; i < 3; i++)
+            assertThat(ImageDecoder.decode(png).getRGB(39, 29), is(0xff102030));
+        assertThat(ImageDecoder.decode(new byte[] { 1, 2, 3 }), is(nullValue()));
+        assertThat(ImageDecoder.decode(png, "unknown", null), is(nullValue()));
+        assertThat(ImageDecoder.getSize(png).width, is(40));
+    }
+
+    @Test
+    public void testDecodeInPool() {
+        final String[] thread = new String[1];
+        EncodedAssetImpl asset = new EncodedAssetImpl(png, "png") {
+            @Override
+            public Object getMain() {
+                if (!isDecoded())
+                    thread[0] = Thread.currentThread().getName();
+                return super.getMain();
+            }
+        };
+        ImageDecoder.decodeInPool(asset);
+        assertThat(asset.isDecoded(), is(true));
+        assertThat(thread[0], startsWith("ImageDecoder-"));
+        ImageDecoder.decodeInPool(null); // ignored
+    }
+
+    private static void configure(String pixelType) throws IOException {
+        Properties override = new Properties();
+        override.setProperty(ImageDecoder.class.getSimpleName() + ".pixelType", pixelType);
+        ImageDecoder.configure(AssetManagerImpl.getTotalProperties(override));
+    }
+}
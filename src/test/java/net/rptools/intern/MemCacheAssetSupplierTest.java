@@ -19,6 +19,8 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 
 import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Properties;
 
 import net.rptools.asset.AssetListener;
 import net.rptools.asset.intern.AssetImpl;
@@ -43,6 +45,21 @@ public class MemCacheAssetSupplierTest {
         assertThat(MemCacheAssetSupplier.DEFAULT_PRIORITY, is(not(equalTo(testObject.getPriority()))));
     }
     
+    @Test
+    public void testHitsBounded() throws Exception {
+        Properties override = new Properties();
+        override.setProperty("MemCacheAssetSupplier.maxHits", "2");
+        testObject = new MemCacheAssetSupplier(AssetManagerImpl.getTotalProperties(override));
+        AssetImpl asset = new AssetImpl(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY));
+        for (String id : new String[] { "a", "b", "c", "a~s1x1" }) {
+            testObject.update(id, asset);
+            testObject.get(id, null);
+        }
+        testObject.get("a", null);
+        // Variants are not counted, and a third id halves the counters
+        assertThat(testObject.getHottest(5), is(equalTo(Collections.singletonList("a"))));
+    }
+
     @Test
     public void testCacheRemove() {
         BufferedImage inAsset = new BufferedImage(1, 2, BufferedImage.TYPE_BYTE_GRAY);
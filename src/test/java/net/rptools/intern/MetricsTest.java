@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.easymock.EasyMock.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.LatencyHistogram;
+import net.rptools.asset.intern.Metrics;
+import net.rptools.asset.intern.SupplierMetrics;
+
+import org.junit.Test;
+
+public class MetricsTest {
+    @Test
+    public void testHistogram() {
+        LatencyHistogram testObject = new LatencyHistogram();
+        assertThat(testObject.getPercentile(99), is(0L));
+        for (long i = 1; i <= 1000; i++)
+            testObject.record(i * 1000);
+        assertThat(testObject.getCount(), is(1000L));
+        assertThat(testObject.getMax(), is(1000000L));
+        assertThat(testObject.getMean(), is(500500L));
+        // Relative error below 1/16
+        assertThat((double) testObject.getPercentile(50), is(closeTo(500000, 500000 / 16)));
+        assertThat((double) testObject.getPercentile(99), is(closeTo(990000, 990000 / 16)));
+        assertThat(testObject.getPercentile(100), is(1000000L));
+    }
+
+    @Test
+    public void testSupplierMetrics() throws Exception {
+        Asset encoded = new EncodedAssetImpl(new byte[100], "png");
+        AssetSupplier supplier = createMock(AssetSupplier.class);
+        expect(supplier.getPriority()).andReturn(4711).anyTimes();
+        expect(supplier.has("1")).andReturn(true);
+        expect(supplier.has("2")).andReturn(false);
+        expect(supplier.get("1", null)).andReturn(encoded);
+        expect(supplier.get("2", null)).andReturn(new AssetImpl(null));
+        supplier.update("1", encoded);
+        expect(supplier.remove("1")).andReturn(true);
+        replay(supplier);
+
+        assertThat(Metrics.has(supplier, "1"), is(true));
+        assertThat(Metrics.has(supplier, "2"), is(false));
+        assertThat(Metrics.get(supplier, "1", null), is(sameInstance(encoded)));
+        assertThat(Metrics.get(supplier, "2", null).getMain(), is(nullValue()));
+        Metrics.update(supplier, "1", encoded);
+        assertThat(Metrics.remove(supplier, "1"), is(true));
+        verify(supplier);
+
+        SupplierMetrics metrics = Metrics.getInstance().getMetrics(supplier);
+        Map<String, Long> snapshot = metrics.getSnapshot();
+        assertThat(snapshot.get("has.hits"), is(1L));
+        assertThat(snapshot.get("has.misses"), is(1L));
+        assertThat(snapshot.get("get.hits"), is(1L));
+        assertThat(snapshot.get("get.misses"), is(1L));
+        assertThat(snapshot.get("update.hits"), is(1L));
+        assertThat(snapshot.get("remove.hits"), is(1L));
+        assertThat(snapshot.get("bytesRead"), is(100L));
+        assertThat(snapshot.get("bytesWritten"), is(100L));
+        assertThat(snapshot.get("inFlight"), is(0L));
+        assertThat(metrics.getLatencies(SupplierMetrics.Operation.GET).getCount(), is(2L));
+
+        // JMX view
+        Properties properties = new Properties();
+        properties.setProperty("Metrics.jmx", "true");
+        Metrics.configure(properties);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("net.rptools.asset:type=Supplier,name=" + ObjectName.quote(metrics.getName()));
+        assertThat((Long) server.getAttribute(name, "GetHits"), is(1L));
+        assertThat((Long) server.getAttribute(name, "BytesRead"), is(100L));
+        Metrics.getInstance().remove(supplier);
+        assertThat(server.isRegistered(name), is(false));
+    }
+
+    @Test
+    public void testUniqueNames() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("Metrics.jmx", "true");
+        Metrics.configure(properties);
+        AssetSupplier first = createMock(AssetSupplier.class);
+        AssetSupplier second = createMock(AssetSupplier.class);
+        expect(first.getPriority()).andReturn(4712).anyTimes();
+        expect(second.getPriority()).andReturn(4712).anyTimes();
+        replay(first, second);
+
+        String firstName = Metrics.getInstance().getMetrics(first).getName();
+        String secondName = Metrics.getInstance().getMetrics(second).getName();
+        assertThat(firstName, is(not(equalTo(secondName))));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName secondObject = new ObjectName("net.rptools.asset:type=Supplier,name=" + ObjectName.quote(secondName));
+        assertThat(server.isRegistered(secondObject), is(true));
+        Metrics.getInstance().remove(first);
+        assertThat(server.isRegistered(secondObject), is(true));
+        Metrics.getInstance().remove(second);
+        assertThat(server.isRegistered(secondObject), is(false));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Properties;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetManager;
+import net.rptools.asset.AssetManagerFactory;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+import net.rptools.asset.intern.supplier.MipmapBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MipmapBuilderTest extends TestConstants {
+    private FileAssetSupplier testObject;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        new PrintStream(new FileOutputStream(USER_DIR + TEST_DIR + "index")).close(); // empty
+        Properties override = new Properties();
+        override.setProperty(MipmapBuilder.class.getSimpleName() + ".minSize", "64");
+        override.setProperty(MipmapBuilder.class.getSimpleName() + ".levelSize", "16");
+        testObject = new FileAssetSupplier(AssetManagerImpl.getTotalProperties(override), USER_DIR + TEST_DIR);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File rm : new File(USER_DIR + TEST_DIR).listFiles())
+            rm.delete();
+    }
+
+    @Test
+    public void testLevel() {
+        assertThat(MipmapBuilder.getLevel(1.5), is(0));
+        assertThat(MipmapBuilder.getLevel(1), is(0));
+        assertThat(MipmapBuilder.getLevel(0.6), is(0));
+        assertThat(MipmapBuilder.getLevel(0.5), is(1));
+        assertThat(MipmapBuilder.getLevel(0.3), is(1));
+        assertThat(MipmapBuilder.getLevel(0.25), is(2));
+        assertThat(MipmapBuilder.getLevelId("1234", 0), is("1234"));
+    }
+
+    @Test
+    public void testPyramid() throws Exception {
+        String id = testObject.create(new AssetImpl(new BufferedImage(128, 100, BufferedImage.TYPE_INT_ARGB)));
+        waitFor(MipmapBuilder.getLevelId(id, 3));
+        assertThat(getImage(MipmapBuilder.getLevelId(id, 1)).getWidth(), is(64));
+        assertThat(getImage(MipmapBuilder.getLevelId(id, 2)).getHeight(), is(25));
+        assertThat(getImage(MipmapBuilder.getLevelId(id, 3)).getWidth(), is(16));
+        assertThat(testObject.has(MipmapBuilder.getLevelId(id, 4)), is(false));
+
+        AssetManager manager = AssetManagerFactory.getInstance(null);
+        testObject.setPriority(43); // unique in the shared manager
+        manager.registerAssetSupplier(testObject);
+        try {
+            assertThat(((BufferedImage) manager.getAsset(id, 1.0, false).getMain()).getWidth(), is(128));
+            assertThat(((BufferedImage) manager.getAsset(id, 0.3, false).getMain()).getWidth(), is(64));
+            assertThat(((BufferedImage) manager.getAsset(id, 0.01, false).getMain()).getWidth(), is(16));
+        }
+        finally {
+            manager.deregisterAssetSupplier(testObject);
+        }
+
+        testObject.remove(id);
+        assertThat(testObject.has(MipmapBuilder.getLevelId(id, 1)), is(false));
+    }
+
+    @Test
+    public void testSmallImage() throws Exception {
+        String id = testObject.create(new AssetImpl(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB)));
+        String marker = testObject.create(new AssetImpl(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB)));
+        waitFor(MipmapBuilder.getLevelId(marker, 2)); // single builder thread
+        assertThat(testObject.has(MipmapBuilder.getLevelId(id, 1)), is(false));
+    }
+
+    private BufferedImage getImage(String id) {
+        Asset asset = testObject.get(id, null);
+        return (BufferedImage) asset.getMain();
+    }
+
+    private void waitFor(String id) throws InterruptedException {
+        for (int i = 0; i < 100 && !testObject.has(id); i++)
+            Thread.sleep(100);
+        assertThat(testObject.has(id), is(true));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.MultiZipAssetSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiZipAssetSupplierTest extends TestConstants {
+    private final static int PACKS = 5;
+
+    private MultiZipAssetSupplier testObject;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        new File(USER_DIR + TEST_DIR2).mkdirs();
+        List<String> prefixes = new ArrayList<String>();
+        for (int pack = 0; pack < PACKS; pack++) {
+            // Each pack overrides "shared", "own<pack>" is only in one
+            String prefix = TEST_DIR2 + "pack" + pack + ".zip";
+            writePack(new File(USER_DIR + prefix), pack + 1, "shared", "own" + pack);
+            prefixes.add(prefix);
+        }
+        Properties properties = AssetManagerImpl.getTotalProperties(null);
+        properties.setProperty(MultiZipAssetSupplier.class.getSimpleName() + ".openArchives", "2");
+        testObject = new MultiZipAssetSupplier(properties, prefixes);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testObject != null)
+            testObject.close();
+        File dir = new File(USER_DIR + TEST_DIR2);
+        if (dir.exists())
+            for (File rm : dir.listFiles())
+                rm.delete();
+    }
+
+    @Test
+    public void testMergedIndex() {
+        assertThat(testObject.getPackCount(), is(PACKS));
+        assertThat(testObject.canCreate(BufferedImage.class), is(false));
+        assertThat(testObject.canRemove("shared"), is(false));
+        assertThat(testObject.has("shared"), is(true));
+        assertThat(testObject.has("missing"), is(false));
+        // Opened lazily
+        assertThat(testObject.getOpenArchives(), is(0));
+        // The last pack wins
+        assertThat(getWidth("shared"), is(PACKS));
+        for (int pack = 0; pack < PACKS; pack++) {
+            assertThat(testObject.has("own" + pack), is(true));
+            assertThat(getWidth("own" + pack), is(pack + 1));
+            assertThat(testObject.getOpenArchives(), is(lessThanOrEqualTo(2)));
+        }
+    }
+
+    @Test
+    public void testOpenRead() throws IOException {
+        ReadableByteChannel first = testObject.openRead("own0");
+        ReadableByteChannel second = testObject.openRead("own1");
+        ReadableByteChannel third = testObject.openRead("own2");
+        // Archives in use are not closed
+        assertThat(testObject.getOpenArchives(), is(3));
+        assertThat(read(first), is(greaterThan(0)));
+        first.close();
+        second.close();
+        assertThat(testObject.getOpenArchives(), is(2));
+        assertThat(read(third), is(greaterThan(0)));
+        third.close();
+        assertThat(testObject.openRead("missing"), is(nullValue()));
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        ReadableByteChannel first = testObject.openRead("own0");
+        assertThat(getWidth("own1"), is(2));
+        assertThat(testObject.getOpenArchives(), is(2));
+        testObject.close();
+        // The archive in use is closed when its read ends
+        assertThat(testObject.getOpenArchives(), is(1));
+        assertThat(read(first), is(greaterThan(0)));
+        first.close();
+        assertThat(testObject.getOpenArchives(), is(0));
+        assertThat(getWidth("own2"), is(3));
+        assertThat(testObject.getOpenArchives(), is(0));
+    }
+
+    private int getWidth(String id) {
+        BufferedImage image = (BufferedImage) testObject.get(id, null).getMain();
+        return image.getWidth();
+    }
+
+    private static int read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        int total = 0;
+        for (int length = channel.read(buffer); length != -1; length = channel.read(buffer)) {
+            total += length;
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * Write a pack with images of the given width.
+     */
+    private static void writePack(File file, int width, String... ids) throws IOException {
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            PrintStream indexOutput = new PrintStream(index);
+            for (String id : ids) {
+                String name = id + ".png";
+                indexOutput.println(id + "=" + name);
+                output.putNextEntry(new ZipEntry(name));
+                ImageIO.write(new BufferedImage(width, 1, BufferedImage.TYPE_INT_ARGB), "png", output);
+                output.closeEntry();
+            }
+            indexOutput.close();
+            output.putNextEntry(new ZipEntry("index"));
+            output.write(index.toByteArray());
+            output.closeEntry();
+        }
+        finally {
+            output.close();
+        }
+    }
+}
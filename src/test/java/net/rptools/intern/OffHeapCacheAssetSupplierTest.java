@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Properties;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.OffHeapCacheAssetSupplier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapCacheAssetSupplierTest {
+    private OffHeapCacheAssetSupplier testObject;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties override = new Properties();
+        override.setProperty(OffHeapCacheAssetSupplier.class.getSimpleName() + ".megabytes", "2");
+        testObject = new OffHeapCacheAssetSupplier(AssetManagerImpl.getTotalProperties(override));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        verifyRoundTrip(BufferedImage.TYPE_INT_ARGB);
+        verifyRoundTrip(BufferedImage.TYPE_INT_RGB);
+        verifyRoundTrip(BufferedImage.TYPE_3BYTE_BGR);
+        verifyRoundTrip(BufferedImage.TYPE_4BYTE_ABGR);
+        verifyRoundTrip(BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    @Test
+    public void testConverted() {
+        byte[] palette = { 0, (byte) 255 };
+        BufferedImage img = new BufferedImage(70, 90, BufferedImage.TYPE_BYTE_INDEXED,
+            new IndexColorModel(1, 2, palette, palette, palette));
+        img.setRGB(69, 89, 0xffffffff);
+        testObject.update("1234", new AssetImpl(img));
+        BufferedImage copy = (BufferedImage) testObject.get("1234", null).getMain();
+        assertThat(copy.getType(), is(BufferedImage.TYPE_INT_ARGB));
+        assertThat(copy.getRGB(69, 89), is(0xffffffff));
+        assertThat(copy.getRGB(0, 0), is(0xff000000));
+    }
+
+    @Test
+    public void testSubimage() {
+        BufferedImage img = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(150, 120, 0x12345678);
+        testObject.update("1234", new AssetImpl(img.getSubimage(100, 100, 100, 100)));
+        BufferedImage copy = (BufferedImage) testObject.get("1234", null).getMain();
+        assertThat(copy.getWidth(), is(100));
+        assertThat(copy.getRGB(50, 20), is(0x12345678));
+    }
+
+    @Test
+    public void testEviction() {
+        // 640000 bytes each, three fit into 2 MB
+        for (String id : new String[] { "a", "b", "c" })
+            testObject.update(id, new AssetImpl(new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB)));
+        assertThat(testObject.getUsed(), is(3 * 640000L));
+        testObject.get("a", null); // a is used more recently than b
+        testObject.update("d", new AssetImpl(new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB)));
+        assertThat(testObject.has("a"), is(true));
+        assertThat(testObject.has("b"), is(false));
+        assertThat(testObject.has("c"), is(true));
+        assertThat(testObject.has("d"), is(true));
+
+        // Too large for the budget at all
+        testObject.update("e", new AssetImpl(new BufferedImage(1000, 1000, BufferedImage.TYPE_INT_ARGB)));
+        assertThat(testObject.has("e"), is(false));
+
+        testObject.update("a~mip1", new AssetImpl(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB)));
+        testObject.removeVariants("a");
+        assertThat(testObject.has("a~mip1"), is(false));
+        assertThat(testObject.remove("a"), is(true));
+        assertThat(testObject.remove("a"), is(false));
+        assertThat(testObject.getUsed(), is(2 * 640000L));
+        testObject.clear();
+        assertThat(testObject.getUsed(), is(0L));
+    }
+
+    private void verifyRoundTrip(int type) {
+        BufferedImage img = new BufferedImage(150, 130, type); // more than one chunk of rows
+        for (int y = 0; y < img.getHeight(); y++)
+            img.setRGB(y % img.getWidth(), y, 0xff000000 | (y * 1999));
+        Asset asset = new AssetImpl(img);
+        asset.setFormat("jpeg");
+        testObject.update("1234", asset);
+        Asset copy = testObject.get("1234", null);
+        assertThat(copy.getFormat(), is("jpeg"));
+        BufferedImage pixels = (BufferedImage) copy.getMain();
+        assertThat(pixels, is(not(sameInstance(img))));
+        assertThat(pixels.getType(), is(type));
+        for (int y = 0; y < img.getHeight(); y++)
+            for (int x = 0; x < img.getWidth(); x++)
+                assertThat(pixels.getRGB(x, y), is(img.getRGB(x, y)));
+    }
+}
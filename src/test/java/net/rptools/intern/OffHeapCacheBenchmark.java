@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.OffHeapCacheAssetSupplier;
+
+/**
+ * Compares garbage collection while decoded images are cached on the heap
+ * and off-heap. Not a unit test; run it with the same heap for both modes,
+ * e.g. java -Xmx1g -XX:MaxDirectMemorySize=1g ... OffHeapCacheBenchmark heap|offheap [images]
+ * @author username
+ */
+public class OffHeapCacheBenchmark {
+    /** Side of the cached images */
+    private final static int SIDE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        boolean offHeap = (args.length > 0 && "offheap".equals(args[0]));
+        int images = (args.length > 1 ? Integer.parseInt(args[1]) : 100);
+
+        List<Object> heap = new ArrayList<Object>();
+        AssetSupplier cache = null;
+        if (offHeap) {
+            Properties override = new Properties();
+            override.setProperty(OffHeapCacheAssetSupplier.class.getSimpleName() + ".megabytes",
+                Long.toString((long) images * SIDE * SIDE * 4 / (1 << 20) + 1));
+            cache = new OffHeapCacheAssetSupplier(AssetManagerImpl.getTotalProperties(override));
+        }
+        for (int i = 0; i < images; i++) {
+            BufferedImage img = new BufferedImage(SIDE, SIDE, BufferedImage.TYPE_INT_ARGB);
+            if (offHeap)
+                cache.update(Integer.toString(i), new AssetImpl(img));
+            else
+                heap.add(img);
+        }
+
+        long[] before = collections();
+        long start = System.currentTimeMillis();
+        long sink = 0;
+        for (int round = 0; round < 2000; round++) {
+            // Short lived garbage as produced during play, plus an occasional hit
+            byte[][] garbage = new byte[64][];
+            for (int i = 0; i < garbage.length; i++)
+                garbage[i] = new byte[16 * 1024];
+            sink += garbage[round % garbage.length].length;
+            if (offHeap && round % 100 == 0)
+                sink += ((BufferedImage) cache.get(Integer.toString(round % images), null).getMain()).getWidth();
+        }
+        long[] after = collections();
+        System.out.println((offHeap ? "off-heap" : "heap") + ": " + images + " images, "
+            + (after[0] - before[0]) + " collections, " + (after[1] - before[1]) + " ms in gc, "
+            + (System.currentTimeMillis() - start) + " ms total (" + sink + ", " + heap.size() + ")");
+    }
+
+    /** Collection count and time over all collectors */
+    private static long[] collections() {
+        long[] result = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result[0] += Math.max(0, gc.getCollectionCount());
+            result[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.ReadOptions;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.LatencyHistogram;
+import net.rptools.asset.intern.supplier.HttpAssetSupplier;
+
+import org.eclipse.jetty.server.Server;
+
+/**
+ * Soak and load test: clients replay a request mix against an
+ * AssetManagerImpl loading a generated campaign from a shaped HTTP server
+ * (see HttpTestServer.startShaped). Every few seconds and at the end it
+ * reports throughput, latency percentiles, failures, threads and heap.
+ * Throughput is per interval, percentiles are since the start.
+ * Headless and local only. Not a unit test; run it as
+ * java -Djava.awt.headless=true -Dsoak.clients=8 -Dsoak.assets=5000 ... SoakHarness
+ * or through SoakTest with -Dsoak=true. Settings are the soak.* system
+ * properties below.
+ * @author username
+ */
+public class SoakHarness {
+    /** Operations of the request mix */
+    enum Operation {
+        /** getAsset, decoded */
+        GET,
+        /** getAssetAsync, waiting for the listener */
+        ASYNC,
+        /** 64x64 thumbnail */
+        THUMBNAIL,
+        /** removeAsset, evicting the caches */
+        EVICT
+    }
+
+    /** Concurrent clients, each sending one request at a time */
+    final int clients = Integer.getInteger("soak.clients", 8);
+    /** Assets in the campaign */
+    final int assets = Integer.getInteger("soak.assets", 5000);
+    /** Side of the generated images */
+    final int size = Integer.getInteger("soak.size", 32);
+    /** Run time */
+    final int seconds = Integer.getInteger("soak.seconds", 60);
+    /** Report interval */
+    final int report = Integer.getInteger("soak.report", 10);
+    /** Share of requests going to the hottest fifth of the assets */
+    final double hot = Double.parseDouble(System.getProperty("soak.hot", "0.8"));
+    /** Weights of GET, ASYNC, THUMBNAIL, EVICT */
+    final String mix = System.getProperty("soak.mix", "60,25,10,5");
+    /** Whether loads fill the caches */
+    final boolean cache = Boolean.parseBoolean(System.getProperty("soak.cache", "true"));
+    /** Server shaping */
+    final HttpTestServer.Shaping shaping = new HttpTestServer.Shaping(
+        Long.getLong("soak.latency", 20), Long.getLong("soak.jitter", 30),
+        Long.getLong("soak.bandwidth", 0), Double.parseDouble(System.getProperty("soak.errorRate", "0.01")));
+
+    /** Latencies of all requests */
+    final LatencyHistogram latencies = new LatencyHistogram();
+    /** Requests by operation */
+    final AtomicLong[] requests = new AtomicLong[Operation.values().length];
+    /** Loads without image */
+    final AtomicLong failures = new AtomicLong();
+    /** Largest heap use seen */
+    long peakHeap;
+    /** Largest thread count seen */
+    int peakThreads;
+    /** Requests per second over the last interval or the whole run */
+    double throughput;
+    /** Start of the run */
+    private long started;
+    /** Start of the report interval */
+    private long lastReport;
+    /** Requests before the report interval */
+    private long lastCount;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        new SoakHarness().run();
+        System.exit(0);
+    }
+
+    /**
+     * Generate the campaign, start the server and the manager, and run the
+     * clients for the configured time.
+     */
+    public void run() throws Exception {
+        for (int i = 0; i < requests.length; i++)
+            requests[i] = new AtomicLong();
+        File campaign = generate(new File(System.getProperty("user.dir"), ".maptool" + File.separator + "soak-" + assets + "x" + size), assets, size);
+        Server server = HttpTestServer.startShaped(0, campaign, shaping);
+        String cacheDirectory = ".maptool" + File.separator + "soak-cache-" + System.nanoTime();
+        try {
+            Properties override = new Properties();
+            override.setProperty("DiskCacheAssetSupplier.directory", cacheDirectory);
+            override.setProperty("WarmStartSnapshot.size", "0");
+            override.setProperty("Metrics.jmx", "false");
+            Properties properties = AssetManagerImpl.getTotalProperties(override);
+            AssetManagerImpl manager = new AssetManagerImpl(properties);
+            manager.registerAssetSupplier(new HttpAssetSupplier(properties, "http://localhost:" + HttpTestServer.getPort(server) + "/"));
+            System.out.println("soak: " + clients + " clients, " + assets + " assets of " + size + "px, mix " + mix
+                + ", cache " + cache + ", " + shaping);
+            drive(manager);
+        }
+        finally {
+            server.stop();
+            delete(new File(System.getProperty("user.dir"), cacheDirectory));
+        }
+    }
+
+    /**
+     * Run the clients, reporting while they run.
+     */
+    private void drive(final AssetManagerImpl manager) throws InterruptedException {
+        final int[] weights = parseMix(mix);
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        List<Thread> running = new ArrayList<Thread>();
+        for (int c = 0; c < clients; c++) {
+            final Random random = new Random(31 * c + 7);
+            Thread client = new Thread("SoakClient-" + c) {
+                @Override
+                public void run() {
+                    while (System.nanoTime() < end)
+                        request(manager, pick(random, weights), pickId(random));
+                }
+            };
+            client.setDaemon(true);
+            client.start();
+            running.add(client);
+        }
+        long start = System.nanoTime();
+        started = start;
+        lastReport = start;
+        for (Thread client : running) {
+            while (client.isAlive()) {
+                client.join(TimeUnit.SECONDS.toMillis(1));
+                sample();
+            }
+        }
+        throughput = latencies.getCount() / ((System.nanoTime() - start) / 1e9);
+        peakHeap = Math.max(peakHeap, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        peakThreads = Math.max(peakThreads, threads.getPeakThreadCount());
+        print("total");
+    }
+
+    /**
+     * One request, timed.
+     */
+    void request(AssetManagerImpl manager, Operation operation, String id) {
+        requests[operation.ordinal()].incrementAndGet();
+        long start = System.nanoTime();
+        Asset result = null;
+        switch (operation) {
+        case GET:
+            result = manager.getAsset(id, cache);
+            break;
+        case ASYNC:
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<Asset> loaded = new AtomicReference<Asset>();
+            manager.getAssetAsync(id, new AssetListener() {
+                @Override
+                public void notify(String id, Asset obj) {
+                    loaded.set(obj);
+                    latch.countDown();
+                }
+                @Override
+                public void notifyPartial(String id, double completed) throws TimeoutException {
+                }
+            }, cache);
+            try {
+                latch.await();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            result = loaded.get();
+            break;
+        case THUMBNAIL:
+            result = manager.getAsset(id, ReadOptions.thumbnail(64, 64), cache);
+            break;
+        case EVICT:
+            manager.removeAsset(id);
+            latencies.record(System.nanoTime() - start);
+            return;
+        }
+        if (result == null || result.getMain() == null)
+            failures.incrementAndGet();
+        latencies.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Sample heap and threads, and report once per interval.
+     */
+    private void sample() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+        peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+        long now = System.nanoTime();
+        if (now - lastReport >= TimeUnit.SECONDS.toNanos(report)) {
+            long count = latencies.getCount();
+            throughput = (count - lastCount) / ((now - lastReport) / 1e9);
+            lastReport = now;
+            lastCount = count;
+            print(TimeUnit.NANOSECONDS.toSeconds(now - started) + "s");
+        }
+    }
+
+    private void print(String label) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.out.println(String.format("%-8s %8.1f req/s  p50 %6.1f ms  p99 %7.1f ms  p99.9 %7.1f ms  max %7.1f ms  "
+            + "requests %d  failures %d  threads %d (peak %d)  heap %d MB (peak %d MB)",
+            label, throughput, latencies.getPercentile(50) / 1e6, latencies.getPercentile(99) / 1e6,
+            latencies.getPercentile(99.9) / 1e6, latencies.getMax() / 1e6, latencies.getCount(), failures.get(),
+            ManagementFactory.getThreadMXBean().getThreadCount(), peakThreads,
+            memory.getHeapMemoryUsage().getUsed() >> 20, peakHeap >> 20));
+    }
+
+    /**
+     * Operation by weight.
+     */
+    private static Operation pick(Random random, int[] weights) {
+        int total = 0;
+        for (int weight : weights)
+            total += weight;
+        int ticket = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            ticket -= weights[i];
+            if (ticket < 0)
+                return Operation.values()[i];
+        }
+        return Operation.GET;
+    }
+
+    /**
+     * Skewed id: a share of hot requests goes to the first fifth.
+     */
+    private String pickId(Random random) {
+        int hotSet = Math.max(1, assets / 5);
+        int i = (random.nextDouble() < hot ? random.nextInt(hotSet) : random.nextInt(assets));
+        return getId(i);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+
+    private static int[] parseMix(String mix) {
+        String[] parts = mix.split(",");
+        int[] weights = new int[Operation.values().length];
+        for (int i = 0; i < weights.length && i < parts.length; i++)
+            weights[i] = Integer.parseInt(parts[i].trim());
+        return weights;
+    }
+
+    static String getId(int i) {
+        return String.format("soak-%05d", i);
+    }
+
+    /**
+     * Write noise PNGs and their index, unless already there.
+     * @return campaign directory
+     */
+    static File generate(File directory, int assets, int size) throws IOException {
+        File index = new File(directory, "index");
+        if (index.exists())
+            return directory;
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        Random random = new Random(4711);
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Properties ids = new Properties();
+        for (int i = 0; i < assets; i++) {
+            for (int y = 0; y < size; y++)
+                for (int x = 0; x < size; x++)
+                    img.setRGB(x, y, random.nextInt());
+            ImageIO.write(img, "png", new File(directory, getId(i) + ".png"));
+            ids.setProperty(getId(i), getId(i) + ".png");
+        }
+        OutputStream output = new FileOutputStream(index);
+        try {
+            ids.store(output, "Soak campaign");
+        }
+        finally {
+            output.close();
+        }
+        return directory;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.HttpAssetSupplier;
+
+import org.eclipse.jetty.server.Server;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class SoakTest extends TestConstants {
+    @Test
+    public void testShaping() throws Exception {
+        File campaign = SoakHarness.generate(new File(USER_DIR + ".maptool" + SEP + "soak-shaping"), 2, 16);
+        Server server = HttpTestServer.startShaped(0, campaign, new HttpTestServer.Shaping(200, 0, 0, 0));
+        try {
+            HttpAssetSupplier supplier = new HttpAssetSupplier(AssetManagerImpl.getTotalProperties(null),
+                "http://localhost:" + HttpTestServer.getPort(server) + "/");
+            long start = System.nanoTime();
+            Asset obj = supplier.get(SoakHarness.getId(0), null);
+            assertThat(obj.getMain(), is(notNullValue()));
+            assertThat((System.nanoTime() - start) / 1000000, is(greaterThanOrEqualTo(200L)));
+        }
+        finally {
+            server.stop();
+        }
+        server = HttpTestServer.startShaped(0, campaign, new HttpTestServer.Shaping(0, 0, 0, 1));
+        try {
+            HttpAssetSupplier supplier = new HttpAssetSupplier(AssetManagerImpl.getTotalProperties(null),
+                "http://localhost:" + HttpTestServer.getPort(server) + "/");
+            assertThat(supplier.has(SoakHarness.getId(1)), is(true));
+            assertThat(supplier.get(SoakHarness.getId(1), null).getMain(), is(nullValue()));
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    /** Only with -Dsoak=true; settings as in SoakHarness */
+    @Test
+    public void testSoak() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("soak"));
+        SoakHarness harness = new SoakHarness();
+        harness.run();
+        assertThat(harness.latencies.getCount(), is(greaterThan(0L)));
+        assertThat(harness.peakThreads, is(greaterThan(0)));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.easymock.EasyMock.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetSupplier;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.supplier.*;
+
+import org.easymock.IAnswer;
+
+/**
+ * Replays a request mix against simulated suppliers with both strategies. A
+ * file supplier on a slow network mount holds all ids, a local zip holds most
+ * of them and an HTTP mirror holds all of them, but fails now and then. Not a
+ * unit test; run it as
+ * java ... SupplierSelectionSimulation [requests]
+ * @author username
+ */
+public class SupplierSelectionSimulation {
+    /** Number of distinct ids */
+    private final static int IDS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int requests = (args.length > 0 ? Integer.parseInt(args[0]) : 500);
+        run("default", new DefaultSupplierSelectionStrategy(), requests);
+        run("adaptive", new AdaptiveSupplierSelectionStrategy(AssetManagerImpl.getTotalProperties(null)), requests);
+    }
+
+    /** Replay the same requests with one strategy and print the latencies */
+    private static void run(String name, SupplierSelectionStrategy strategy, int requests) {
+        List<AssetSupplier> suppliers = new ArrayList<AssetSupplier>();
+        suppliers.add(simulate(FileAssetSupplier.class, 40, IDS, 15, 0.02, 0.0));
+        suppliers.add(simulate(ZipFileAssetSupplier.class, 30, IDS * 8 / 10, 2, 0.0, 0.0));
+        suppliers.add(simulate(HttpAssetSupplier.class, 20, IDS, 40, 0.0, 0.05));
+
+        SupplierRouting routing = new SupplierRouting(suppliers);
+        Random random = new Random(17);
+        double[] latencies = new double[requests];
+        int failures = 0;
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            Asset obj = strategy.getAsset(routing, Integer.toString(random.nextInt(IDS)), null, false);
+            latencies[i] = (System.nanoTime() - start) / 1e6;
+            if (obj == null || obj.getMain() == null)
+                failures++;
+        }
+        Arrays.sort(latencies);
+        double total = 0;
+        for (double latency : latencies)
+            total += latency;
+        System.out.println(String.format("%s: %d requests, mean %.1f ms, p50 %.1f ms, p99 %.1f ms, %d failures",
+            name, requests, total / requests, latencies[requests / 2], latencies[requests * 99 / 100], failures));
+    }
+
+    /**
+     * Supplier with ids 0 to ids - 1 answering after a delay. It stalls for
+     * ten times the delay with the stall probability and fails with the error
+     * probability.
+     */
+    private static AssetSupplier simulate(Class<? extends AssetSupplier> clazz, int priority, final int ids,
+            final long millis, final double stall, final double error) {
+        final Random random = new Random(priority);
+        AssetSupplier supplier = createMock(clazz.getSimpleName(), clazz);
+        expect(supplier.getPriority()).andReturn(priority).anyTimes();
+        expect(supplier.has(isA(String.class))).andAnswer(new IAnswer<Boolean>() {
+            @Override
+            public Boolean answer() throws Throwable {
+                return Integer.parseInt((String) getCurrentArguments()[0]) < ids;
+            }
+        }).anyTimes();
+        expect(supplier.get(isA(String.class), (AssetListener) isNull())).andAnswer(new IAnswer<Asset>() {
+            @Override
+            public Asset answer() throws Throwable {
+                synchronized (random) {
+                    Thread.sleep(random.nextDouble() < stall ? 10 * millis : millis);
+                    return new AssetImpl(random.nextDouble() < error ? null : getCurrentArguments()[0]);
+                }
+            }
+        }).anyTimes();
+        replay(supplier);
+        return supplier;
+    }
+}
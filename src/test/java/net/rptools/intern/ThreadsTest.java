@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.ImageDecoder;
+import net.rptools.asset.intern.Threads;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ThreadsTest {
+    @After
+    public void tearDown() {
+        Threads.configure(getProperties("platform"));
+    }
+
+    @Test
+    public void testPlatform() throws Exception {
+        Threads.configure(getProperties("platform"));
+        assertThat(Threads.isVirtual(), is(false));
+        runTasks();
+    }
+
+    @Test
+    public void testVirtual() throws Exception {
+        // Falls back to platform threads before Java 21
+        Threads.configure(getProperties("virtual"));
+        assertThat(Threads.isVirtual(), is(Threads.isVirtualAvailable()));
+        runTasks();
+    }
+
+    @Test
+    public void testProcessWide() throws Exception {
+        new AssetManagerImpl(null).close();
+        int pixelType = ImageDecoder.getPixelType();
+        // A later manager does not switch the settings of the first
+        Properties properties = getProperties("virtual");
+        properties.setProperty(ImageDecoder.class.getSimpleName() + ".pixelType", "INT_RGB");
+        AssetManagerImpl second = new AssetManagerImpl(properties);
+        try {
+            assertThat(Threads.isVirtual(), is(false));
+            assertThat(ImageDecoder.getPixelType(), is(pixelType));
+        }
+        finally {
+            second.close();
+        }
+    }
+
+    private void runTasks() throws Exception {
+        final int count = 100;
+        final CountDownLatch latch = new CountDownLatch(2 * count);
+        final AtomicInteger ran = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+                latch.countDown();
+            }
+        };
+        ExecutorService executor = Threads.newExecutor(Executors.defaultThreadFactory());
+        try {
+            for (int i = 0; i < count; i++) {
+                executor.execute(task);
+                Threads.start("ThreadsTest", task);
+            }
+            assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(ran.get(), is(2 * count));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Properties getProperties(String mode) {
+        Properties properties = new Properties();
+        properties.setProperty(Threads.class.getSimpleName() + ".mode", mode);
+        return properties;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.rptools.asset.Asset;
+import net.rptools.asset.AssetManager;
+import net.rptools.asset.TileListener;
+import net.rptools.asset.TileManifest;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.EncodedAssetImpl;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+import net.rptools.asset.intern.supplier.MipmapBuilder;
+import net.rptools.asset.intern.supplier.TileBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileBuilderTest extends TestConstants {
+    private final static int MARK = 0xff00ff00;
+
+    private FileAssetSupplier testObject;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        new PrintStream(new FileOutputStream(USER_DIR + TEST_DIR + "index")).close(); // empty
+        Properties override = new Properties();
+        override.setProperty(MipmapBuilder.class.getSimpleName() + ".minSize", "0");
+        override.setProperty(TileBuilder.class.getSimpleName() + ".minSize", "100");
+        override.setProperty(TileBuilder.class.getSimpleName() + ".tileSize", "64");
+        testObject = new FileAssetSupplier(AssetManagerImpl.getTotalProperties(override), USER_DIR + TEST_DIR);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File rm : new File(USER_DIR + TEST_DIR).listFiles())
+            rm.delete();
+    }
+
+    @Test
+    public void testManifest() throws IOException {
+        TileManifest manifest = new TileManifest(200, 150, 64);
+        assertThat(manifest.getColumns(), is(4));
+        assertThat(manifest.getRows(), is(3));
+        assertThat(manifest.getTileBounds(3, 2), is(new Rectangle(192, 128, 8, 22)));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        manifest.write(output);
+        assertThat(TileManifest.read(new ByteArrayInputStream(output.toByteArray())), is(equalTo(manifest)));
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        BufferedImage img = new BufferedImage(200, 150, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(130, 140, MARK);
+        String id = testObject.create(new AssetImpl(img));
+        verifyTiles(id);
+
+        // Encoded assets are split strip by strip
+        Asset encoded = testObject.get(id, null);
+        assertThat(encoded, is(instanceOf(EncodedAssetImpl.class)));
+        testObject.update("5678", encoded);
+        verifyTiles("5678");
+        assertThat(((EncodedAssetImpl) encoded).isDecoded(), is(false));
+
+        testObject.remove(id);
+        assertThat(testObject.has(TileManifest.getManifestId(id)), is(false));
+        assertThat(testObject.has(TileManifest.getTileId(id, 0, 0)), is(false));
+        assertThat(testObject.has(TileManifest.getTileId(id, 3, 2)), is(false));
+        assertThat(testObject.has(TileManifest.getTileId("5678", 0, 0)), is(true));
+    }
+
+    @Test
+    public void testSmallImage() throws Exception {
+        String id = testObject.create(new AssetImpl(new BufferedImage(99, 99, BufferedImage.TYPE_INT_ARGB)));
+        String marker = testObject.create(new AssetImpl(new BufferedImage(100, 10, BufferedImage.TYPE_INT_ARGB)));
+        waitFor(TileManifest.getManifestId(marker)); // single builder thread
+        assertThat(testObject.has(TileManifest.getManifestId(id)), is(false));
+    }
+
+    @Test
+    public void testGetTiles() throws Exception {
+        String id = testObject.create(new AssetImpl(new BufferedImage(200, 150, BufferedImage.TYPE_INT_ARGB)));
+        waitFor(TileManifest.getManifestId(id));
+        // One tile at a time, so tiles are notified in the order retrieved
+        Properties override = new Properties();
+        override.setProperty(AssetManagerImpl.class.getSimpleName() + ".tileParallelism", "1");
+        AssetManager manager = new AssetManagerImpl(override);
+        testObject.setPriority(43); // unique in the manager
+        manager.registerAssetSupplier(testObject);
+        try {
+            Recorder region = new Recorder();
+            manager.getTilesAsync(id, new Rectangle(70, 70, 10, 10), region, false);
+            assertThat(region.done.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(region.tiles, contains("1-1"));
+
+            Recorder all = new Recorder();
+            manager.getTilesAsync(id, null, all, false);
+            assertThat(all.done.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(all.tiles.size(), is(12));
+            // Center first
+            assertThat(all.tiles.get(0), is("1-1"));
+
+            // Untiled assets are delivered completely
+            String small = testObject.create(new AssetImpl(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB)));
+            Recorder untiled = new Recorder();
+            manager.getTilesAsync(small, null, untiled, false);
+            assertThat(untiled.done.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(untiled.tiles.size(), is(0));
+            assertThat(untiled.complete, is(notNullValue()));
+        }
+        finally {
+            manager.deregisterAssetSupplier(testObject);
+            manager.close();
+        }
+    }
+
+    private void verifyTiles(String id) throws Exception {
+        waitFor(TileManifest.getManifestId(id));
+        TileManifest manifest = TileBuilder.readManifest(testObject, id);
+        assertThat(manifest, is(equalTo(new TileManifest(200, 150, 64))));
+        BufferedImage corner = (BufferedImage) testObject.get(TileManifest.getTileId(id, 3, 2), null).getMain();
+        assertThat(corner.getWidth(), is(8));
+        assertThat(corner.getHeight(), is(22));
+        BufferedImage marked = (BufferedImage) testObject.get(TileManifest.getTileId(id, 2, 2), null).getMain();
+        assertThat(marked.getRGB(2, 12), is(MARK));
+    }
+
+    private void waitFor(String id) throws InterruptedException {
+        for (int i = 0; i < 100 && !testObject.has(id); i++)
+            Thread.sleep(100);
+        assertThat(testObject.has(id), is(true));
+    }
+
+    private static class Recorder implements TileListener {
+        private final List<String> tiles = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Asset complete;
+
+        @Override
+        public void notify(String id, Asset obj) {
+            complete = obj;
+            done.countDown();
+        }
+
+        @Override
+        public void notifyPartial(String id, double completed) {
+        }
+
+        @Override
+        public void notifyTile(String id, TileManifest manifest, int column, int row, Asset tile) {
+            assertThat(tile, is(notNullValue()));
+            tiles.add(column + "-" + row);
+        }
+    }
+}
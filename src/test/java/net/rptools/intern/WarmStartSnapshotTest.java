@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.rptools.intern;
+
+import static org.easymock.EasyMock.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Properties;
+
+import net.rptools.asset.AssetListener;
+import net.rptools.asset.AssetManager;
+import net.rptools.asset.intern.AssetImpl;
+import net.rptools.asset.intern.AssetManagerImpl;
+import net.rptools.asset.intern.WarmStartSnapshot;
+import net.rptools.asset.intern.supplier.FileAssetSupplier;
+import net.rptools.asset.intern.supplier.MemCacheAssetSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WarmStartSnapshotTest extends TestConstants {
+    private final static String SNAPSHOT = ".maptool" + SEP + "warmstart-test";
+
+    private Properties properties;
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        Properties override = new Properties();
+        override.setProperty("WarmStartSnapshot.file", SNAPSHOT);
+        override.setProperty("WarmStartSnapshot.size", "2");
+        override.setProperty("WarmStartSnapshot.pixels", "true");
+        properties = AssetManagerImpl.getTotalProperties(override);
+    }
+
+    @After
+    public void tearDown() {
+        new File(USER_DIR + SNAPSHOT).delete();
+    }
+
+    @Test
+    public void testHottest() throws Exception {
+        MemCacheAssetSupplier cache = new MemCacheAssetSupplier(properties);
+        BufferedImage img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        AssetImpl asset = new AssetImpl(img);
+        cache.update("a", asset);
+        cache.update("b", asset);
+        cache.update("c", asset);
+        cache.get("b", null);
+        cache.get("b", null);
+        cache.get("c", null);
+        assertThat(cache.getHottest(2), contains("b", "c"));
+        assertThat(cache.getHottest(5).size(), is(2)); // "a" never hit
+        // Peeking is no hit
+        assertThat(cache.peek("a"), is(sameInstance((Object) asset)));
+        assertThat(cache.getHottest(5).size(), is(2));
+    }
+
+    @Test
+    public void testManagerClose() throws Exception {
+        AssetManager manager = new AssetManagerImpl(properties);
+        assertThat(new File(USER_DIR + SNAPSHOT).exists(), is(false));
+        manager.close();
+        assertThat(new File(USER_DIR + SNAPSHOT).exists(), is(true));
+        new File(USER_DIR + SNAPSHOT).delete();
+        manager.close();
+        assertThat(new File(USER_DIR + SNAPSHOT).exists(), is(false));
+    }
+
+    @Test
+    public void testManagerPrefetch() throws Exception {
+        properties.setProperty("WarmStartSnapshot.pixels", "false");
+        MemCacheAssetSupplier cache = new MemCacheAssetSupplier(properties);
+        AssetImpl asset = new AssetImpl(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+        cache.update(MY_ID, asset);
+        cache.get(MY_ID, null);
+        new WarmStartSnapshot(properties).save(cache);
+
+        AssetManagerImpl manager = new AssetManagerImpl(properties);
+        FileAssetSupplier source = createNiceMock("Source", FileAssetSupplier.class);
+        expect(source.getPriority()).andReturn(4711).anyTimes();
+        expect(source.has(MY_ID)).andReturn(true).anyTimes();
+        expect(source.get(eq(MY_ID), (AssetListener) anyObject())).andReturn(asset).anyTimes();
+        replay(source);
+        // Registered after construction, and still found by the prefetch
+        manager.registerAssetSupplier(source);
+        manager.prefetchWarmStart();
+        for (int i = 0; i < 100 && manager.getWarmStartSnapshot().getPrefetchCount() == 0; i++)
+            Thread.sleep(20);
+        assertThat(manager.getWarmStartSnapshot().getPrefetchCount(), is(1));
+        manager.deregisterAssetSupplier(source);
+        manager.close();
+    }
+
+    @Test
+    public void testSavePrefetchPixels() throws Exception {
+        MemCacheAssetSupplier cache = new MemCacheAssetSupplier(properties);
+        BufferedImage img = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(2, 1, 0x80ff0000);
+        AssetImpl asset = new AssetImpl(img);
+        cache.update(MY_ID, asset);
+        cache.get(MY_ID, null);
+
+        WarmStartSnapshot snapshot = new WarmStartSnapshot(properties);
+        snapshot.save(cache);
+        assertThat(snapshot.getSnapshotBytes(), is(greaterThan(24L))); // 6 pixels
+
+        // Everything has pixels, so the manager must not be asked
+        AssetManager manager = createMock("Manager", AssetManager.class);
+        replay(manager);
+        MemCacheAssetSupplier restarted = new MemCacheAssetSupplier(properties);
+        snapshot.prefetch(restarted, manager);
+        assertThat(snapshot.getPrefetchCount(), is(1));
+        BufferedImage restored = (BufferedImage) restarted.get(MY_ID, null).getMain();
+        assertThat(restored.getWidth(), is(3));
+        assertThat(restored.getHeight(), is(2));
+        assertThat(restored.getRGB(2, 1), is(0x80ff0000));
+        verify(manager);
+    }
+
+    @Test
+    public void testPrefetchIdsOnly() throws Exception {
+        properties.setProperty("WarmStartSnapshot.pixels", "false");
+        MemCacheAssetSupplier cache = new MemCacheAssetSupplier(properties);
+        AssetImpl asset = new AssetImpl(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+        cache.update(MY_ID, asset);
+        cache.get(MY_ID, null);
+
+        WarmStartSnapshot snapshot = new WarmStartSnapshot(properties);
+        snapshot.save(cache);
+
+        AssetManager manager = createMock("Manager", AssetManager.class);
+        expect(manager.getAsset(MY_ID, false)).andReturn(asset);
+        replay(manager);
+        MemCacheAssetSupplier restarted = new MemCacheAssetSupplier(properties);
+        snapshot.prefetch(restarted, manager);
+        assertThat(snapshot.getPrefetchCount(), is(1));
+        assertThat(restarted.get(MY_ID, null), is(notNullValue()));
+        verify(manager);
+    }
+}